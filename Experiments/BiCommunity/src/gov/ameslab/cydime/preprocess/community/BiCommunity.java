@@ -58,7 +58,7 @@ public class BiCommunity {
 
 	private IndexedList<String> mIntIPList;
 	private IndexedList<String> mExtIPList;
-	private Matrix<Double> mMatrix; // mMatrix[internal][external]
+	private SparseMatrix mMatrix; // mMatrix[internal][external]
 	private int mCommSize;
 	private int[] mIntLabel;
 	private int[] mExtLabel;
@@ -89,7 +89,7 @@ public class BiCommunity {
 		this.basePath = basePath;
 	}
 
-	public Matrix<Double> getmMatrix() {
+	public SparseMatrix getmMatrix() {
 		return mMatrix;
 	}
 
@@ -184,7 +184,7 @@ public class BiCommunity {
 
 		Log.log(Level.INFO, "External IPs = {0}", mExtIPList.size());
 		Log.log(Level.INFO, "Internal IPs = {0}", mIntIPList.size());
-		mMatrix = new Matrix<Double>(mIntIPList.size(), asnList.size(), 0.0);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(mIntIPList.size(), asnList.size());
 		String inPath1 = new String(basePath+day+"/features/ip/pair_services.features");
 		BufferedReader in1 = new BufferedReader(new FileReader(inPath1));
 		String line1 = in1.readLine();
@@ -200,12 +200,13 @@ public class BiCommunity {
 			if(asnIndex == null) continue;
 
 			if (ServiceParser.parse(src, dest).contains(service)) {
-				mMatrix.set(intIndex, asnIndex, 1.0);
+				builder.set(intIndex, asnIndex, 1.0);
 //					Double old = mMatrix.get(intIndex, asnIndex);
 //					mMatrix.set(intIndex, asnIndex, old + weight); //many external Ips can have the same ASN number
 			}
 		}
 		in1.close();
+		mMatrix = builder.build();
 	}
 
 //	private void saveMatrix() throws IOException {
@@ -227,8 +228,6 @@ public class BiCommunity {
 		Log.log(Level.INFO, "Normalizing edge weights...");
 
 //		NormalizeGaussian.normalizePos(mMatrix);
-		mMatrix.updateTranspose();
-		mMatrix.updateAdjacencyArrays();
 	}
 
 	private void initLPA(HashMap<String,Integer> mappings,int numOfSubnets) {
@@ -308,7 +307,7 @@ public class BiCommunity {
 		Histogram<Integer> neighborLabels = new Histogram<Integer>();
 		for (int e = 0; e < mExtFocusScore.length; e++) {
 			neighborLabels.clear();
-			for (int i : mMatrix.getNeighborsOfJ(e)) {
+			for (int i : mMatrix.getNeighborListOfJ(e)) {
 				neighborLabels.increment(mIntLabel[i]);
 			}
 
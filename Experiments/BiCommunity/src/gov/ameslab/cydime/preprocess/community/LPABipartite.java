@@ -57,7 +57,7 @@ public class LPABipartite {
 	
 	private static final double MIN_MOD_INCREMENT = 0.0001;
 	
-	private Matrix<Double> mMatrix;
+	private SparseMatrix mMatrix;
 	private double mSum;
 	private double[] mIntDegs;
 	private double[] mExtDegs;
@@ -73,7 +73,7 @@ public class LPABipartite {
 	private IndexedList<String> indexedGroups;
 	private IndexedList<Integer> asnList;
 	
-	public LPABipartite(Matrix<Double> matrix, double sum, double[] intDegs, double[] extDegs,String basePath) {
+	public LPABipartite(SparseMatrix matrix, double sum, double[] intDegs, double[] extDegs,String basePath) {
 		mMatrix = matrix;
 		mSum = sum;
 		mIntDegs = intDegs;
@@ -152,13 +152,14 @@ public class LPABipartite {
 			cExtDegSumForLabel = new Histogram<Integer>();
 
 			long edges = 0;
-			for (Entry<Integer, Map<Integer, Double>> iEntry : mMatrix.getMatrix().entrySet()) {
-				i = iEntry.getKey();
+			int[] js = mMatrix.getIIndices();
+			double[] ws = mMatrix.getIValues();
+			for (i = 0; i < mMatrix.getISize(); i++) {
 				int iLabel = cIntLabel[i];
-				for (Entry<Integer, Double> jEntry : iEntry.getValue().entrySet()) {
-					int j = jEntry.getKey();
+				for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
+					int j = js[k];
 					int jLabel = cExtLabel[j];
-					double w = jEntry.getValue();
+					double w = ws[k];
 
 					cIntDegSumForLabel.increment(iLabel, w);//increment by the weight for degree - since this is the weighted version
 					cExtDegSumForLabel.increment(jLabel, w);//increment by the weight for degree - since this is the weighted version
@@ -175,18 +176,15 @@ public class LPABipartite {
 	private double getModularity() {
 		double result = 0.0;
 		
-		for (Entry<Integer, Map<Integer, Double>> iEntry : mMatrix.getMatrix().entrySet()) {
-			int i = iEntry.getKey();
+		int[] js = mMatrix.getIIndices();
+		double[] ws = mMatrix.getIValues();
+		for (int i = 0; i < mMatrix.getISize(); i++) {
 			int iLabel = cIntLabel[i];
-			Map<Integer, Double> jMap = iEntry.getValue();
-			
-			int[] iNeighbors = mMatrix.getNeighborListOfI(i);
-			for (int n = 0; n < iNeighbors.length; n++) {
-				int j = iNeighbors[n];
-				int jLabel = cExtLabel[j];
+			for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
+				int jLabel = cExtLabel[js[k]];
 				
 				if (iLabel == jLabel) {
-					result += jMap.get(j);
+					result += ws[k];
 				}
 			}
 		}
@@ -201,19 +199,19 @@ public class LPABipartite {
 	private Histogram<Integer> getModularityMap() {
 		Histogram<Integer> modularityMap = new Histogram<Integer>();
 
-		for (Entry<Integer, Map<Integer, Double>> iEntry : mMatrix.getMatrix().entrySet()) {
+		int[] js = mMatrix.getIIndices();
+		double[] ws = mMatrix.getIValues();
+		for (int i = 0; i < mMatrix.getISize(); i++) {
+			if (mMatrix.getDegreeOfI(i) == 0) continue;
+			
 			double result = 0.0;
-			int i = iEntry.getKey();
 			int iLabel = cIntLabel[i]; //label of the node identified by "i"
-			Map<Integer, Double> jMap = iEntry.getValue();
 
-			int[] iNeighbors = mMatrix.getNeighborListOfI(i);
-			for (int n = 0; n < iNeighbors.length; n++) {
-				int j = iNeighbors[n];
-				int jLabel = cExtLabel[j];
+			for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
+				int jLabel = cExtLabel[js[k]];
 
 				if (iLabel == jLabel) {
-					result += jMap.get(j);
+					result += ws[k];
 					//result -= cIntDegSumForLabel.get(iLabel) * cExtDegSumForLabel.get(iLabel) / mSum;
 				}
 			}
@@ -232,18 +230,20 @@ public class LPABipartite {
 
 	
 	private int updateIntLabel(int i) {// formula for label updation of internal nodes
-		int[] iNeighbors = mMatrix.getNeighborListOfI(i);
+		int[] js = mMatrix.getIIndices();
+		double[] ws = mMatrix.getIValues();
+		int start = mMatrix.getIStart(i);
+		int end = mMatrix.getIEnd(i);
 		
-		if (iNeighbors.length == 1) {
-			return cExtLabel[iNeighbors[0]];
+		if (end - start == 1) {
+			return cExtLabel[js[start]];
 		}
 		
 		tLabels.clear();
 		
-		for (int n = 0; n < iNeighbors.length; n++) {
-			int j = iNeighbors[n];
-			int jLabel = cExtLabel[j];
-			double w = mMatrix.get(i, j);
+		for (int k = start; k < end; k++) {
+			int jLabel = cExtLabel[js[k]];
+			double w = ws[k];
 			tScoreForLabel.increment(jLabel, w);
 			tLabels.add(jLabel);
 		}
@@ -267,19 +267,21 @@ public class LPABipartite {
 	
 	private int updateExtLabel(int j) {
 		try{
-			int[] jNeighbors = mMatrix.getNeighborListOfJ(j);
-
-			if(jNeighbors!=null){
-				if (jNeighbors.length == 1) {
-					return cIntLabel[jNeighbors[0]];
+			int[] is = mMatrix.getJIndices();
+			double[] ws = mMatrix.getJValues();
+			int start = mMatrix.getJStart(j);
+			int end = mMatrix.getJEnd(j);
+
+			if(end > start){
+				if (end - start == 1) {
+					return cIntLabel[is[start]];
 				}
 
 				tLabels.clear();
 
-				for (int n = 0; n < jNeighbors.length; n++) {
-					int i = jNeighbors[n];
-					int iLabel = cIntLabel[i];
-					double w = mMatrix.get(i, j);
+				for (int k = start; k < end; k++) {
+					int iLabel = cIntLabel[is[k]];
+					double w = ws[k];
 					tScoreForLabel.increment(iLabel, w);
 					tLabels.add(iLabel);
 				}
@@ -100,7 +100,7 @@ public class MSGBipartite {
 	
 	private static final Logger Log = Logger.getLogger(MSGBipartite.class.getName());
 	
-	private Matrix<Double> mMatrix;
+	private SparseMatrix mMatrix;
 	private double mSum;
 
 	private int[] cIntLabel;
@@ -111,7 +111,7 @@ public class MSGBipartite {
 	private Histogram<Integer> cExtDegSumForLabel;
 	private Map<Integer, Double> cLabelModularity;
 	
-	public MSGBipartite(Matrix<Double> matrix, double sum) {
+	public MSGBipartite(SparseMatrix matrix, double sum) {
 		mMatrix = matrix;
 		mSum = sum;
 	}
@@ -162,13 +162,13 @@ public class MSGBipartite {
 		}
 		
 		cLabelMatrix = new Matrix<Double>(cLabels.size(), cLabels.size(), 0.0);
-		for (Entry<Integer, Map<Integer, Double>> iEntry : mMatrix.getMatrix().entrySet()) {
-			int i = iEntry.getKey();
+		int[] js = mMatrix.getIIndices();
+		double[] ws = mMatrix.getIValues();
+		for (int i = 0; i < mMatrix.getISize(); i++) {
 			int iLabel = cIntLabel[i];
-			for (Entry<Integer, Double> jEntry : iEntry.getValue().entrySet()) {
-				int j = jEntry.getKey();
-				int jLabel = cExtLabel[j];
-				double w = jEntry.getValue();
+			for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
+				int jLabel = cExtLabel[js[k]];
+				double w = ws[k];
 				
 				Double old = cLabelMatrix.get(iLabel, jLabel);
 				cLabelMatrix.set(iLabel, jLabel, old + w);
@@ -182,13 +182,13 @@ public class MSGBipartite {
 		cIntDegSumForLabel = new Histogram<Integer>();
 		cExtDegSumForLabel = new Histogram<Integer>();
 		
-		for (Entry<Integer, Map<Integer, Double>> iEntry : mMatrix.getMatrix().entrySet()) {
-			int i = iEntry.getKey();
+		int[] js = mMatrix.getIIndices();
+		double[] ws = mMatrix.getIValues();
+		for (int i = 0; i < mMatrix.getISize(); i++) {
 			int iLabel = cIntLabel[i];
-			for (Entry<Integer, Double> jEntry : iEntry.getValue().entrySet()) {
-				int j = jEntry.getKey();
-				int jLabel = cExtLabel[j];
-				double w = jEntry.getValue();
+			for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
+				int jLabel = cExtLabel[js[k]];
+				double w = ws[k];
 				
 				cIntDegSumForLabel.increment(iLabel, w);
 				cExtDegSumForLabel.increment(jLabel, w);
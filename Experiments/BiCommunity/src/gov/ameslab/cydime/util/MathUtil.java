@@ -40,6 +40,7 @@
 package gov.ameslab.cydime.util;
 
 import gov.ameslab.cydime.preprocess.community.Matrix;
+import gov.ameslab.cydime.preprocess.community.SparseMatrix;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -186,6 +187,18 @@ public class MathUtil {
 		} else return null;
 	}
 	
+	public static double sum(SparseMatrix matrix) {
+		return matrix.sum();
+	}
+	
+	public static double[] sumDimension(SparseMatrix matrix, int dim) {
+		if (dim == 1) {
+			return matrix.sumOfJ();
+		} else if (dim == 2) {
+			return matrix.sumOfI();
+		} else return null;
+	}
+	
 	public static int maxIndex(double[] a) {
 		double currentMax = a[0];
 		int currentMaxIndex = 0;
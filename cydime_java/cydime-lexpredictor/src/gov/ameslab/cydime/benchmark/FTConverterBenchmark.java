@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.benchmark;
+
+import gov.ameslab.cydime.preprocess.timeseries.FTConverter;
+import gov.ameslab.cydime.util.CUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times FTConverter.convert on synthetic sparse hourly byte series, as
+ * TimeSeries writes them for each day, and writes the results in the JSON
+ * layout of the ranker's CydimeBenchmark. Each size is run once to warm up
+ * and then timed for the given number of iterations. The series are written
+ * to a temporary directory that is deleted after each size.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class FTConverterBenchmark {
+
+	private static final Logger Log = Logger.getLogger(FTConverterBenchmark.class.getName());
+	
+	private static final String SERIES = "Bytes";
+	private static final int DAYS = 7;
+	//As FTConverter reads each file
+	private static final int HOURS_PER_FILE = 48;
+	private static final int ACTIVE_HOURS_PER_FILE = 10;
+	
+	private int[] mSizes;
+	private int mIterations;
+	private String mOutFile;
+	private List<String> mResults;
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 3) {
+			printUsage();
+			return;
+		}
+		
+		String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String outFile = args.length > 2 ? args[2] : "benchmark.ftconverter.json";
+		new FTConverterBenchmark(sizes, iterations, outFile).run();
+	}
+
+	private static void printUsage() {
+		System.out.println("[java] FTConverterBenchmark [SIZES [ITERATIONS [OUTPUT_JSON]]]");
+		System.out.println("    SIZES: comma-separated numbers of IPs (default: 10000,100000,1000000)");
+		System.out.println("    ITERATIONS: timed runs per size after one warm-up run (default: 5)");
+		System.out.println("    OUTPUT_JSON: results file (default: benchmark.ftconverter.json)");
+	}
+	
+	public FTConverterBenchmark(String sizes, int iterations, String outFile) {
+		String[] split = sizes.split(",");
+		mSizes = new int[split.length];
+		for (int i = 0; i < split.length; i++) {
+			mSizes[i] = Integer.parseInt(split[i].trim());
+		}
+		mIterations = iterations;
+		mOutFile = outFile;
+		mResults = CUtil.makeList();
+	}
+	
+	private void run() throws Exception {
+		for (int size : mSizes) {
+			File dir = Files.createTempDirectory("ftconverter").toFile();
+			try {
+				runSize(size, dir);
+			} finally {
+				delete(dir);
+			}
+			writeJSON();
+		}
+	}
+	
+	private void runSize(int size, File dir) throws Exception {
+		Log.log(Level.INFO, "Generating {0} IPs...", size);
+		
+		final String[] inPaths = new String[DAYS];
+		for (int d = 0; d < DAYS; d++) {
+			inPaths[d] = new File(dir, "day" + d).getPath();
+		}
+		long rows = writeSeries(inPaths, size, size);
+		final String outFile = new File(dir, "out").getPath();
+		
+		Log.log(Level.INFO, "Running FTConverter.convert on {0} IPs...", size);
+		new FTConverter().convert(inPaths, SERIES, outFile);
+		
+		long[] nanos = new long[mIterations];
+		for (int i = 0; i < mIterations; i++) {
+			System.gc();
+			long start = System.nanoTime();
+			new FTConverter().convert(inPaths, SERIES, outFile);
+			nanos[i] = System.nanoTime() - start;
+		}
+		
+		mResults.add(toJSON("FTConverter.convert", size, rows, nanos));
+		Log.log(Level.INFO, "FTConverter.convert on {0} IPs: min {1} ms", new Object[] {size, min(nanos) / 1.0E6});
+	}
+	
+	//One file per day in the sparse layout TimeSeries.flatten writes: the series length, then IP,hour:bytes,...
+	private static long writeSeries(String[] inPaths, int ips, long seed) throws IOException {
+		Random random = new Random(seed);
+		Set<String> ipSet = CUtil.makeSet();
+		while (ipSet.size() < ips) {
+			int ip = random.nextInt();
+			ipSet.add((ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF));
+		}
+		List<String> sortedIPs = CUtil.makeList(ipSet);
+		//SeriesReader requires IPs in String order
+		Collections.sort(sortedIPs);
+		
+		long rows = 0L;
+		StringBuilder b = new StringBuilder();
+		for (String inPath : inPaths) {
+			BufferedWriter out = new BufferedWriter(new FileWriter(inPath + "." + SERIES));
+			out.write(String.valueOf(HOURS_PER_FILE));
+			out.newLine();
+			for (String ip : sortedIPs) {
+				b.setLength(0);
+				b.append(ip);
+				int hour = random.nextInt(HOURS_PER_FILE / ACTIVE_HOURS_PER_FILE);
+				for (int h = 0; h < ACTIVE_HOURS_PER_FILE && hour < HOURS_PER_FILE; h++) {
+					b.append(',').append(hour).append(':').append(1 + random.nextInt(1000000));
+					hour += 1 + random.nextInt(2 * HOURS_PER_FILE / ACTIVE_HOURS_PER_FILE);
+				}
+				out.write(b.toString());
+				out.newLine();
+				rows++;
+			}
+			out.close();
+		}
+		return rows;
+	}
+	
+	private static long min(long[] nanos) {
+		long min = Long.MAX_VALUE;
+		for (long n : nanos) {
+			min = Math.min(min, n);
+		}
+		return min;
+	}
+	
+	private static String toJSON(String name, int ips, long rows, long[] nanos) {
+		long sum = 0L;
+		for (long n : nanos) {
+			sum += n;
+		}
+		
+		StringBuilder b = new StringBuilder();
+		b.append("{\"benchmark\": \"").append(name).append('"');
+		b.append(", \"ips\": ").append(ips);
+		b.append(", \"rows\": ").append(rows);
+		b.append(", \"min_ms\": ").append(String.format(Locale.ROOT, "%.3f", min(nanos) / 1.0E6));
+		b.append(", \"mean_ms\": ").append(String.format(Locale.ROOT, "%.3f", sum / 1.0E6 / nanos.length));
+		b.append(", \"runs_ms\": [");
+		for (int i = 0; i < nanos.length; i++) {
+			if (i > 0) {
+				b.append(", ");
+			}
+			b.append(String.format(Locale.ROOT, "%.3f", nanos[i] / 1.0E6));
+		}
+		b.append("]}");
+		return b.toString();
+	}
+	
+	//Rewritten after every size, so a run that runs out of memory still leaves the smaller sizes
+	private void writeJSON() throws IOException {
+		Runtime runtime = Runtime.getRuntime();
+		BufferedWriter out = new BufferedWriter(new FileWriter(mOutFile));
+		out.write("{");
+		out.newLine();
+		out.write("  \"date\": \"" + new Date() + "\",");
+		out.newLine();
+		out.write("  \"java\": \"" + System.getProperty("java.version") + "\",");
+		out.newLine();
+		out.write("  \"processors\": " + runtime.availableProcessors() + ",");
+		out.newLine();
+		out.write("  \"max_heap_mb\": " + (runtime.maxMemory() >> 20) + ",");
+		out.newLine();
+		out.write("  \"iterations\": " + mIterations + ",");
+		out.newLine();
+		out.write("  \"results\": [");
+		out.newLine();
+		for (int i = 0; i < mResults.size(); i++) {
+			out.write("    " + mResults.get(i) + (i < mResults.size() - 1 ? "," : ""));
+			out.newLine();
+		}
+		out.write("  ]");
+		out.newLine();
+		out.write("}");
+		out.newLine();
+		out.close();
+	}
+	
+	private static void delete(File f) throws IOException {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		if (f.exists() && !f.delete()) throw new IOException("Error: cannot delete " + f);
+	}
+	
+}
@@ -45,9 +45,9 @@ import gov.ameslab.cydime.util.BipartiteGraph;
 import gov.ameslab.cydime.util.CSVReader;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.HistogramLong;
 import gov.ameslab.cydime.util.Range;
-import gov.ameslab.cydime.util.StringUtil;
 import gov.ameslab.cydime.util.models.ServiceFormatter;
 
 import java.io.BufferedReader;
@@ -298,6 +298,7 @@ public class StatData {
         mExtIPOtherTimeseriesByte = CUtil.makeMap();
         
         int i = 0;
+        FieldCursor cursor = new FieldCursor(',');
         for (String feature : Config.INSTANCE.getFeaturePaths()) {
 	        BufferedReader in = new BufferedReader(new FileReader(feature + Config.INSTANCE.getServiceTimeSeries()));
 	        String line = in.readLine();
@@ -307,16 +308,17 @@ public class StatData {
 	                System.out.println((i / 1000000) + "m lines ...");
 	            }
 	
-	            String[] split = StringUtil.trimmedSplit(line, ",");
+	            cursor.reset(line);
 	            //IP,sval,dval,stime,records,packets,bytes
-	            String ip = split[0];
+	            String ip = cursor.nextString();
 	            if (!mExtIPSet.contains(ip)) continue;
 	            
-	            String serv = ServFormatter.format(split[1], split[2]);
-	            long time = Long.parseLong(split[3]);
-//	            long records = Long.parseLong(split[4]);
-//	            long packets = Long.parseLong(split[5]);
-	            long bytes = Long.parseLong(split[6]);
+	            String serv = ServFormatter.format(cursor.nextString(), cursor.nextString());
+	            long time = cursor.nextLong();
+//	            long records = cursor.nextLong();
+//	            long packets = cursor.nextLong();
+	            cursor.skip(2);
+	            long bytes = cursor.nextLong();
 	            mExtRange.extend(time);
 	            updateTimeseries(mExtIPServTimeseriesByte, ip, serv, time, bytes);
 	            updateTimeseries(mExtIPServTimeseriesByte, ip, TIMESERIES_TOTAL, time, bytes);
@@ -349,6 +351,7 @@ public class StatData {
         mIntIPOtherTimeseriesByte = CUtil.makeMap();
         
         int i = 0;
+        FieldCursor cursor = new FieldCursor(',');
         for (String feature : Config.INSTANCE.getFeaturePaths()) {
 	        BufferedReader in = new BufferedReader(new FileReader(feature + Config.INSTANCE.getServiceTimeSeries()));
 	        String line = in.readLine();
@@ -358,16 +361,17 @@ public class StatData {
 	                System.out.println((i / 1000000) + "m lines ...");
 	            }
 	
-	            String[] split = StringUtil.trimmedSplit(line, ",");
+	            cursor.reset(line);
 	            //IP,sval,dval,stime,records,packets,bytes
-	            String ip = split[0];
+	            String ip = cursor.nextString();
 	            if (!mIntIPSet.contains(ip)) continue;
 	            
-	            String serv = ServFormatter.format(split[1], split[2]);
-	            long time = Long.parseLong(split[3]);
-//	            long records = Long.parseLong(split[4]);
-//	            long packets = Long.parseLong(split[5]);
-	            long bytes = Long.parseLong(split[6]);
+	            String serv = ServFormatter.format(cursor.nextString(), cursor.nextString());
+	            long time = cursor.nextLong();
+//	            long records = cursor.nextLong();
+//	            long packets = cursor.nextLong();
+	            cursor.skip(2);
+	            long bytes = cursor.nextLong();
 	            mIntRange.extend(time);
 	            updateTimeseries(mIntIPServTimeseriesByte, ip, serv, time, bytes);
 	            updateTimeseries(mIntIPServTimeseriesByte, ip, TIMESERIES_TOTAL, time, bytes);
@@ -400,15 +404,16 @@ public class StatData {
         BufferedReader in = new BufferedReader(new FileReader(Config.INSTANCE.getExtIntGraphPath()));
         String line = in.readLine();
         int i = 0;
+        FieldCursor cursor = new FieldCursor(',');
         while ((line = in.readLine()) != null) {
         	if (++i % 10000000 == 0) {
                 System.out.println((i / 1000000) + "m edges ...");
             }
         	
-            String[] split = StringUtil.trimmedSplit(line, ",");
+            cursor.reset(line);
             //internal,external
-            String intIP = split[0];
-            String extIP = split[1];
+            String intIP = cursor.nextString();
+            String extIP = cursor.nextString();
             if (!mExtIPSet.contains(extIP)) continue;
             if (!mIntIPSet.contains(intIP)) continue;
             
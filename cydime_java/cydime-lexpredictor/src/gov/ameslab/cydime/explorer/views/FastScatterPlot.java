@@ -58,14 +58,22 @@ import java.awt.Stroke;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
 
 import org.jfree.chart.axis.AxisSpace;
 import org.jfree.chart.axis.AxisState;
@@ -94,6 +102,12 @@ import org.jfree.util.PaintUtilities;
 /**
  * A fast scatter plot, augmented with selection and zooming operations.
  * 
+ * Points are indexed by a {@link PointGrid}, so drawing and selecting only
+ * visit the cells in view. The visible points are counted per pixel and
+ * drawn as one image, optionally shaded by density. On the event dispatch
+ * thread the image is rendered in the background: until it is ready, the
+ * previous image is drawn stretched to the new viewport.
+ * 
  * @author Harris Lin (harris.lin.nz at gmail.com)
  */
 public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
@@ -161,6 +175,24 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
      */
     private boolean rangePannable;
 
+    /** A flag that controls whether points are shaded by their density. */
+    private boolean densityColoring;
+
+    /** One renderer thread shared by all plots, started on first use. */
+    private static final ExecutorService RENDERER
+            = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FastScatterPlot renderer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private transient PointGrid mGrid;
+    private transient volatile Raster mRaster;
+    private transient RasterRequest mPendingRequest;
+
     private SelectionListener mSelectionListener;
     private double mSelectDomainLower;
 	private double mSelectDomainUpper;
@@ -197,6 +229,7 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
         ParamChecks.nullNotPermitted(rangeAxis, "rangeAxis");
 
         this.data = data;
+        this.mGrid = new PointGrid(data);
         this.xDataRange = calculateXDataRange(data);
         this.yDataRange = calculateYDataRange(data);
         this.domainAxis = domainAxis;
@@ -248,6 +281,7 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
      */
     public void setData(float[][] data) {
         this.data = data;
+        this.mGrid = new PointGrid(data);
         fireChangeEvent();
     }
 
@@ -341,6 +375,35 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
         fireChangeEvent();
     }
 
+    /**
+     * Returns <code>true</code> if points are shaded by the number of points
+     * drawn at each pixel, and <code>false</code> if they all use the plot
+     * paint.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     *
+     * @see #setDensityColoring(boolean)
+     */
+    public boolean isDensityColoring() {
+        return this.densityColoring;
+    }
+
+    /**
+     * Sets the flag that controls whether points are shaded by density.  If
+     * the flag value is changed, a {@link PlotChangeEvent} is sent to all
+     * registered listeners.
+     *
+     * @param densityColoring  the new value of the flag.
+     *
+     * @see #isDensityColoring()
+     */
+    public void setDensityColoring(boolean densityColoring) {
+        if (this.densityColoring != densityColoring) {
+            this.densityColoring = densityColoring;
+            fireChangeEvent();
+        }
+    }
+
     /**
      * Returns <code>true</code> if the domain gridlines are visible, and
      * <code>false</code> otherwise.
@@ -577,44 +640,320 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
     public void render(Graphics2D g2, Rectangle2D dataArea,
                        PlotRenderingInfo info, CrosshairState crosshairState) {
 
+		if (this.mGrid == null) {
+			this.mGrid = new PointGrid(this.data);
+		}
+		
+		//Only a plain color can be rasterized; other paints are drawn point by point
+		if (!(this.paint instanceof Color)) {
+			renderPoints(g2, dataArea);
+			return;
+		}
+		
+		RasterRequest request = new RasterRequest(this.mGrid, this.domainAxis,
+				this.rangeAxis, dataArea, (Color) this.paint, this.densityColoring);
+		
+		//Off the event dispatch thread (e.g. saving or printing) there is no UI to keep responsive
+		if (!SwingUtilities.isEventDispatchThread()) {
+			request.render().draw(g2);
+			return;
+		}
+		
+		Raster raster = this.mRaster;
+		if (raster != null && raster.matches(request)) {
+			raster.draw(g2);
+			return;
+		}
+		
+		if (this.mPendingRequest == null || !this.mPendingRequest.matches(request)) {
+			if (this.mPendingRequest != null) {
+				this.mPendingRequest.mIsCancelled = true;
+			}
+			this.mPendingRequest = request;
+			submit(request);
+		}
+		
+		//A preview of other data would be misleading
+		if (raster != null && raster.mRequest.mGrid == this.mGrid) {
+			raster.drawStretched(g2, this.domainAxis, this.rangeAxis, dataArea);
+		}
+    }
 
-        //long start = System.currentTimeMillis();
-        //System.out.println("Start: " + start);
-        g2.setPaint(this.paint);
+	//Draws a 3x3 marker per visible point with the plot's paint
+	private void renderPoints(Graphics2D g2, Rectangle2D dataArea) {
+		g2.setPaint(this.paint);
+		
+		//Points up to a pixel outside the area still have part of their marker inside
+		double xLow = this.domainAxis.getLowerBound();
+		double xHigh = this.domainAxis.getUpperBound();
+		double yLow = this.rangeAxis.getLowerBound();
+		double yHigh = this.rangeAxis.getUpperBound();
+		double xMargin = (xHigh - xLow) / Math.max(1.0, dataArea.getWidth());
+		double yMargin = (yHigh - yLow) / Math.max(1.0, dataArea.getHeight());
+		int[] points = this.mGrid.query(xLow - xMargin, xHigh + xMargin, yLow - yMargin, yHigh + yMargin);
+		//A paint's colors can depend on each fill, so overlapping markers are drawn in data order
+		Arrays.sort(points);
+		
+		float[] xs = this.mGrid.getX();
+		float[] ys = this.mGrid.getY();
+		for (int i : points) {
+			int transX = (int) this.domainAxis.valueToJava2D(xs[i], dataArea,
+					RectangleEdge.BOTTOM);
+			int transY = (int) this.rangeAxis.valueToJava2D(ys[i], dataArea,
+					RectangleEdge.LEFT);
+			g2.fillRect(transX - 1, transY - 1, 3, 3);
+		}
+	}
+	
+	private void submit(final RasterRequest request) {
+		RENDERER.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				if (request.mIsCancelled) return;
+				
+				final Raster raster = request.render();
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						if (mPendingRequest != request) return;
+						
+						mPendingRequest = null;
+						mRaster = raster;
+						fireChangeEvent();
+					}
+					
+				});
+			}
+			
+		});
+	}
 
-        // if the axes use a linear scale, you can uncomment the code below and
-        // switch to the alternative transX/transY calculation inside the loop
-        // that follows - it is a little bit faster then.
-        //
-        // int xx = (int) dataArea.getMinX();
-        // int ww = (int) dataArea.getWidth();
-        // int yy = (int) dataArea.getMaxY();
-        // int hh = (int) dataArea.getHeight();
-        // double domainMin = this.domainAxis.getLowerBound();
-        // double domainLength = this.domainAxis.getUpperBound() - domainMin;
-        // double rangeMin = this.rangeAxis.getLowerBound();
-        // double rangeLength = this.rangeAxis.getUpperBound() - rangeMin;
+	/**
+	 * A snapshot of everything the raster depends on. The axes are cloned, so
+	 * the request can be rendered while the user keeps zooming and panning.
+	 */
+	private static class RasterRequest {
+		
+		private PointGrid mGrid;
+		private ValueAxis mDomainAxis;
+		private ValueAxis mRangeAxis;
+		private Rectangle2D mArea;
+		private Color mColor;
+		private boolean mIsDensity;
+		private volatile boolean mIsCancelled;
+		
+		public RasterRequest(PointGrid grid, ValueAxis domainAxis, ValueAxis rangeAxis,
+				Rectangle2D area, Color color, boolean isDensity) {
+			mGrid = grid;
+			try {
+				mDomainAxis = (ValueAxis) domainAxis.clone();
+				mRangeAxis = (ValueAxis) rangeAxis.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("Error: cannot clone axis", e);
+			}
+			mArea = (Rectangle2D) area.clone();
+			mColor = color;
+			mIsDensity = isDensity;
+		}
+		
+		public boolean matches(RasterRequest r) {
+			return mGrid == r.mGrid
+					&& isSameAxis(mDomainAxis, r.mDomainAxis)
+					&& isSameAxis(mRangeAxis, r.mRangeAxis)
+					&& mArea.equals(r.mArea)
+					&& mColor.equals(r.mColor)
+					&& mIsDensity == r.mIsDensity;
+		}
+		
+		private static boolean isSameAxis(ValueAxis a, ValueAxis b) {
+			return a.getClass() == b.getClass()
+					&& a.getRange().equals(b.getRange())
+					&& a.isInverted() == b.isInverted();
+		}
+		
+		/**
+		 * Counts the points at each pixel, then spreads each count over the
+		 * 3x3 marker of the point with a box filter, so every covered pixel
+		 * of the image is written once.
+		 */
+		public Raster render() {
+			int x0 = (int) Math.floor(mArea.getMinX());
+			int y0 = (int) Math.floor(mArea.getMinY());
+			int w = (int) Math.ceil(mArea.getMaxX()) - x0;
+			int h = (int) Math.ceil(mArea.getMaxY()) - y0;
+			if (w <= 0 || h <= 0 || mGrid.size() == 0) {
+				return new Raster(this, null, x0, y0);
+			}
+			
+			//Points up to a pixel outside the area still have part of their marker inside
+			double xLow = mDomainAxis.getLowerBound();
+			double xHigh = mDomainAxis.getUpperBound();
+			double yLow = mRangeAxis.getLowerBound();
+			double yHigh = mRangeAxis.getUpperBound();
+			double xMargin = (xHigh - xLow) / w;
+			double yMargin = (yHigh - yLow) / h;
+			int[] points = mGrid.query(xLow - xMargin, xHigh + xMargin, yLow - yMargin, yHigh + yMargin);
+			
+			//Counts are kept with a border of one pixel for the markers on the edge
+			int cw = w + 2;
+			int ch = h + 2;
+			int[] counts = new int[cw * ch];
+			Transform tx = new Transform(mDomainAxis, xLow, xHigh, mArea, RectangleEdge.BOTTOM);
+			Transform ty = new Transform(mRangeAxis, yLow, yHigh, mArea, RectangleEdge.LEFT);
+			float[] xs = mGrid.getX();
+			float[] ys = mGrid.getY();
+			for (int i : points) {
+				int px = (int) tx.toJava2D(xs[i]) - x0 + 1;
+				int py = (int) ty.toJava2D(ys[i]) - y0 + 1;
+				if (px >= 0 && px < cw && py >= 0 && py < ch) {
+					counts[py * cw + px]++;
+				}
+			}
+			
+			int[] rows = new int[cw * ch];
+			for (int y = 0; y < ch; y++) {
+				int row = y * cw;
+				for (int x = 1; x < cw - 1; x++) {
+					rows[row + x] = counts[row + x - 1] + counts[row + x] + counts[row + x + 1];
+				}
+			}
+			
+			BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			if (mIsDensity) {
+				int max = 0;
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						max = Math.max(max, getMarkerCount(rows, cw, x, y));
+					}
+				}
+				
+				double logMax = Math.log1p(max);
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						int d = getMarkerCount(rows, cw, x, y);
+						if (d > 0) {
+							pixels[y * w + x] = shade(mColor, Math.log1p(d) / logMax);
+						}
+					}
+				}
+			} else {
+				int rgb = mColor.getRGB();
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						if (getMarkerCount(rows, cw, x, y) > 0) {
+							pixels[y * w + x] = rgb;
+						}
+					}
+				}
+			}
+			return new Raster(this, image, x0, y0);
+		}
+		
+		//Number of markers covering pixel (x, y), from the row sums of the bordered counts
+		private static int getMarkerCount(int[] rows, int cw, int x, int y) {
+			int c = y * cw + x + 1;
+			return rows[c] + rows[c + cw] + rows[c + 2 * cw];
+		}
+		
+		//From a light tint of the color for a single point to the full color at the densest pixel
+		private static int shade(Color color, double t) {
+			double f = 0.25 + 0.75 * t;
+			int r = (int) (255 - (255 - color.getRed()) * f);
+			int g = (int) (255 - (255 - color.getGreen()) * f);
+			int b = (int) (255 - (255 - color.getBlue()) * f);
+			return (color.getAlpha() << 24) | (r << 16) | (g << 8) | b;
+		}
+		
+	}
 
-        if (this.data != null) {
-            for (int i = 0; i < this.data[0].length; i++) {
-                float x = this.data[0][i];
-                float y = this.data[1][i];
-
-                //int transX = (int) (xx + ww * (x - domainMin) / domainLength);
-                //int transY = (int) (yy - hh * (y - rangeMin) / rangeLength);
-                int transX = (int) this.domainAxis.valueToJava2D(x, dataArea,
-                        RectangleEdge.BOTTOM);
-                int transY = (int) this.rangeAxis.valueToJava2D(y, dataArea,
-                        RectangleEdge.LEFT);
-//                g2.fillRect(transX, transY, 1, 1);
-                g2.fillRect(transX - 1, transY - 1, 3, 3);
-            }
-        }
-        //long finish = System.currentTimeMillis();
-        //System.out.println("Finish: " + finish);
-        //System.out.println("Time: " + (finish - start));
+	/**
+	 * Maps values to Java2D coordinates. Linear axes are mapped with a
+	 * precomputed scale rather than through the axis for every point.
+	 */
+	private static class Transform {
+		
+		private ValueAxis mAxis;
+		private Rectangle2D mArea;
+		private RectangleEdge mEdge;
+		private boolean mIsLinear;
+		private double mLow;
+		private double mOffset;
+		private double mScale;
+		
+		public Transform(ValueAxis axis, double low, double high, Rectangle2D area, RectangleEdge edge) {
+			mAxis = axis;
+			mArea = area;
+			mEdge = edge;
+			mLow = low;
+			mOffset = axis.valueToJava2D(low, area, edge);
+			double end = axis.valueToJava2D(high, area, edge);
+			mScale = (end - mOffset) / (high - low);
+			double mid = axis.valueToJava2D((low + high) / 2.0, area, edge);
+			mIsLinear = high > low && Math.abs(mid - (mOffset + end) / 2.0) < 1e-6;
+		}
+		
+		public double toJava2D(double v) {
+			if (mIsLinear) {
+				return mOffset + (v - mLow) * mScale;
+			} else {
+				return mAxis.valueToJava2D(v, mArea, mEdge);
+			}
+		}
+		
+	}
 
-    }
+	private static class Raster {
+		
+		private RasterRequest mRequest;
+		private BufferedImage mImage;
+		private int mX;
+		private int mY;
+		
+		public Raster(RasterRequest request, BufferedImage image, int x, int y) {
+			mRequest = request;
+			mImage = image;
+			mX = x;
+			mY = y;
+		}
+		
+		public boolean matches(RasterRequest request) {
+			return mRequest.matches(request);
+		}
+		
+		public void draw(Graphics2D g2) {
+			if (mImage == null) return;
+			
+			g2.drawImage(mImage, mX, mY, null);
+		}
+		
+		//Places the image where its corners fall under the current axes, as a preview
+		public void drawStretched(Graphics2D g2, ValueAxis domainAxis, ValueAxis rangeAxis, Rectangle2D area) {
+			if (mImage == null) return;
+			
+			double left = moveX(mX, domainAxis, area);
+			double right = moveX(mX + mImage.getWidth(), domainAxis, area);
+			double top = moveY(mY, rangeAxis, area);
+			double bottom = moveY(mY + mImage.getHeight(), rangeAxis, area);
+			if (!(right > left && bottom > top)) return;
+			
+			g2.drawImage(mImage, (int) Math.round(left), (int) Math.round(top),
+					(int) Math.round(right - left), (int) Math.round(bottom - top), null);
+		}
+		
+		private double moveX(double x, ValueAxis axis, Rectangle2D area) {
+			double v = mRequest.mDomainAxis.java2DToValue(x, mRequest.mArea, RectangleEdge.BOTTOM);
+			return axis.valueToJava2D(v, area, RectangleEdge.BOTTOM);
+		}
+		
+		private double moveY(double y, ValueAxis axis, Rectangle2D area) {
+			double v = mRequest.mRangeAxis.java2DToValue(y, mRequest.mArea, RectangleEdge.LEFT);
+			return axis.valueToJava2D(v, area, RectangleEdge.LEFT);
+		}
+		
+	}
 
     /**
      * Draws the gridlines for the plot, if they are visible.
@@ -787,15 +1126,16 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
 
 	@Override
 	public void updateSelection() {
+		if (mGrid == null) {
+			mGrid = new PointGrid(this.data);
+		}
+		
+		int[] selected = mGrid.query(mSelectDomainLower, mSelectDomainUpper, mSelectRangeLower, mSelectRangeUpper);
+		Arrays.sort(selected);
 		List<Integer> s = CUtil.makeList();
-		for (int i = 0; i < this.data[0].length; i++) {
-            float x = this.data[0][i];
-            float y = this.data[1][i];
-            if (x >= mSelectDomainLower && x <= mSelectDomainUpper
-            		&& y >= mSelectRangeLower && y <= mSelectRangeUpper) {
-            	s.add(i);
-            }
-        }		
+		for (int i : selected) {
+			s.add(i);
+		}
 		mSelectionListener.select(s);
 	}
 
@@ -1073,6 +1413,9 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
         if (this.rangePannable != that.rangePannable) {
             return false;
         }
+        if (this.densityColoring != that.densityColoring) {
+            return false;
+        }
         if (!ArrayUtilities.equal(this.data, that.data)) {
             return false;
         }
@@ -1125,6 +1468,9 @@ public class FastScatterPlot extends Plot implements ValueAxisPlot, Pannable,
         if (this.data != null) {
             clone.data = ArrayUtilities.clone(this.data);
         }
+        clone.mGrid = new PointGrid(clone.data);
+        clone.mRaster = null;
+        clone.mPendingRequest = null;
         if (this.domainAxis != null) {
             clone.domainAxis = (ValueAxis) this.domainAxis.clone();
             clone.domainAxis.setPlot(clone);
@@ -47,6 +47,7 @@ import gov.ameslab.cydime.util.ARFFWriter;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 import gov.ameslab.cydime.util.FileUtil;
+import gov.ameslab.cydime.util.RunReport;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -124,18 +125,44 @@ public class CydimePredictor {
 		}
 	}
 	
+	//One run report per feature set, next to its final result
 	private void run(String featureSet) throws Exception {
 		Config.INSTANCE.setFeatureSet(featureSet);
 		
+		RunReport.INSTANCE.begin("predict " + Config.INSTANCE.getCurrentDatePath() + " " + featureSet);
+		try {
+			predict();
+		} finally {
+			try {
+				RunReport.INSTANCE.write(Config.INSTANCE.getRunReportPath("predict"));
+			} catch (IOException e) {
+				Log.log(Level.WARNING, "Cannot write run report: {0}", e.toString());
+			}
+		}
+	}
+	
+	private void predict() throws Exception {
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("load");
 		InstanceDatabase baseNorm = InstanceDatabase.load(Config.INSTANCE.getBaseNormPath());
+		timer.addRows(baseNorm.getIDs().size());
+		timer.stop();
+		RunReport.INSTANCE.gauge("ids", baseNorm.getIDs().size());
+		RunReport.INSTANCE.gauge("train_ids", baseNorm.getTrainIDs().size());
+		
 		InstanceDatabase baseScore = null;
 		if (baseNorm.getTrainIDs().size() < Config.INSTANCE.getInt(Config.MISSION_SIM_THRESHOLD)) {
 			Log.log(Level.INFO, "Available lexical mission similarity scores " + baseNorm.getTrainIDs().size() + " is under required threshold: " + Config.INSTANCE.getInt(Config.MISSION_SIM_THRESHOLD)
 					+ " -- using feature ranker instead.");
 			
+			timer = RunReport.INSTANCE.startTimer("predict rank");
 			baseScore = predictRank(baseNorm);
+			timer.stop();
 		} else {
+			timer = RunReport.INSTANCE.startTimer("load hierarchy");
 			InstanceDatabase hierarchy = InstanceDatabase.load(Config.INSTANCE.getCurrentPreprocessPath() + Config.INSTANCE.getHierarchy());
+			timer.stop();
+			
+			timer = RunReport.INSTANCE.startTimer("predict stack");
 			InstanceDatabase hierarchyCV = stack("hierarchy_stack", hierarchy, ClassifierFactory.makeREPTreeAVT());
 			InstanceDatabase all = InstanceDatabase.mergeFeatures(Config.INSTANCE.getStackPath(),
 					hierarchyCV,
@@ -146,11 +173,15 @@ public class CydimePredictor {
 			all.writeReport();
 			
 			baseScore = learnAndPredict(ClassifierFactory.makeREPTree(), all, Config.INSTANCE.getBaseScorePath());
+			timer.stop();
 		}
 		
 		//Final result
+		timer = RunReport.INSTANCE.startTimer("write");
 		InstanceDatabase base = InstanceDatabase.load(Config.INSTANCE.getBasePath());
 		writeFinalResult(baseNorm, baseScore, base);
+		timer.addRows(baseNorm.getIDs().size());
+		timer.stop();
 	}
 
 	private InstanceDatabase predictRank(InstanceDatabase base) throws IOException {
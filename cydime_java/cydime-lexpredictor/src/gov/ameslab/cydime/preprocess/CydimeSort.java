@@ -41,6 +41,7 @@ package gov.ameslab.cydime.preprocess;
 
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
+import gov.ameslab.cydime.util.FileUtil;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -50,6 +51,14 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,28 +66,55 @@ import java.util.logging.Logger;
  * Sorts the time series and service feature files so that records with the same IP
  * are grouped together (and also in increasing timestamps).
  * 
+ * Files larger than the memory budget are sorted externally: chunks are sorted in
+ * parallel, spilled to temporary files next to the input and k-way merged back.
+ * Lines are compared as whole strings, as the readers downstream check.
+ * 
  * @author Harris Lin (harris.lin.nz at gmail.com)
  */
 public class CydimeSort {
 
 	private static final Logger Log = Logger.getLogger(CydimeSort.class.getName());
 	
+	//Rough heap cost of a line held as a String, on top of two bytes per char
+	private static final int LINE_OVERHEAD = 64;
+	private static final long MIN_CHUNK_BYTES = 1L << 20;
+	
+	//Runs merged at once; more runs are merged in several passes
+	private static final int MAX_FAN_IN = 128;
+	
+	private static final String RUN_PREFIX = "cydimesort";
+	private static final String RUN_SUFFIX = ".run";
+	
+	private long mMemoryBytes;
+	private int mThreads;
+	
 	public static void main(String[] args) throws IOException {
-		if (args.length != 1) {
+		if (args.length < 1 || args.length > 3) {
 			printUsage();
 			return;
 		}
 		
-		new CydimeSort(args[0]).run();
+		long memoryBytes = args.length > 1 ? Long.parseLong(args[1]) << 20 : Runtime.getRuntime().maxMemory() / 2;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		new CydimeSort(args[0], memoryBytes, threads).run();
 	}
 
 	private static void printUsage() {
-		System.out.println("[java] CydimeSort FEATURE_DIR");
+		System.out.println("[java] CydimeSort FEATURE_DIR [MEMORY_MB [THREADS]]");
 		System.out.println("    FEATURE_DIR: date path specifying feature files");
+		System.out.println("    MEMORY_MB: memory budget for lines held in memory (default: half the heap)");
+		System.out.println("    THREADS: number of chunks sorted concurrently (default: number of cores)");
 	}
 	
 	public CydimeSort(String featurePath) {
+		this(featurePath, Runtime.getRuntime().maxMemory() / 2, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public CydimeSort(String featurePath, long memoryBytes, int threads) {
 		Config.INSTANCE.setParam(featurePath);
+		mMemoryBytes = memoryBytes;
+		mThreads = threads;
 	}
 	
 	private void run() throws IOException {
@@ -97,25 +133,210 @@ public class CydimeSort {
 		
 		Log.log(Level.INFO, "Sorting {0} ...", file);
 		
-		List<String> lines = CUtil.makeList();
-		BufferedReader in = new BufferedReader(new FileReader(file));
-		String header = in.readLine();
-		String line;
-		while ((line = in.readLine()) != null) {
-			lines.add(line);
-		}
-		in.close();
-		
-		Collections.sort(lines);
+		final File dir = new File(file).getAbsoluteFile().getParentFile();
+		//The chunk being read plus one chunk per sorting thread are held at once
+		long chunkBytes = Math.max(MIN_CHUNK_BYTES, mMemoryBytes / (mThreads + 1));
 		
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+		final Semaphore permits = new Semaphore(mThreads);
+		List<Future<File>> spills = CUtil.makeList();
+		List<File> runs = CUtil.makeList();
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			String header = in.readLine();
+			List<String> chunk = CUtil.makeList();
+			long bytes = 0L;
+			String line;
+			while ((line = in.readLine()) != null) {
+				chunk.add(line);
+				bytes += 2L * line.length() + LINE_OVERHEAD;
+				if (bytes >= chunkBytes) {
+					spills.add(submitSpill(pool, permits, chunk, dir));
+					chunk = CUtil.makeList();
+					bytes = 0L;
+				}
+			}
+			in.close();
+			
+			File sorted = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, dir);
+			runs.add(sorted);
+			if (spills.isEmpty()) {
+				Collections.sort(chunk);
+				writeRun(chunk, header, sorted);
+			} else {
+				if (!chunk.isEmpty()) {
+					spills.add(submitSpill(pool, permits, chunk, dir));
+				}
+				chunk = null;
+				
+				List<File> spilled = CUtil.makeList();
+				for (Future<File> f : spills) {
+					File run = get(f);
+					runs.add(run);
+					spilled.add(run);
+				}
+				
+				Log.log(Level.INFO, "Merging {0} sorted runs...", spilled.size());
+				while (spilled.size() > MAX_FAN_IN) {
+					List<File> group = CUtil.makeList(spilled.subList(0, MAX_FAN_IN));
+					File merged = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, dir);
+					runs.add(merged);
+					merge(group, null, merged);
+					spilled.removeAll(group);
+					runs.removeAll(group);
+					deleteAll(group);
+					spilled.add(merged);
+				}
+				merge(spilled, header, sorted);
+			}
+			
+			//The input stays in place if the move fails
+			FileUtil.move(sorted.getPath(), file);
+			runs.remove(sorted);
+		} finally {
+			pool.shutdownNow();
+			//Spills already running may still be writing their runs
+			awaitTermination(pool);
+			for (Future<File> f : spills) {
+				if (f.isDone() && !f.isCancelled()) {
+					try {
+						runs.add(f.get());
+					} catch (Exception e) {
+						//Failed spills leave nothing to clean up
+					}
+				}
+			}
+			deleteAll(runs);
+		}
+	}
+
+	private Future<File> submitSpill(ExecutorService pool, final Semaphore permits, final List<String> chunk, final File dir) throws IOException {
+		//Blocks the reader while every thread is busy, which bounds the memory held
+		permits.acquireUninterruptibly();
+		return pool.submit(new Callable<File>() {
+
+			@Override
+			public File call() throws Exception {
+				try {
+					Collections.sort(chunk);
+					File run = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, dir);
+					writeRun(chunk, null, run);
+					chunk.clear();
+					return run;
+				} finally {
+					permits.release();
+				}
+			}
+			
+		});
+	}
+	
+	private static void awaitTermination(ExecutorService pool) {
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				Log.log(Level.INFO, "Waiting for sorted runs to finish...");
+			}
+		} catch (InterruptedException e) {
+			Log.log(Level.WARNING, "Interrupted; sorted runs still being written may be left behind");
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static File get(Future<File> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+	
+	private static void writeRun(List<String> lines, String header, File file) throws IOException {
 		BufferedWriter out = new BufferedWriter(new FileWriter(file));
-		out.write(header);
-		out.newLine();
+		if (header != null) {
+			out.write(header);
+			out.newLine();
+		}
 		for (String a : lines) {
 			out.write(a);
 			out.newLine();
 		}
 		out.close();
 	}
+	
+	private static void merge(List<File> runs, String header, File file) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size());
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			for (File run : runs) {
+				RunReader r = new RunReader(run);
+				if (r.mLine == null) {
+					r.close();
+				} else {
+					queue.add(r);
+				}
+			}
+			
+			if (header != null) {
+				out.write(header);
+				out.newLine();
+			}
+			
+			while (!queue.isEmpty()) {
+				RunReader r = queue.poll();
+				out.write(r.mLine);
+				out.newLine();
+				if (r.next()) {
+					queue.add(r);
+				} else {
+					r.close();
+				}
+			}
+		} finally {
+			for (RunReader r : queue) {
+				r.close();
+			}
+			out.close();
+		}
+	}
+	
+	private static void deleteAll(List<File> files) {
+		for (File f : files) {
+			if (f.exists() && !f.delete()) {
+				Log.log(Level.WARNING, "Cannot delete {0}", f);
+			}
+		}
+	}
+	
+	private static class RunReader implements Comparable<RunReader> {
+		
+		private BufferedReader mIn;
+		private String mLine;
+		
+		public RunReader(File run) throws IOException {
+			mIn = new BufferedReader(new FileReader(run));
+			mLine = mIn.readLine();
+		}
+		
+		public boolean next() throws IOException {
+			mLine = mIn.readLine();
+			return mLine != null;
+		}
+		
+		public void close() throws IOException {
+			mIn.close();
+		}
+
+		@Override
+		public int compareTo(RunReader o) {
+			return mLine.compareTo(o.mLine);
+		}
+		
+	}
 
 }
@@ -40,8 +40,8 @@
 package gov.ameslab.cydime.preprocess.timeseries;
 
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.MathUtil;
-import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -63,9 +63,13 @@ public class SeriesReader {
 	private List<String> mAllIPs;
 	private int mCursor;
 	private String mCursorIP;
-	private String[][] mLineSplits;
+	//Current line of each file and its IP, which is null once the file is exhausted
+	private String[] mLines;
+	private String[] mLineIPs;
 	private BufferedReader[] mIns;
 	private double[] cSeries;
+	private FieldCursor cCursor;
+	private FieldCursor cPairCursor;
 	
 	public SeriesReader(String[] inPaths, String inFile, int hoursPerFile) throws IOException {
 		mInPaths = inPaths;
@@ -75,6 +79,8 @@ public class SeriesReader {
 	}
 
 	private void init() throws IOException {
+		cCursor = new FieldCursor(',');
+		cPairCursor = new FieldCursor(':');
 		Set<String> allIPs = CUtil.makeSet();
 		for (int i = 0; i < mInPaths.length; i++) {
 			String lastIP = "";
@@ -82,8 +88,7 @@ public class SeriesReader {
 			BufferedReader in = new BufferedReader(new FileReader(file));
 			String line = in.readLine();
 			while ((line = in.readLine()) != null) {
-				String[] split = StringUtil.trimmedSplit(line, ",");
-				String ip = split[0];
+				String ip = cCursor.reset(line).nextString();
 				allIPs.add(ip);
 				if (lastIP.compareTo(ip) > 0) {
 					in.close();
@@ -97,7 +102,8 @@ public class SeriesReader {
 		
 		mAllIPs = CUtil.makeList(allIPs);
 		Collections.sort(mAllIPs);
-		mLineSplits = new String[mInPaths.length][];
+		mLines = new String[mInPaths.length];
+		mLineIPs = new String[mInPaths.length];
 		mIns = new BufferedReader[mInPaths.length];
 		for (int i = 0; i < mInPaths.length; i++) {
 			mIns[i] = new BufferedReader(new FileReader(mInPaths[i] + "." + mInFile));
@@ -115,11 +121,13 @@ public class SeriesReader {
 		if (line == null) {
 			mIns[i].close();
 			mIns[i] = null;
-			mLineSplits[i] = null;
+			mLines[i] = null;
+			mLineIPs[i] = null;
 			return;
 		}
 		
-		mLineSplits[i] = StringUtil.trimmedSplit(line, ",");
+		mLines[i] = line;
+		mLineIPs[i] = cCursor.reset(line).nextString();
 	}
 
 	public int getLength() {
@@ -143,12 +151,18 @@ public class SeriesReader {
 		}
 		
 		Arrays.fill(cSeries, 0.0);
-		for (int i = 0; i < mLineSplits.length; i++) {
-			if (mLineSplits[i] != null && mCursorIP.equals(mLineSplits[i][0])) {
-				for (int j = 1; j < mLineSplits[i].length; j++) {
-					String[] vs = StringUtil.trimmedSplit(mLineSplits[i][j], ":");
-					int index = mHoursPerFile * i + Integer.parseInt(vs[0]);
-					long v = Long.parseLong(vs[1]);
+		for (int i = 0; i < mLines.length; i++) {
+			if (mLineIPs[i] != null && mCursorIP.equals(mLineIPs[i])) {
+				//IP,hour:bytes,hour:bytes,...
+				cCursor.reset(mLines[i]).skip();
+				while (cCursor.hasNext()) {
+					CharSequence pair = cCursor.nextSlice();
+					//Empty trailing fields were dropped by split()
+					if (pair.length() == 0) continue;
+					
+					cPairCursor.reset(pair);
+					int index = mHoursPerFile * i + cPairCursor.nextInt();
+					long v = cPairCursor.nextLong();
 					cSeries[index] = v;
 				}
 				
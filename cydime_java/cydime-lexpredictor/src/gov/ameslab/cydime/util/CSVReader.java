@@ -56,12 +56,15 @@ public class CSVReader {
 	
 	private List<BufferedReader> mReaders;
 	private List<IndexedList<String>> mHeaders;
-	private List<String[]> mCurrentLines;
+	//Lines are kept whole; only the columns asked for are located and trimmed
+	private List<String> mCurrentLines;
+	private FieldCursor cCursor;
 	
 	public CSVReader() {
 		mReaders = CUtil.makeList();
 		mHeaders = CUtil.makeList();
 		mCurrentLines = CUtil.makeList();
+		cCursor = new FieldCursor(',');
 	}
 	
 	public boolean add(String file) throws IOException {
@@ -94,7 +97,7 @@ public class CSVReader {
 			String line = in.readLine();
 			if (line == null) return false;
 			
-			mCurrentLines.set(i, line.split(","));
+			mCurrentLines.set(i, line);
 		}
 		return true;
 	}
@@ -114,7 +117,9 @@ public class CSVReader {
 		BufferedReader in = mReaders.get(reader);
 		if (in == null) return null;
 		
-		return mCurrentLines.get(reader)[column];
+		cCursor.reset(mCurrentLines.get(reader));
+		cCursor.skip(column);
+		return cCursor.nextString();
 	}
 
 	public String get(int column) {
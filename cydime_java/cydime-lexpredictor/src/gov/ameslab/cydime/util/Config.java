@@ -282,6 +282,7 @@ public class Config {
 	
 	//getReportPath
 	public String getFinalResultPath() {	return getCurrentReportPath() + "cydime.scores";	}
+	public String getRunReportPath(String tool) {	return getCurrentReportPath() + "cydime." + tool + ".run.json";	}
 	
 	public String getSilkServicePath() {	return getPath(SILK_SERVICE_DIR) + "services.txt";	}
 
@@ -63,6 +63,13 @@ public class FileUtil {
 		Files.copy(path, newPath, StandardCopyOption.REPLACE_EXISTING);
 	}
 
+	//Replaces newFile, if any, only once file can take its place
+	public static void move(String file, String newFile) throws IOException {
+		Path path = FileSystems.getDefault().getPath(file);
+		Path newPath = FileSystems.getDefault().getPath(newFile);
+		Files.move(path, newPath, StandardCopyOption.REPLACE_EXISTING);
+	}
+
 	public static List<String> readFile(String file) throws IOException {
 		List<String> result = CUtil.makeList();
 		BufferedReader in = new BufferedReader(new FileReader(file));
@@ -70,4 +70,34 @@ public class NetUtil {
 		return result;
 	}
 
+	//Dotted quad to int, e.g. 10.0.0.1 to 0x0A000001
+	public static int toInt(String ip) {
+		return toInt(ip, 0, ip.length());
+	}
+	
+	public static int toInt(CharSequence ip, int start, int end) {
+		int value = 0;
+		int octet = -1;
+		int octets = 0;
+		for (int i = start; i < end; i++) {
+			char c = ip.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) break;
+			} else if (c == '.' && octet >= 0 && octets < 3) {
+				value = (value << 8) | octet;
+				octet = -1;
+				octets++;
+			} else {
+				octet = 256;
+				break;
+			}
+		}
+		
+		if (octets != 3 || octet < 0 || octet > 255) {
+			throw new IllegalArgumentException("Error: invalid IPv4 address " + ip.subSequence(start, end));
+		}
+		return (value << 8) | octet;
+	}
+
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+/**
+ * Process-wide timers, counters and gauges for one run of a Cydime tool,
+ * written as a JSON run report. Heap usage is sampled in the background so
+ * every timed stage records the peak heap seen while it was open; stages that
+ * never stopped (e.g. after an OutOfMemoryError) are reported as open.
+ * 
+ * Start the JVM with -Dcydime.jmx=true to also expose the report as the
+ * gov.ameslab.cydime:type=RunReport MBean, e.g. for jconsole.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class RunReport implements RunReportMBean {
+
+	private static final Logger Log = Logger.getLogger(RunReport.class.getName());
+	
+	public static final String JMX_PROPERTY = "cydime.jmx";
+	private static final String JMX_NAME = "gov.ameslab.cydime:type=RunReport";
+	private static final long SAMPLE_MILLIS = 100L;
+	private static final double MB = 1024.0 * 1024.0;
+	
+	public static final RunReport INSTANCE = new RunReport();
+	
+	private MemoryMXBean mMemory;
+	private ScheduledExecutorService mSampler;
+	
+	private volatile String mName;
+	private volatile long mStartMillis;
+	private volatile long mPeakHeap;
+	private List<Timer> mTimers;
+	private ConcurrentMap<String, AtomicLong> mCounters;
+	private ConcurrentMap<String, Double> mGauges;
+	
+	private RunReport() {
+		mMemory = ManagementFactory.getMemoryMXBean();
+		mTimers = Collections.synchronizedList(CUtil.<Timer>makeList());
+		mCounters = new ConcurrentHashMap<String, AtomicLong>();
+		mGauges = new ConcurrentHashMap<String, Double>();
+		begin("");
+		
+		mSampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "RunReport sampler");
+				t.setDaemon(true);
+				return t;
+			}
+			
+		});
+		mSampler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				sample();
+			}
+			
+		}, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+		
+		if (Boolean.getBoolean(JMX_PROPERTY)) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(JMX_NAME));
+			} catch (Exception e) {
+				Log.log(Level.WARNING, "Cannot register {0}: {1}", new Object[] {JMX_NAME, e.toString()});
+			}
+		}
+	}
+	
+	//Clears all timers, counters and gauges for a new run
+	public void begin(String name) {
+		mName = name;
+		mStartMillis = System.currentTimeMillis();
+		mTimers.clear();
+		mCounters.clear();
+		mGauges.clear();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+		mPeakHeap = getHeapUsed();
+	}
+	
+	public Timer startTimer(String name) {
+		Timer t = new Timer(name, getHeapUsed());
+		mTimers.add(t);
+		return t;
+	}
+	
+	public void count(String name, long delta) {
+		AtomicLong counter = mCounters.get(name);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = mCounters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.addAndGet(delta);
+	}
+	
+	public void gauge(String name, double value) {
+		mGauges.put(name, value);
+	}
+	
+	public void write(String file) throws IOException {
+		sample();
+		File parent = new File(file).getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write(getReport());
+		out.newLine();
+		out.close();
+		Log.log(Level.INFO, "Wrote run report {0}", file);
+	}
+	
+	@Override
+	public String getReport() {
+		long now = System.currentTimeMillis();
+		StringBuilder b = new StringBuilder();
+		b.append("{\n");
+		b.append("  \"run\": ").append(quote(mName)).append(",\n");
+		b.append("  \"start\": ").append(quote(new Date(mStartMillis).toString())).append(",\n");
+		b.append("  \"duration_ms\": ").append(now - mStartMillis).append(",\n");
+		b.append("  \"max_heap_mb\": ").append(format(Runtime.getRuntime().maxMemory() / MB)).append(",\n");
+		b.append("  \"peak_heap_mb\": ").append(format(getPeakHeapMB())).append(",\n");
+		b.append("  \"pool_peak_heap_mb\": ").append(format(getPoolPeakHeap() / MB)).append(",\n");
+		b.append("  \"stages\": [");
+		synchronized (mTimers) {
+			for (int i = 0; i < mTimers.size(); i++) {
+				b.append(i == 0 ? "\n" : ",\n");
+				b.append("    ").append(mTimers.get(i).toJSON(now));
+			}
+		}
+		b.append("\n  ],\n");
+		b.append("  \"counters\": {");
+		appendMap(b, new TreeMap<String, AtomicLong>(mCounters));
+		b.append("},\n");
+		b.append("  \"gauges\": {");
+		appendMap(b, new TreeMap<String, Double>(mGauges));
+		b.append("}\n");
+		b.append("}");
+		return b.toString();
+	}
+	
+	@Override
+	public double getHeapUsedMB() {
+		return getHeapUsed() / MB;
+	}
+	
+	@Override
+	public double getPeakHeapMB() {
+		return mPeakHeap / MB;
+	}
+	
+	@Override
+	public String getOpenStages() {
+		List<String> open = CUtil.makeList();
+		synchronized (mTimers) {
+			for (Timer t : mTimers) {
+				if (t.isOpen()) {
+					open.add(t.mName);
+				}
+			}
+		}
+		return open.toString();
+	}
+	
+	private void sample() {
+		long used = getHeapUsed();
+		if (used > mPeakHeap) {
+			mPeakHeap = used;
+		}
+		
+		synchronized (mTimers) {
+			for (Timer t : mTimers) {
+				t.sample(used);
+			}
+		}
+	}
+	
+	private long getHeapUsed() {
+		return mMemory.getHeapMemoryUsage().getUsed();
+	}
+	
+	//Sum of each heap pool's own peak, an upper bound that does not miss spikes between samples
+	private static long getPoolPeakHeap() {
+		long peak = 0L;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+	
+	private static <V> void appendMap(StringBuilder b, Map<String, V> map) {
+		boolean isFirst = true;
+		for (Entry<String, V> entry : map.entrySet()) {
+			b.append(isFirst ? "" : ", ");
+			b.append(quote(entry.getKey())).append(": ");
+			if (entry.getValue() instanceof Double) {
+				b.append(format((Double) entry.getValue()));
+			} else {
+				b.append(entry.getValue());
+			}
+			isFirst = false;
+		}
+	}
+	
+	private static String format(double v) {
+		if (Double.isNaN(v) || Double.isInfinite(v)) return "null";
+		
+		return String.format(Locale.ROOT, "%.3f", v);
+	}
+	
+	private static String quote(String s) {
+		StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				b.append('\\').append(c);
+			} else if (c < ' ') {
+				b.append(String.format("\\u%04x", (int) c));
+			} else {
+				b.append(c);
+			}
+		}
+		return b.append('"').toString();
+	}
+	
+	/**
+	 * One timed stage. Rows may be added from the thread running the stage.
+	 */
+	public class Timer {
+		
+		private String mName;
+		private String mThread;
+		private long mStartMillis;
+		private long mStartNanos;
+		private long mNanos;
+		private long mRows;
+		private long mStartHeap;
+		private long mEndHeap;
+		private long mPeakHeap;
+		private boolean mIsOpen;
+		
+		private Timer(String name, long heap) {
+			mName = name;
+			mThread = Thread.currentThread().getName();
+			mStartMillis = System.currentTimeMillis();
+			mStartNanos = System.nanoTime();
+			mStartHeap = heap;
+			mPeakHeap = heap;
+			mIsOpen = true;
+		}
+		
+		public synchronized void addRows(long rows) {
+			mRows += rows;
+		}
+		
+		//Only the first call counts
+		public synchronized void stop() {
+			if (!mIsOpen) return;
+			
+			mNanos = System.nanoTime() - mStartNanos;
+			mEndHeap = getHeapUsed();
+			mPeakHeap = Math.max(mPeakHeap, mEndHeap);
+			mIsOpen = false;
+		}
+		
+		private synchronized boolean isOpen() {
+			return mIsOpen;
+		}
+		
+		private synchronized void sample(long heap) {
+			if (mIsOpen && heap > mPeakHeap) {
+				mPeakHeap = heap;
+			}
+		}
+		
+		private synchronized String toJSON(long now) {
+			long nanos = mIsOpen ? System.nanoTime() - mStartNanos : mNanos;
+			StringBuilder b = new StringBuilder();
+			b.append("{\"name\": ").append(quote(mName));
+			b.append(", \"thread\": ").append(quote(mThread));
+			b.append(", \"start_ms\": ").append(mStartMillis - RunReport.this.mStartMillis);
+			b.append(", \"duration_ms\": ").append(format(nanos / 1.0E6));
+			b.append(", \"rows\": ").append(mRows);
+			b.append(", \"rows_per_sec\": ").append(format(nanos > 0 ? mRows * 1.0E9 / nanos : 0.0));
+			b.append(", \"heap_start_mb\": ").append(format(mStartHeap / MB));
+			b.append(", \"heap_end_mb\": ").append(mIsOpen ? "null" : format(mEndHeap / MB));
+			b.append(", \"heap_peak_mb\": ").append(format(mPeakHeap / MB));
+			b.append(", \"open\": ").append(mIsOpen);
+			b.append("}");
+			return b.toString();
+		}
+		
+	}
+
+}
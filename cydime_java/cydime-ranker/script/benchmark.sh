@@ -0,0 +1,3 @@
+#!/bin/bash
+# Run from a directory with a cydime.conf; results go to benchmark.json
+java -Xmx30g -cp Cydime.jar:. gov.ameslab.cydime.benchmark.CydimeBenchmark 10000,100000,1000000 5 benchmark.json
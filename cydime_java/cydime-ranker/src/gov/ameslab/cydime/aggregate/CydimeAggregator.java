@@ -47,24 +47,25 @@ import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 import gov.ameslab.cydime.util.FileUtil;
-import gov.ameslab.cydime.util.HistogramLong;
+import gov.ameslab.cydime.util.RunReport;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import weka.core.Instance;
 import weka.core.Instances;
 
 /**
  * Cydime Aggregator.
  * Aggregate Config.ANALYSIS_INTERVAL days of daily preprocessed features via means and variance.
+ * The running sums are kept in a WindowState saved with each run, so the next run only adds the new day
+ * and retires the days that fell out of the window.
  * - Every IP has to occur more than MIN_DAYS days
  * - Aggregation for an IP ranges over the first day of occurrence until the current day, an empty occurrence in between this range counts as 0 value for each feature
  * 
@@ -79,6 +80,7 @@ public class CydimeAggregator {
 	private int mAnalysisDays;
 	private String mIDPath;
 	
+	private List<String> mDates;
 	private String[] mModelPaths;
 	private List<String> mIDs;
 	
@@ -130,11 +132,18 @@ public class CydimeAggregator {
 	}
 	
 	private void run() {
+		RunReport.INSTANCE.begin("aggregate " + Config.INSTANCE.getCurrentDatePath());
 		try {
 			runExtIP();
 		} catch (IOException e) {
 			Log.log(Level.SEVERE, e.toString());
 			e.printStackTrace();
+		} finally {
+			try {
+				RunReport.INSTANCE.write(Config.INSTANCE.getRunReportPath("aggregate"));
+			} catch (IOException e) {
+				Log.log(Level.WARNING, "Cannot write run report: {0}", e.toString());
+			}
 		}
 	}
 	
@@ -142,11 +151,21 @@ public class CydimeAggregator {
 		Config.INSTANCE.setFeatureDir(Config.IP_DIR);
 		
 		findValidModelPaths();
-		loadAndFilterIDs();
-		InstanceDatabase aggregate = aggregate(getSchema());
+		Instances schema = getSchema();
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("state");
+		WindowState state = loadState(schema);
+		timer.stop();
+		
+		loadAndFilterIDs(state);
+		
+		timer = RunReport.INSTANCE.startTimer("aggregate");
+		timer.addRows(mIDs.size());
+		InstanceDatabase aggregate = aggregate(schema, state);
+		timer.stop();
 		
 		Log.log(Level.INFO, "Normalizing...");
 		
+		timer = RunReport.INSTANCE.startTimer("normalize");
 		//Save as report
 		FileUtil.copy(aggregate.getIDPath(), Config.INSTANCE.getAggregatedNormPath() + WekaPreprocess.ID_SUFFIX);
 		FileUtil.copy(aggregate.getARFFPath(), Config.INSTANCE.getAggregatedNormPath() + WekaPreprocess.ALL_SUFFIX);
@@ -155,6 +174,7 @@ public class CydimeAggregator {
 		//Normalize
 		aggregateNorm.normalize();
 		aggregateNorm.writeReport();
+		timer.stop();
 	}
 
 	private void findValidModelPaths() {
@@ -165,74 +185,129 @@ public class CydimeAggregator {
 			dates = Config.INSTANCE.findValidDates(Config.INSTANCE.getModelIPPaths());
 		}
 		
-		List<String> formattedDates = CUtil.makeList();
+		mDates = CUtil.makeList();
 		for (Date d : dates) {
-			formattedDates.add(Config.FORMAT_DATE.format(d));
+			mDates.add(Config.FORMAT_DATE.format(d));
 		}
-		Log.log(Level.INFO, "Found valid model dates: {0}", formattedDates.toString() );
+		Log.log(Level.INFO, "Found valid model dates: {0}", mDates.toString() );
 		
-		mModelPaths = new String[dates.size()];
+		mModelPaths = new String[mDates.size()];
 		for (int i = 0; i < mModelPaths.length; i++) {
-			mModelPaths[i] = Config.INSTANCE.getRootPath() + Config.FORMAT_DATE.format(dates.get(i)) + "/" + Config.INSTANCE.getPath(Config.MODEL_DIR) + Config.IP_DIR;
+			mModelPaths[i] = getModelPath(mDates.get(i));
 		}
 	}
 
-	private void loadAndFilterIDs() throws IOException {
-		if (mIDPath == null) {
-			HistogramLong<String> idCount = new HistogramLong<String>();
-			for (String path : mModelPaths) {
-				InstanceDatabase daily = InstanceDatabase.load(path + Config.INSTANCE.getDailyFile());
-				for (String id : daily.getIDs()) {
-					idCount.increment(id);
-				}
+	private WindowState loadState(Instances schema) throws IOException {
+		WindowState state = null;
+		for (int i = mModelPaths.length - 1; i >= 0 && state == null; i--) {
+			String file = mModelPaths[i] + Config.INSTANCE.getAggregatedStateFile();
+			if (!new File(file).exists()) continue;
+			
+			try {
+				state = WindowState.load(file);
+			} catch (IOException ex) {
+				Log.log(Level.WARNING, "Cannot read aggregation state {0}: {1}", new Object[] {file, ex.toString()});
+				continue;
 			}
 			
-			mIDs = CUtil.makeList();
-			for (Entry<String, Long> entry : idCount.entrySet()) {
-				if (entry.getValue() >= MIN_DAYS) {
-					mIDs.add(entry.getKey());
-				}
+			if (state.matches(schema)) {
+				Log.log(Level.INFO, "Loaded aggregation state {0} with dates {1}", new Object[] {file, state.getDates()} );
+			} else {
+				Log.log(Level.INFO, "Schema changed, ignoring aggregation state {0}", file);
+				state = null;
 			}
-			Collections.sort(mIDs);
+		}
+		
+		if (state != null) {
+			state = retireOldDates(state);
+		}
+		
+		if (state == null) {
+			state = new WindowState(schema);
+		}
+		
+		for (int i = 0; i < mDates.size(); i++) {
+			String date = mDates.get(i);
+			if (state.getDates().contains(date)) continue;
 			
+			Log.log(Level.INFO, "Adding {0}...", date);
+			RunReport.Timer timer = RunReport.INSTANCE.startTimer("add " + date);
+			state.add(date, InstanceDatabase.load(mModelPaths[i] + Config.INSTANCE.getDailyFile()));
+			timer.stop();
+		}
+		
+		state.save(Config.INSTANCE.getAggregatedStatePath());
+		return state;
+	}
+
+	//Returns null if the state has to be rebuilt from the daily files
+	private WindowState retireOldDates(WindowState state) {
+		Set<String> window = CUtil.makeSet(mDates);
+		for (String date : state.getDates()) {
+			if (window.contains(date) && !state.isCurrent(date, getDailyARFFPath(date))) {
+				Log.log(Level.INFO, "Daily file of {0} changed, rebuilding aggregation state", date);
+				return null;
+			}
+		}
+		
+		try {
+			for (String date : CUtil.makeList(state.getDates())) {
+				if (window.contains(date)) continue;
+				
+				Log.log(Level.INFO, "Retiring {0}...", date);
+				RunReport.Timer timer = RunReport.INSTANCE.startTimer("retire " + date);
+				state.retire(date, InstanceDatabase.load(getModelPath(date) + Config.INSTANCE.getDailyFile()));
+				timer.stop();
+			}
+		} catch (IOException ex) {
+			Log.log(Level.WARNING, "Cannot retire from aggregation state, rebuilding: {0}", ex.toString());
+			return null;
+		} catch (RuntimeException ex) {
+			//InstanceDatabase reports ARFF read errors unchecked
+			Log.log(Level.WARNING, "Cannot retire from aggregation state, rebuilding: {0}", ex.toString());
+			return null;
+		}
+		
+		if (state.shouldRebuild(mDates.size())) {
+			Log.log(Level.INFO, "Rebuilding aggregation state to discard rounding errors from retired dates");
+			return null;
+		}
+		return state;
+	}
+	
+	private String getDailyARFFPath(String date) {
+		return new InstanceDatabase(getModelPath(date) + Config.INSTANCE.getDailyFile()).getARFFPath();
+	}
+	
+	private String getModelPath(String date) {
+		return Config.INSTANCE.getRootPath() + date + "/" + Config.INSTANCE.getPath(Config.MODEL_DIR) + Config.IP_DIR;
+	}
+	
+	private void loadAndFilterIDs(WindowState state) throws IOException {
+		if (mIDPath == null) {
+			mIDs = state.getIDs(MIN_DAYS);
+			Collections.sort(mIDs);
 		} else {
 			mIDs = FileUtil.readFile(mIDPath);
 		}
 
+		RunReport.INSTANCE.gauge("ids", mIDs.size());
 		Log.log(Level.INFO, "Loaded {0}", mIDs.size() );
 	}
 
 	private Instances getSchema() throws IOException {
 		InstanceDatabase schema = InstanceDatabase.load(mModelPaths[0] + Config.INSTANCE.getDailyFile());
-		return new Instances(schema.getWekaInstances(), 0);
+		return schema.getWekaHeader();
 	}
 
-	private InstanceDatabase aggregate(Instances schema) throws IOException {
-		Log.log(Level.INFO, "Loading daily preprocessed data...");
-		
-		Set<String> idSet = CUtil.makeSet(mIDs);
+	private InstanceDatabase aggregate(Instances schema, WindowState state) throws IOException {
 		InstancesAggregator agg = new InstancesAggregator(mIDs, schema,
 				Arrays.asList(
 						new ModeAggregator(),
 						new MeanAggregator(),
 						new VarianceAggregator()
-				));
-				
-		for (String path : mModelPaths) {
-			InstanceDatabase daily = InstanceDatabase.load(path + Config.INSTANCE.getDailyFile());
-			for (String id : daily.getIDs()) {
-				if (!idSet.contains(id)) continue;
-				
-				Instance inst = daily.getWekaInstance(id);
-				agg.addInstance(id, inst);
-			}
-			
-			Set<String> missingIDs = CUtil.makeSet(mIDs);
-			missingIDs.removeAll(daily.getIDs());
-			for (String id : missingIDs) {
-				agg.addZeroInstance(id);
-			}
-		}
+				),
+				state);
 		
 		return agg.aggregate();
 	}
@@ -3,6 +3,7 @@ package gov.ameslab.cydime.aggregate;
 import static gov.ameslab.cydime.preprocess.WekaPreprocess.UnsupervisedFilter.ReplaceMissingValues;
 import static gov.ameslab.cydime.preprocess.WekaPreprocess.UnsupervisedFilter.StringToNominal;
 import gov.ameslab.cydime.aggregate.aggregator.Aggregator;
+import gov.ameslab.cydime.aggregate.aggregator.Summary;
 import gov.ameslab.cydime.model.InstanceDatabase;
 import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.CUtil;
@@ -30,8 +31,10 @@ public class InstancesAggregator {
 	private List<? extends Aggregator> mAgg;
 
 	private Map<String, List<Instance>> mInstancesMap;
+	private WindowState mState;
 	
 	private Instance cZeroInstance;
+	private Summary cSummary;
 	
 	public InstancesAggregator(List<String> ids, Instances schema, List<? extends Aggregator> agg) {
 		mIDs = ids;
@@ -39,6 +42,13 @@ public class InstancesAggregator {
 		mAgg = agg;
 		mInstancesMap = CUtil.makeMap();
 	}
+	
+	//Aggregates from the running sums in state instead of added instances
+	public InstancesAggregator(List<String> ids, Instances schema, List<? extends Aggregator> agg, WindowState state) {
+		this(ids, schema, agg);
+		mState = state;
+		cSummary = new Summary();
+	}
 		
 	public void addInstance(String id, Instance inst) {
 		List<Instance> insts = mInstancesMap.get(id);
@@ -94,9 +104,12 @@ public class InstancesAggregator {
 			Log.log(Level.INFO, "Aggregating {0}...", agg.getName());
 			
 			for (String id : mIDs) {
-				List<Instance> insts = mInstancesMap.get(id);
-				
-				Instance inst = aggregate(insts, agg, instances);
+				Instance inst = null;
+				if (mState == null) {
+					inst = aggregate(mInstancesMap.get(id), agg, instances);
+				} else {
+					inst = aggregate(id, agg, instances);
+				}
 				instances.add(inst);
 			}
 			
@@ -156,4 +169,22 @@ public class InstancesAggregator {
 		return inst;
 	}
 	
+	private Instance aggregate(String id, Aggregator agg, Instances aggInsts) {
+		Instance zero = getZeroInstance();
+		Instance inst = new DenseInstance(aggInsts.numAttributes());
+		inst.setDataset(aggInsts);
+		for (int i = 0, ia = 0; i < mSchema.numAttributes(); i++) {
+			if (i == mSchema.classIndex()) continue;
+			
+			Attribute a = mSchema.attribute(i);
+			if (a.isNumeric() == agg.isNumeric()) {
+				mState.summarize(id, i, !zero.isMissing(i), cSummary);
+				agg.aggregate(cSummary, inst, ia);
+				ia++;
+			}
+		}
+		inst.setClassMissing();
+		return inst;
+	}
+	
 }
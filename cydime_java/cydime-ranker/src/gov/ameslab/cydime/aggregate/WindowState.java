@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.aggregate;
+
+import gov.ameslab.cydime.aggregate.aggregator.ModeAggregator;
+import gov.ameslab.cydime.aggregate.aggregator.Summary;
+import gov.ameslab.cydime.model.ColumnStore;
+import gov.ameslab.cydime.model.InstanceDatabase;
+import gov.ameslab.cydime.util.CUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Running per-IP aggregation state over a window of daily preprocessed features.
+ * For each IP we keep the days it occurred on, and for each attribute the count, sum and sum of squares (numeric)
+ * or the value counts (nominal) over those days. Days can be added or retired one at a time; retiring re-reads
+ * that day's daily file, so no per-day values are kept in memory. The length and modification time of each day's
+ * ARFF are kept as well, so that a daily file which changed after it was added is detected instead of subtracted.
+ * Sums drift a little with every retirement, so callers should rebuild once shouldRebuild is set.
+ * 
+ * As in InstancesAggregator, a day without occurrence after the first day of occurrence counts as 0 value.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class WindowState {
+
+	public static final int MAX_DAYS = 64;
+	
+	private static final int MAGIC = 0x43594157;
+	private static final int VERSION = 2;
+	
+	private List<String> mDates;
+	private List<Long> mSourceLengths;
+	private List<Long> mSourceModified;
+	private int mRetired;
+	private List<String> mAttNames;
+	private boolean[] mIsNominal;
+	private int mClassIndex;
+	private List<List<String>> mNominalValues;
+	private List<Map<String, Integer>> mNominalIndex;
+	private Map<String, IPState> mStates;
+	
+	private static class IPState {
+		
+		//Bit i is set if the IP occurred on the i-th date
+		long Presence;
+		int[] Count;
+		double[] Sum;
+		double[] SumSq;
+		//Nominal value counts, as pairs of (value index, count)
+		int[][] Modes;
+		
+		IPState(int numAtts) {
+			Count = new int[numAtts];
+			Sum = new double[numAtts];
+			SumSq = new double[numAtts];
+			Modes = new int[numAtts][];
+		}
+		
+		void add(int att, double value, int sign) {
+			Count[att] += sign;
+			if (Count[att] == 0) {
+				Sum[att] = 0.0;
+				SumSq[att] = 0.0;
+			} else {
+				Sum[att] += sign * value;
+				SumSq[att] += sign * value * value;
+			}
+		}
+		
+		void addMode(int att, int value, int sign) {
+			int[] modes = Modes[att];
+			if (modes != null) {
+				for (int i = 0; i < modes.length; i += 2) {
+					if (modes[i] == value) {
+						modes[i + 1] += sign;
+						return;
+					}
+				}
+			}
+			
+			if (sign < 0) return;
+			
+			int[] newModes = new int[modes == null ? 2 : modes.length + 2];
+			if (modes != null) {
+				System.arraycopy(modes, 0, newModes, 0, modes.length);
+			}
+			newModes[newModes.length - 2] = value;
+			newModes[newModes.length - 1] = sign;
+			Modes[att] = newModes;
+		}
+		
+		//Ties as in ModeAggregator, so that the result does not depend on the order in which days were added and retired
+		int getMode(int att, List<String> values) {
+			int[] modes = Modes[att];
+			if (modes == null) return -1;
+			
+			int mode = -1;
+			int max = 0;
+			for (int i = 0; i < modes.length; i += 2) {
+				int count = modes[i + 1];
+				if (count > max || (count == max && count > 0 && ModeAggregator.isBefore(values.get(modes[i]), values.get(mode)))) {
+					max = count;
+					mode = modes[i];
+				}
+			}
+			return mode;
+		}
+		
+	}
+	
+	private WindowState() {
+		mDates = CUtil.makeList();
+		mSourceLengths = CUtil.makeList();
+		mSourceModified = CUtil.makeList();
+		mAttNames = CUtil.makeList();
+		mNominalValues = CUtil.makeList();
+		mNominalIndex = CUtil.makeList();
+		mStates = CUtil.makeMap();
+	}
+	
+	public WindowState(Instances schema) {
+		this();
+		mIsNominal = new boolean[schema.numAttributes()];
+		mClassIndex = schema.classIndex();
+		for (int i = 0; i < schema.numAttributes(); i++) {
+			Attribute a = schema.attribute(i);
+			mAttNames.add(a.name());
+			mIsNominal[i] = !a.isNumeric();
+			mNominalValues.add(CUtil.<String>makeList());
+			mNominalIndex.add(CUtil.<String, Integer>makeMap());
+		}
+	}
+	
+	public boolean matches(Instances schema) {
+		if (schema.numAttributes() != mAttNames.size() || schema.classIndex() != mClassIndex) return false;
+		
+		for (int i = 0; i < schema.numAttributes(); i++) {
+			Attribute a = schema.attribute(i);
+			if (!a.name().equals(mAttNames.get(i)) || a.isNumeric() == mIsNominal[i]) return false;
+		}
+		return true;
+	}
+	
+	public List<String> getDates() {
+		return Collections.unmodifiableList(mDates);
+	}
+	
+	//True if the daily ARFF of date is still the one that was added
+	public boolean isCurrent(String date, String arff) {
+		int pos = mDates.indexOf(date);
+		if (pos < 0) return false;
+		
+		File f = new File(arff);
+		return f.length() == mSourceLengths.get(pos) && f.lastModified() == mSourceModified.get(pos);
+	}
+	
+	//Retiring subtracts what adding summed, so rounding errors accumulate; rebuild once a window of days has been retired
+	public boolean shouldRebuild(int windowDays) {
+		return mRetired >= Math.max(1, windowDays);
+	}
+	
+	public List<String> getIDs(int minDays) {
+		List<String> ids = CUtil.makeList();
+		for (Entry<String, IPState> entry : mStates.entrySet()) {
+			if (Long.bitCount(entry.getValue().Presence) >= minDays) {
+				ids.add(entry.getKey());
+			}
+		}
+		return ids;
+	}
+	
+	//Dates are kept sorted, so the format has to sort chronologically (e.g. yyyy/MM/dd)
+	public void add(String date, InstanceDatabase daily) throws IOException {
+		if (mDates.contains(date)) throw new IllegalArgumentException("Error: " + date + " is already in the window.");
+		if (mDates.size() >= MAX_DAYS) throw new IllegalArgumentException("Error: Window is limited to " + MAX_DAYS + " days.");
+		
+		int pos = -Collections.binarySearch(mDates, date) - 1;
+		File arff = new File(daily.getARFFPath());
+		mDates.add(pos, date);
+		mSourceLengths.add(pos, arff.length());
+		mSourceModified.add(pos, arff.lastModified());
+		if (pos < mDates.size() - 1) {
+			long low = (1L << pos) - 1;
+			for (IPState s : mStates.values()) {
+				s.Presence = (s.Presence & low) | ((s.Presence & ~low) << 1);
+			}
+		}
+		
+		update(pos, daily, 1);
+	}
+	
+	public void retire(String date, InstanceDatabase daily) throws IOException {
+		int pos = mDates.indexOf(date);
+		if (pos < 0) throw new IllegalArgumentException("Error: " + date + " is not in the window.");
+		if (!isCurrent(date, daily.getARFFPath())) throw new IOException("Error: " + daily.getARFFPath() + " changed after " + date + " was added to the window.");
+		
+		update(pos, daily, -1);
+		
+		mDates.remove(pos);
+		mSourceLengths.remove(pos);
+		mSourceModified.remove(pos);
+		mRetired++;
+		long low = (1L << pos) - 1;
+		for (IPState s : mStates.values()) {
+			s.Presence = (s.Presence & low) | ((s.Presence >>> (pos + 1)) << pos);
+		}
+	}
+	
+	private void update(int pos, InstanceDatabase daily, int sign) throws IOException {
+		Instances header = daily.getWekaHeader();
+		if (!matches(header)) throw new IOException("Error: Schema of " + daily.getARFFPath() + " does not match.");
+		
+		ColumnStore columns = daily.getColumnStore();
+		Instances instances = columns == null ? daily.getWekaInstances() : null;
+		long bit = 1L << pos;
+		List<String> ids = daily.getIDs();
+		for (int row = 0; row < ids.size(); row++) {
+			String id = ids.get(row);
+			IPState s = mStates.get(id);
+			if (s == null) {
+				if (sign < 0) continue;
+				
+				s = new IPState(mAttNames.size());
+				mStates.put(id, s);
+			}
+			
+			if (sign > 0) {
+				s.Presence |= bit;
+			} else {
+				s.Presence &= ~bit;
+			}
+			
+			for (int att = 0; att < mAttNames.size(); att++) {
+				if (att == mClassIndex) continue;
+				
+				double v = columns == null ? instances.instance(row).value(att) : columns.getValue(row, att);
+				if (Double.isNaN(v)) continue;
+				
+				if (mIsNominal[att]) {
+					s.addMode(att, getNominalIndex(att, header.attribute(att).value((int) v)), sign);
+				} else {
+					s.add(att, v, sign);
+				}
+			}
+			
+			if (s.Presence == 0L) {
+				mStates.remove(id);
+			}
+		}
+	}
+
+	private int getNominalIndex(int att, String value) {
+		Integer index = mNominalIndex.get(att).get(value);
+		if (index == null) {
+			index = mNominalValues.get(att).size();
+			mNominalValues.get(att).add(value);
+			mNominalIndex.get(att).put(value, index);
+		}
+		return index;
+	}
+	
+	//Days without occurrence after the first occurrence count as 0 value if zeroFill is set
+	public void summarize(String id, int att, boolean zeroFill, Summary out) {
+		out.clear();
+		IPState s = mStates.get(id);
+		if (s == null) return;
+		
+		if (mIsNominal[att]) {
+			int mode = s.getMode(att, mNominalValues.get(att));
+			if (mode >= 0) {
+				out.Mode = mNominalValues.get(att).get(mode);
+			}
+		} else {
+			out.Count = s.Count[att];
+			out.Sum = s.Sum[att];
+			out.SumSq = s.SumSq[att];
+			if (zeroFill) {
+				int span = mDates.size() - Long.numberOfTrailingZeros(s.Presence);
+				out.Count += span - Long.bitCount(s.Presence);
+			}
+		}
+	}
+	
+	public void save(String file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		
+		out.writeInt(mDates.size());
+		for (int i = 0; i < mDates.size(); i++) {
+			out.writeUTF(mDates.get(i));
+			out.writeLong(mSourceLengths.get(i));
+			out.writeLong(mSourceModified.get(i));
+		}
+		out.writeInt(mRetired);
+		
+		out.writeInt(mAttNames.size());
+		out.writeInt(mClassIndex);
+		for (int att = 0; att < mAttNames.size(); att++) {
+			out.writeUTF(mAttNames.get(att));
+			out.writeBoolean(mIsNominal[att]);
+			List<String> values = mNominalValues.get(att);
+			out.writeInt(values.size());
+			for (String v : values) {
+				out.writeUTF(v);
+			}
+		}
+		
+		out.writeInt(mStates.size());
+		for (Entry<String, IPState> entry : mStates.entrySet()) {
+			IPState s = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeLong(s.Presence);
+			for (int att = 0; att < mAttNames.size(); att++) {
+				if (mIsNominal[att]) {
+					int[] modes = s.Modes[att];
+					out.writeInt(modes == null ? 0 : modes.length);
+					if (modes != null) {
+						for (int m : modes) {
+							out.writeInt(m);
+						}
+					}
+				} else {
+					out.writeInt(s.Count[att]);
+					out.writeDouble(s.Sum[att]);
+					out.writeDouble(s.SumSq[att]);
+				}
+			}
+		}
+		
+		out.close();
+	}
+	
+	public static WindowState load(String file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Error: " + file + " is not a window state file.");
+			}
+			
+			WindowState state = new WindowState();
+			int numDates = in.readInt();
+			for (int i = 0; i < numDates; i++) {
+				state.mDates.add(in.readUTF());
+				state.mSourceLengths.add(in.readLong());
+				state.mSourceModified.add(in.readLong());
+			}
+			state.mRetired = in.readInt();
+			
+			int numAtts = in.readInt();
+			state.mClassIndex = in.readInt();
+			state.mIsNominal = new boolean[numAtts];
+			for (int att = 0; att < numAtts; att++) {
+				state.mAttNames.add(in.readUTF());
+				state.mIsNominal[att] = in.readBoolean();
+				List<String> values = CUtil.makeList();
+				Map<String, Integer> index = CUtil.makeMap();
+				int numValues = in.readInt();
+				for (int v = 0; v < numValues; v++) {
+					String value = in.readUTF();
+					index.put(value, values.size());
+					values.add(value);
+				}
+				state.mNominalValues.add(values);
+				state.mNominalIndex.add(index);
+			}
+			
+			int numIPs = in.readInt();
+			for (int i = 0; i < numIPs; i++) {
+				String id = in.readUTF();
+				IPState s = new IPState(numAtts);
+				s.Presence = in.readLong();
+				for (int att = 0; att < numAtts; att++) {
+					if (state.mIsNominal[att]) {
+						int length = in.readInt();
+						if (length > 0) {
+							s.Modes[att] = new int[length];
+							for (int m = 0; m < length; m++) {
+								s.Modes[att][m] = in.readInt();
+							}
+						}
+					} else {
+						s.Count[att] = in.readInt();
+						s.Sum[att] = in.readDouble();
+						s.SumSq[att] = in.readDouble();
+					}
+				}
+				state.mStates.put(id, s);
+			}
+			
+			return state;
+		} finally {
+			in.close();
+		}
+	}
+	
+}
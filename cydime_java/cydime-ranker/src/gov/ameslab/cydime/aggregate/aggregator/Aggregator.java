@@ -13,6 +13,8 @@ public interface Aggregator {
 
 	void aggregate(List<Instance> source, int srcIndex, Instance target, int targetIndex);
 
+	void aggregate(Summary source, Instance target, int targetIndex);
+
 	Attribute makeAttribute(String name);
 	
 }
@@ -31,4 +31,13 @@ public class MeanAggregator extends NumericAggregator {
 		}
 	}
 
+	@Override
+	public void aggregate(Summary source, Instance target, int targetIndex) {
+		if (source.Count == 0) {
+			target.setMissing(targetIndex);
+		} else {
+			target.setValue(targetIndex, source.Sum / source.Count);
+		}
+	}
+
 }
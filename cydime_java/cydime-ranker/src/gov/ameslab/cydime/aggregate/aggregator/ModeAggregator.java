@@ -3,6 +3,7 @@ package gov.ameslab.cydime.aggregate.aggregator;
 import gov.ameslab.cydime.util.HistogramLong;
 
 import java.util.List;
+import java.util.Map.Entry;
 
 import weka.core.Instance;
 
@@ -30,7 +31,16 @@ public class ModeAggregator extends StringAggregator {
 			cCount.increment(inst.stringValue(srcIndex));
 		}
 		
-		String mode = cCount.getMaxKeyByValue();
+		String mode = null;
+		long max = 0L;
+		for (Entry<String, Long> entry : cCount.entrySet()) {
+			long count = entry.getValue();
+			if (count > max || (count == max && isBefore(entry.getKey(), mode))) {
+				max = count;
+				mode = entry.getKey();
+			}
+		}
+		
 		if (mode == null) {
 			target.setMissing(targetIndex);
 		} else {
@@ -38,4 +48,18 @@ public class ModeAggregator extends StringAggregator {
 		}
 	}
 
+	//Ties go to the lexically smallest value, so that the mode does not depend on the order values were counted in
+	public static boolean isBefore(String value, String mode) {
+		return value.compareTo(mode) < 0;
+	}
+	
+	@Override
+	public void aggregate(Summary source, Instance target, int targetIndex) {
+		if (source.Mode == null) {
+			target.setMissing(targetIndex);
+		} else {
+			target.setValue(targetIndex, source.Mode);
+		}
+	}
+
 }
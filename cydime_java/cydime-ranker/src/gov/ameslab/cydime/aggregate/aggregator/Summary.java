@@ -0,0 +1,17 @@
+package gov.ameslab.cydime.aggregate.aggregator;
+
+public class Summary {
+
+	public int Count;
+	public double Sum;
+	public double SumSq;
+	public String Mode;
+	
+	public void clear() {
+		Count = 0;
+		Sum = 0.0;
+		SumSq = 0.0;
+		Mode = null;
+	}
+	
+}
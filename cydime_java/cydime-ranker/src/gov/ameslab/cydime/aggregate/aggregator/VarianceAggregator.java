@@ -37,4 +37,15 @@ public class VarianceAggregator extends NumericAggregator {
 		}
 	}
 
+	@Override
+	public void aggregate(Summary source, Instance target, int targetIndex) {
+		if (source.Count == 0) {
+			target.setMissing(targetIndex);
+		} else {
+			double sqmean = source.SumSq / source.Count;
+			double mean = source.Sum / source.Count;
+			target.setValue(targetIndex, sqmean - mean * mean);
+		}
+	}
+
 }
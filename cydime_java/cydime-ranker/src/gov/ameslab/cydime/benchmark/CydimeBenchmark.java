@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.benchmark;
+
+import gov.ameslab.cydime.model.InstanceDatabase;
+import gov.ameslab.cydime.preprocess.WekaPreprocess;
+import gov.ameslab.cydime.preprocess.community.SyntheticGraph;
+import gov.ameslab.cydime.preprocess.dailyprofile.DailyProfile;
+import gov.ameslab.cydime.preprocess.dailyprofile.DailyProfile.Normalizer;
+import gov.ameslab.cydime.preprocess.netflow.Netflow;
+import gov.ameslab.cydime.preprocess.service.ServiceMax;
+import gov.ameslab.cydime.preprocess.timeseries.TimeAccess;
+import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.Config;
+import gov.ameslab.cydime.util.IpIndex;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times the preprocessing hot paths on synthetic feature files of increasing
+ * size and writes the results as JSON, so that runs can be compared across
+ * changes. Each benchmark is run once to warm up and then timed for the given
+ * number of iterations.
+ * 
+ * The synthetic day is written under data_dir of cydime.conf at BENCHMARK_DATE
+ * and deleted after each size. InfluenceGraph.reduce runs on a SyntheticGraph in
+ * memory. FTConverter only exists in cydime-lexpredictor and is timed there by
+ * FTConverterBenchmark, which writes the same JSON layout.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class CydimeBenchmark {
+
+	private static final Logger Log = Logger.getLogger(CydimeBenchmark.class.getName());
+	
+	//A Monday, so it is a valid date on its own
+	public static final String BENCHMARK_DATE = "1970/01/05";
+	private static final long BENCHMARK_EPOCH = 4L * 24 * 60 * 60;
+	private static final String MERGED_FILE = "benchmark.merged.arff";
+	
+	private int[] mSizes;
+	private int mIterations;
+	private String mOutFile;
+	private List<Result> mResults;
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 3) {
+			printUsage();
+			return;
+		}
+		
+		String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String outFile = args.length > 2 ? args[2] : "benchmark.json";
+		new CydimeBenchmark(sizes, iterations, outFile).run();
+	}
+
+	private static void printUsage() {
+		System.out.println("[java] CydimeBenchmark [SIZES [ITERATIONS [OUTPUT_JSON]]]");
+		System.out.println("    SIZES: comma-separated numbers of external IPs (default: 10000,100000,1000000)");
+		System.out.println("    ITERATIONS: timed runs per benchmark after one warm-up run (default: 5)");
+		System.out.println("    OUTPUT_JSON: results file (default: benchmark.json)");
+	}
+	
+	public CydimeBenchmark(String sizes, int iterations, String outFile) {
+		String[] split = sizes.split(",");
+		mSizes = new int[split.length];
+		for (int i = 0; i < split.length; i++) {
+			mSizes[i] = Integer.parseInt(split[i].trim());
+		}
+		mIterations = iterations;
+		mOutFile = outFile;
+		mResults = CUtil.makeList();
+	}
+	
+	private void run() throws Exception {
+		Config.INSTANCE.setParam(BENCHMARK_DATE);
+		File rootDir = new File(Config.INSTANCE.getRootPath());
+		File dateDir = new File(Config.INSTANCE.getRootDatePath());
+		if (dateDir.exists()) throw new IOException("Error: " + dateDir + " already exists.");
+		
+		for (int size : mSizes) {
+			try {
+				runSize(size);
+			} finally {
+				delete(dateDir);
+				//Also the year and month directories, unless something else is in them
+				for (File p = dateDir.getParentFile(); p != null && !p.equals(rootDir) && p.delete(); p = p.getParentFile());
+			}
+			writeJSON();
+		}
+	}
+	
+	private void runSize(int size) throws Exception {
+		Log.log(Level.INFO, "Generating {0} IPs...", size);
+		
+		SyntheticFeatures data = new SyntheticFeatures(size, size);
+		String featurePath = Config.INSTANCE.getRootDatePath() + Config.INSTANCE.getPath(Config.FEATURE_DIR) + Config.IP_DIR;
+		String preprocessPath = Config.INSTANCE.getRootDatePath() + Config.INSTANCE.getPath(Config.PREPROCESS_DIR) + Config.IP_DIR;
+		new File(featurePath).mkdirs();
+		new File(preprocessPath).mkdirs();
+		long rows = data.write(featurePath, BENCHMARK_EPOCH);
+		
+		Config.INSTANCE.setFeatureDir(Config.IP_DIR);
+		final List<String> ids = data.getIPs();
+		final IpIndex index = new IpIndex(ids);
+		
+		//Later benchmarks read the outputs of earlier ones
+		time("Netflow.run", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				new Netflow(ids, Config.INSTANCE.getNetflow(), Config.INSTANCE.getNetflow()).run();
+			}
+			
+		});
+		
+		time("TimeAccess.run", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				new TimeAccess(ids, index, Config.INSTANCE.getTimeSeries(), Config.INSTANCE.getTimeAccess()).run();
+			}
+			
+		});
+		
+		time("ServiceMax.run", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				new ServiceMax(ids, index, Config.INSTANCE.getService(), Config.INSTANCE.getService()).run();
+			}
+			
+		});
+		
+		time("DailyProfile.run", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				new DailyProfile(ids, Config.INSTANCE.getDailyProfile(), Config.INSTANCE.getDailyProfile()).run(Normalizer.RAW_SERVICE_NORM);
+			}
+			
+		});
+		
+		final String netflowPath = Config.INSTANCE.getCurrentPreprocessPath() + Config.INSTANCE.getNetflow();
+		new InstanceDatabase(netflowPath, ids).saveIPs();
+		time("InstanceDatabase.loadInstances", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				InstanceDatabase.load(netflowPath).getWekaInstances();
+			}
+			
+		});
+		
+		final String mergedPath = Config.INSTANCE.getCurrentPreprocessPath() + MERGED_FILE;
+		final String servicePath = Config.INSTANCE.getCurrentPreprocessPath() + Config.INSTANCE.getService();
+		final String timeAccessPath = Config.INSTANCE.getCurrentPreprocessPath() + Config.INSTANCE.getTimeAccess();
+		time("WekaPreprocess.mergeARFFFile", size, rows, new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				WekaPreprocess.mergeARFFFile(mergedPath,
+						servicePath + WekaPreprocess.ALL_SUFFIX,
+						netflowPath + WekaPreprocess.ALL_SUFFIX,
+						timeAccessPath + WekaPreprocess.ALL_SUFFIX);
+			}
+			
+		});
+		
+		//External ASNs by internal IPs; rows are the graph's edges
+		final SyntheticGraph graph = new SyntheticGraph(Math.max(1, size / 20), Math.max(100, size / 50), size);
+		time("InfluenceGraph.reduce", size, graph.getEdgeCount(), new Benchmark() {
+
+			@Override
+			public void run() throws Exception {
+				graph.reduce();
+			}
+			
+		});
+	}
+	
+	private void time(String name, int size, long rows, Benchmark b) throws Exception {
+		Log.log(Level.INFO, "Running {0} on {1} IPs...", new Object[] {name, size});
+		b.run();
+		
+		long[] nanos = new long[mIterations];
+		for (int i = 0; i < mIterations; i++) {
+			System.gc();
+			long start = System.nanoTime();
+			b.run();
+			nanos[i] = System.nanoTime() - start;
+		}
+		
+		Result r = new Result(name, size, rows, nanos);
+		mResults.add(r);
+		Log.log(Level.INFO, "{0} on {1} IPs: min {2} ms, mean {3} ms", new Object[] {name, size, r.getMinMillis(), r.getMeanMillis()});
+	}
+	
+	//Rewritten after every size, so a run that runs out of memory still leaves the smaller sizes
+	private void writeJSON() throws IOException {
+		Runtime runtime = Runtime.getRuntime();
+		BufferedWriter out = new BufferedWriter(new FileWriter(mOutFile));
+		out.write("{");
+		out.newLine();
+		out.write("  \"date\": \"" + new Date() + "\",");
+		out.newLine();
+		out.write("  \"java\": \"" + System.getProperty("java.version") + "\",");
+		out.newLine();
+		out.write("  \"processors\": " + runtime.availableProcessors() + ",");
+		out.newLine();
+		out.write("  \"max_heap_mb\": " + (runtime.maxMemory() >> 20) + ",");
+		out.newLine();
+		out.write("  \"iterations\": " + mIterations + ",");
+		out.newLine();
+		out.write("  \"results\": [");
+		out.newLine();
+		for (int i = 0; i < mResults.size(); i++) {
+			out.write("    " + mResults.get(i).toJSON() + (i < mResults.size() - 1 ? "," : ""));
+			out.newLine();
+		}
+		out.write("  ]");
+		out.newLine();
+		out.write("}");
+		out.newLine();
+		out.close();
+	}
+	
+	private static void delete(File f) throws IOException {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		if (f.exists() && !f.delete()) throw new IOException("Error: cannot delete " + f);
+	}
+	
+	private interface Benchmark {
+		
+		void run() throws Exception;
+		
+	}
+	
+	private static class Result {
+		
+		private String mName;
+		private int mIPs;
+		private long mRows;
+		private long[] mNanos;
+		
+		public Result(String name, int ips, long rows, long[] nanos) {
+			mName = name;
+			mIPs = ips;
+			mRows = rows;
+			mNanos = nanos;
+		}
+		
+		public double getMinMillis() {
+			long min = Long.MAX_VALUE;
+			for (long n : mNanos) {
+				min = Math.min(min, n);
+			}
+			return min / 1.0E6;
+		}
+		
+		public double getMeanMillis() {
+			long sum = 0L;
+			for (long n : mNanos) {
+				sum += n;
+			}
+			return sum / 1.0E6 / mNanos.length;
+		}
+		
+		public String toJSON() {
+			StringBuilder b = new StringBuilder();
+			b.append("{\"benchmark\": \"").append(mName).append('"');
+			b.append(", \"ips\": ").append(mIPs);
+			b.append(", \"rows\": ").append(mRows);
+			b.append(", \"min_ms\": ").append(String.format(Locale.ROOT, "%.3f", getMinMillis()));
+			b.append(", \"mean_ms\": ").append(String.format(Locale.ROOT, "%.3f", getMeanMillis()));
+			b.append(", \"runs_ms\": [");
+			for (int i = 0; i < mNanos.length; i++) {
+				if (i > 0) {
+					b.append(", ");
+				}
+				b.append(String.format(Locale.ROOT, "%.3f", mNanos[i] / 1.0E6));
+			}
+			b.append("]}");
+			return b.toString();
+		}
+		
+	}
+	
+}
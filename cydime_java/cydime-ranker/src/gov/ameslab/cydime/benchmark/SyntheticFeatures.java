@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.benchmark;
+
+import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.Config;
+import gov.ameslab.cydime.util.NetUtil;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Writes random netflow, service, time series and daily profile feature files
+ * in the CSV layouts the preprocessing readers expect, for a given number of
+ * external IPs. Every IP appears in every file, so all IPs are valid IDs for
+ * each feature set.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class SyntheticFeatures {
+
+	public static final int SERVICE_ROWS_PER_IP = 5;
+	public static final int TIMESERIES_ROWS_PER_IP = 10;
+	public static final int PROFILE_ROWS_PER_IP = 5;
+	
+	private static final String[] SERVICES = {"tcp/http", "tcp/https", "tcp/ssh", "udp/domain", "tcp/smtp", "tcp/imaps",
+		"udp/openvpn", "udp/rtsp", "icmp", "tcp/12345"};
+	private static final String[] COUNTRIES = {"us", "cn", "de", "gb", "--"};
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	
+	private Random mRandom;
+	private List<String> mIPs;
+	
+	public SyntheticFeatures(int ips, long seed) {
+		mRandom = new Random(seed);
+		
+		Set<String> ipSet = CUtil.makeSet();
+		while (ipSet.size() < ips) {
+			ipSet.add(NetUtil.toIPString(mRandom.nextInt()));
+		}
+		mIPs = CUtil.makeList(ipSet);
+		Collections.sort(mIPs);
+	}
+	
+	//Sorted, as CydimePreprocessor passes IDs to feature sets
+	public List<String> getIPs() {
+		return mIPs;
+	}
+	
+	//Requires featurePath to exist, dayEpoch in seconds. Returns the number of rows written.
+	public long write(String featurePath, long dayEpoch) throws IOException {
+		long rows = 0L;
+		rows += writeNetflow(featurePath + Config.INSTANCE.getNetflow());
+		rows += writeServices(featurePath + Config.INSTANCE.getService());
+		rows += writeTimeSeries(featurePath + Config.INSTANCE.getTimeSeries(), dayEpoch);
+		rows += writeDailyProfile(featurePath + Config.INSTANCE.getDailyProfile(), dayEpoch);
+		
+		//Only checked for existence when finding valid dates
+		writeHeader(featurePath + Config.INSTANCE.getServiceTimeSeries(), "ip,src,dest,epoch,bytes");
+		writeHeader(featurePath + Config.INSTANCE.getPairService(), "int,ext,src,dest,bytes");
+		return rows;
+	}
+
+	private long writeNetflow(String file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("ip,src_cc,dst_cc,records,bytes,packets,duration,peers,lports,rports,lrport,hours,proto");
+		out.newLine();
+		StringBuilder b = new StringBuilder();
+		for (String ip : mIPs) {
+			b.setLength(0);
+			b.append(ip).append(',').append(pick(COUNTRIES)).append(',').append(pick(COUNTRIES));
+			for (int i = 0; i < 7; i++) {
+				b.append(',').append(1 + mRandom.nextInt(100000));
+			}
+			b.append(',').append(mRandom.nextInt(1000) / 1000.0);
+			b.append(',').append(1 + mRandom.nextInt(24));
+			b.append(',').append(mRandom.nextBoolean() ? "tcp" : "udp");
+			out.write(b.toString());
+			out.newLine();
+		}
+		out.close();
+		return mIPs.size();
+	}
+	
+	private long writeServices(String file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("ip,src,dest,records,packets,bytes");
+		out.newLine();
+		StringBuilder b = new StringBuilder();
+		long rows = (long) mIPs.size() * SERVICE_ROWS_PER_IP;
+		for (long r = 0; r < rows; r++) {
+			String src = pick(SERVICES);
+			String dest = mRandom.nextInt(10) < 3 ? pick(SERVICES) : src;
+			b.setLength(0);
+			b.append(getIP(r)).append(',').append(src).append(',').append(dest);
+			b.append(',').append(1 + mRandom.nextInt(9));
+			b.append(',').append(1 + mRandom.nextInt(9));
+			b.append(',').append(getBytes());
+			out.write(b.toString());
+			out.newLine();
+		}
+		out.close();
+		return rows;
+	}
+	
+	private long writeTimeSeries(String file, long dayEpoch) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("ip,epoch,records");
+		out.newLine();
+		StringBuilder b = new StringBuilder();
+		long rows = (long) mIPs.size() * TIMESERIES_ROWS_PER_IP;
+		for (long r = 0; r < rows; r++) {
+			b.setLength(0);
+			b.append(getIP(r)).append(',').append(dayEpoch + mRandom.nextInt(SECONDS_PER_DAY));
+			b.append(',').append(1 + mRandom.nextInt(9));
+			out.write(b.toString());
+			out.newLine();
+		}
+		out.close();
+		return rows;
+	}
+	
+	private long writeDailyProfile(String file, long dayEpoch) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("int,ext,src,dest,epoch,records,packets,bytes");
+		out.newLine();
+		StringBuilder b = new StringBuilder();
+		long rows = (long) mIPs.size() * PROFILE_ROWS_PER_IP;
+		for (long r = 0; r < rows; r++) {
+			String src = pick(SERVICES);
+			String dest = mRandom.nextInt(10) < 3 ? pick(SERVICES) : src;
+			b.setLength(0);
+			b.append("10.0.").append(mRandom.nextInt(256)).append('.').append(1 + mRandom.nextInt(254));
+			b.append(',').append(getIP(r)).append(',').append(src).append(',').append(dest);
+			b.append(',').append(dayEpoch + mRandom.nextInt(SECONDS_PER_DAY));
+			b.append(',').append(1 + mRandom.nextInt(9));
+			b.append(',').append(1 + mRandom.nextInt(9));
+			b.append(',').append(getBytes());
+			out.write(b.toString());
+			out.newLine();
+		}
+		out.close();
+		return rows;
+	}
+	
+	private static void writeHeader(String file, String header) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write(header);
+		out.newLine();
+		out.close();
+	}
+
+	//The first rows cover every IP once, the rest are random
+	private String getIP(long row) {
+		return row < mIPs.size() ? mIPs.get((int) row) : mIPs.get(mRandom.nextInt(mIPs.size()));
+	}
+	
+	//Heavy-tailed, as most flows are small
+	private long getBytes() {
+		return 40L + (long) (1.0E6 * Math.pow(mRandom.nextDouble(), 4.0));
+	}
+	
+	private String pick(String[] values) {
+		return values[mRandom.nextInt(values.length)];
+	}
+	
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.explorer.views;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the points of a {@link FastScatterPlot}, so that a
+ * viewport or selection rectangle only visits the points in the cells it
+ * overlaps. Points are stored cell by cell, in index order within a cell.
+ * NaN and infinite points are left out, as they are never drawn or selected.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class PointGrid {
+
+	private static final int POINTS_PER_CELL = 16;
+	private static final int MAX_SIDE = 1024;
+	
+	private float[] mX;
+	private float[] mY;
+	private int mSide;
+	private double mMinX;
+	private double mMaxX;
+	private double mMinY;
+	private double mMaxY;
+	private double mScaleX;
+	private double mScaleY;
+	
+	//The points of cell c are mPoints[mCellStart[c] .. mCellStart[c + 1])
+	private int[] mCellStart;
+	private int[] mPoints;
+	
+	public PointGrid(float[][] data) {
+		mX = data == null ? new float[0] : data[0];
+		mY = data == null ? new float[0] : data[1];
+		
+		mMinX = Double.POSITIVE_INFINITY;
+		mMaxX = Double.NEGATIVE_INFINITY;
+		mMinY = Double.POSITIVE_INFINITY;
+		mMaxY = Double.NEGATIVE_INFINITY;
+		int size = 0;
+		for (int i = 0; i < mX.length; i++) {
+			if (!isFinite(i)) continue;
+			
+			mMinX = Math.min(mMinX, mX[i]);
+			mMaxX = Math.max(mMaxX, mX[i]);
+			mMinY = Math.min(mMinY, mY[i]);
+			mMaxY = Math.max(mMaxY, mY[i]);
+			size++;
+		}
+		
+		mSide = (int) Math.min(MAX_SIDE, Math.max(1, Math.ceil(Math.sqrt((double) size / POINTS_PER_CELL))));
+		mScaleX = mMaxX > mMinX ? mSide / (mMaxX - mMinX) : 0.0;
+		mScaleY = mMaxY > mMinY ? mSide / (mMaxY - mMinY) : 0.0;
+		
+		//Counting sort of the points by cell
+		int[] cells = new int[mX.length];
+		mCellStart = new int[mSide * mSide + 1];
+		for (int i = 0; i < mX.length; i++) {
+			if (isFinite(i)) {
+				cells[i] = getCell(getCellX(mX[i]), getCellY(mY[i]));
+				mCellStart[cells[i] + 1]++;
+			} else {
+				cells[i] = -1;
+			}
+		}
+		for (int c = 0; c < mSide * mSide; c++) {
+			mCellStart[c + 1] += mCellStart[c];
+		}
+		
+		mPoints = new int[size];
+		int[] next = Arrays.copyOf(mCellStart, mSide * mSide);
+		for (int i = 0; i < mX.length; i++) {
+			if (cells[i] >= 0) {
+				mPoints[next[cells[i]]++] = i;
+			}
+		}
+	}
+	
+	public float[] getX() {
+		return mX;
+	}
+	
+	public float[] getY() {
+		return mY;
+	}
+	
+	public int size() {
+		return mPoints.length;
+	}
+	
+	/**
+	 * Returns the indexes of the points with xLow <= x <= xHigh and
+	 * yLow <= y <= yHigh, grouped by cell rather than in index order.
+	 */
+	public int[] query(double xLow, double xHigh, double yLow, double yHigh) {
+		if (mPoints.length == 0 || xHigh < mMinX || xLow > mMaxX || yHigh < mMinY || yLow > mMaxY) {
+			return new int[0];
+		}
+		
+		int cx0 = getCellX(xLow);
+		int cx1 = getCellX(xHigh);
+		int cy0 = getCellY(yLow);
+		int cy1 = getCellY(yHigh);
+		
+		int count = 0;
+		for (int cy = cy0; cy <= cy1; cy++) {
+			count += mCellStart[getCell(cx1, cy) + 1] - mCellStart[getCell(cx0, cy)];
+		}
+		
+		int[] result = new int[count];
+		int n = 0;
+		for (int cy = cy0; cy <= cy1; cy++) {
+			int end = mCellStart[getCell(cx1, cy) + 1];
+			for (int k = mCellStart[getCell(cx0, cy)]; k < end; k++) {
+				int i = mPoints[k];
+				float x = mX[i];
+				float y = mY[i];
+				if (x >= xLow && x <= xHigh && y >= yLow && y <= yHigh) {
+					result[n++] = i;
+				}
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+	
+	private boolean isFinite(int i) {
+		return !Float.isNaN(mX[i]) && !Float.isInfinite(mX[i]) && !Float.isNaN(mY[i]) && !Float.isInfinite(mY[i]);
+	}
+	
+	//Cells are laid out row by row, so a row of cells is one contiguous run of mPoints
+	private int getCell(int cx, int cy) {
+		return cy * mSide + cx;
+	}
+	
+	private int getCellX(double x) {
+		return clamp((int) ((x - mMinX) * mScaleX));
+	}
+	
+	private int getCellY(double y) {
+		return clamp((int) ((y - mMinY) * mScaleY));
+	}
+	
+	private int clamp(int c) {
+		return Math.max(0, Math.min(mSide - 1, c));
+	}
+	
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.model;
+
+import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.IndexedList;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A binary, column-major copy of an ARFF file that is memory-mapped on load.
+ * 
+ * Layout: a header (source ARFF length and modification time, attributes and their nominal values),
+ * an offset index into the UTF-8 encoded IDs, followed by one double column per attribute.
+ * Missing values are stored as NaN, nominal and string values as their index.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class ColumnStore {
+
+	private static final int MAGIC = 0x43594443;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final byte NUMERIC = 0;
+	private static final byte NOMINAL = 1;
+	private static final byte STRING = 2;
+	
+	private int mNumRows;
+	private Instances mHeader;
+	private ByteBuffer mIDs;
+	private DoubleBuffer[] mColumns;
+	private IndexedList<String> mIDIndex;
+	
+	private ColumnStore() {}
+	
+	public int numRows() {
+		return mNumRows;
+	}
+	
+	public int numAttributes() {
+		return mColumns.length;
+	}
+	
+	//Returns an empty dataset with the attributes and class index
+	public Instances getHeader() {
+		return new Instances(mHeader, 0);
+	}
+	
+	public String getID(int row) {
+		int start = mIDs.getInt(row * 4);
+		int end = mIDs.getInt((row + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer buffer = mIDs.duplicate();
+		buffer.position((mNumRows + 1) * 4 + start);
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	//Returns -1 if not found
+	public synchronized int getRow(String id) {
+		if (mIDIndex == null) {
+			List<String> ids = new ArrayList<String>(mNumRows);
+			for (int row = 0; row < mNumRows; row++) {
+				ids.add(getID(row));
+			}
+			mIDIndex = new IndexedList<String>(ids);
+		}
+		
+		return mIDIndex.getIndex(id);
+	}
+	
+	public double getValue(int row, int att) {
+		return mColumns[att].get(row);
+	}
+	
+	public DoubleBuffer getColumn(int att) {
+		return mColumns[att].duplicate();
+	}
+	
+	//Returns a detached Instance whose dataset is the shared header
+	public Instance getInstance(int row) {
+		double[] values = new double[mColumns.length];
+		for (int att = 0; att < values.length; att++) {
+			values[att] = mColumns[att].get(row);
+		}
+		Instance inst = new DenseInstance(1.0, values);
+		inst.setDataset(mHeader);
+		return inst;
+	}
+	
+	public Instances toInstances() {
+		Instances data = new Instances(mHeader, mNumRows);
+		for (int row = 0; row < mNumRows; row++) {
+			data.add(getInstance(row));
+		}
+		return data;
+	}
+	
+	public static boolean isSupported(Instances data) {
+		for (int i = 0; i < data.numAttributes(); i++) {
+			Attribute a = data.attribute(i);
+			if (a.isDate()) return false;
+			if (!a.isNumeric() && !a.isNominal() && !a.isString()) return false;
+		}
+		return true;
+	}
+	
+	//Valid if it was written from the current version of source
+	public static boolean isValid(String file, String source) throws IOException {
+		File f = new File(file);
+		File s = new File(source);
+		if (!f.isFile() || !s.exists()) return false;
+		
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new FileInputStream(f));
+		} catch (IOException ex) {
+			return false;
+		}
+		
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+			return in.readLong() == s.length() && in.readLong() == s.lastModified();
+		} catch (IOException ex) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+	
+	public static void write(Instances data, List<String> ids, String source, String file) throws IOException {
+		if (data.numInstances() != ids.size()) {
+			throw new IllegalArgumentException("Error: " + data.numInstances() + " instances but " + ids.size() + " IDs for " + file);
+		}
+		
+		File s = new File(source);
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(data.numInstances());
+		header.writeInt(data.numAttributes());
+		header.writeInt(data.classIndex());
+		header.writeUTF(data.relationName());
+		for (int i = 0; i < data.numAttributes(); i++) {
+			Attribute a = data.attribute(i);
+			header.writeUTF(a.name());
+			if (a.isNumeric()) {
+				header.writeByte(NUMERIC);
+			} else {
+				header.writeByte(a.isNominal() ? NOMINAL : STRING);
+				header.writeInt(a.numValues());
+				for (int v = 0; v < a.numValues(); v++) {
+					header.writeUTF(a.value(v));
+				}
+			}
+		}
+		header.close();
+		
+		ByteArrayOutputStream idBytes = new ByteArrayOutputStream();
+		int[] idOffsets = new int[ids.size() + 1];
+		for (int row = 0; row < ids.size(); row++) {
+			idBytes.write(ids.get(row).getBytes(UTF8));
+			idOffsets[row + 1] = idBytes.size();
+		}
+		
+		//magic, version, source length, source modified, header length, id length
+		long prefix = 4 + 4 + 8 + 8 + 4 + 4;
+		long idStart = prefix + headerBytes.size();
+		long idLength = idOffsets.length * 4L + idBytes.size();
+		long dataStart = align(idStart + idLength);
+		
+		//Written aside and renamed, so a failed write never leaves a truncated file that looks valid
+		File target = new File(file);
+		File temp = new File(file + ".tmp");
+		boolean done = false;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(s.length());
+			out.writeLong(s.lastModified());
+			out.writeInt(headerBytes.size());
+			out.writeInt((int) idLength);
+			headerBytes.writeTo(out);
+			for (int offset : idOffsets) {
+				out.writeInt(offset);
+			}
+			idBytes.writeTo(out);
+			for (long i = idStart + idLength; i < dataStart; i++) {
+				out.writeByte(0);
+			}
+			
+			for (int att = 0; att < data.numAttributes(); att++) {
+				for (int row = 0; row < data.numInstances(); row++) {
+					out.writeDouble(data.instance(row).value(att));
+				}
+			}
+			out.close();
+			
+			target.delete();
+			if (!temp.renameTo(target)) {
+				throw new IOException("Error: Cannot rename " + temp + " to " + target);
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				out.close();
+				temp.delete();
+			}
+		}
+	}
+	
+	public static ColumnStore open(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer prefix = channel.map(MapMode.READ_ONLY, 0, 32);
+			if (prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+				throw new IOException("Error: " + file + " is not a column file.");
+			}
+			prefix.getLong();
+			prefix.getLong();
+			int headerLength = prefix.getInt();
+			int idLength = prefix.getInt();
+			
+			byte[] headerBytes = new byte[headerLength];
+			channel.map(MapMode.READ_ONLY, 32, headerLength).get(headerBytes);
+			DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+			
+			ColumnStore store = new ColumnStore();
+			store.mNumRows = header.readInt();
+			int numAtts = header.readInt();
+			int classIndex = header.readInt();
+			String relation = header.readUTF();
+			ArrayList<Attribute> atts = new ArrayList<Attribute>(numAtts);
+			for (int i = 0; i < numAtts; i++) {
+				String name = header.readUTF();
+				byte type = header.readByte();
+				if (type == NUMERIC) {
+					atts.add(new Attribute(name));
+				} else {
+					int numValues = header.readInt();
+					List<String> values = CUtil.makeList();
+					for (int v = 0; v < numValues; v++) {
+						values.add(header.readUTF());
+					}
+					if (type == NOMINAL) {
+						atts.add(new Attribute(name, values));
+					} else {
+						Attribute a = new Attribute(name, (List<String>) null);
+						for (String v : values) {
+							a.addStringValue(v);
+						}
+						atts.add(a);
+					}
+				}
+			}
+			store.mHeader = new Instances(relation, atts, 0);
+			store.mHeader.setClassIndex(classIndex);
+			
+			long idStart = 32 + headerLength;
+			store.mIDs = channel.map(MapMode.READ_ONLY, idStart, idLength);
+			
+			long dataStart = align(idStart + idLength);
+			long columnLength = store.mNumRows * 8L;
+			store.mColumns = new DoubleBuffer[numAtts];
+			for (int att = 0; att < numAtts; att++) {
+				store.mColumns[att] = channel.map(MapMode.READ_ONLY, dataStart + att * columnLength, columnLength).asDoubleBuffer();
+			}
+			return store;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static long align(long offset) {
+		return (offset + 7) / 8 * 8;
+	}
+	
+}
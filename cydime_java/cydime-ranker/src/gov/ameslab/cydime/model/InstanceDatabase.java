@@ -44,14 +44,17 @@ import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.FileUtil;
 import gov.ameslab.cydime.util.IndexedList;
+import gov.ameslab.cydime.util.IpIndex;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import weka.core.Instance;
@@ -60,6 +63,7 @@ import weka.core.Instances;
 /**
  * A wrapper for Weka's Instances that maintains the IP (as key) for each Instance.
  * Also manages "report" Instances where the values are usually in their raw form (before normalization) for displaying.
+ * Both are cached as memory-mapped ColumnStore files next to the ARFF files, so that loading does not re-parse text.
  * 
  * @author Harris Lin (harris.lin.nz at gmail.com)
  */
@@ -72,6 +76,9 @@ public class InstanceDatabase {
 	private String mPath;
 	private List<String> mIDs;
 
+	private ColumnStore mColumns;
+	private ColumnStore mReportColumns;
+	private boolean mColumnsLoaded;
 	private Instances mInstances;
 	private Map<String, Instance> mInstanceMap;
 	private Instances mReportInstances;
@@ -97,6 +104,11 @@ public class InstanceDatabase {
 		return mIDs;
 	}
 
+	//Requires IPv4 IDs; the ordinal of each IP is its position in getIDs()
+	public IpIndex makeIPIndex() {
+		return new IpIndex(mIDs);
+	}
+
 	public String getARFFPath() {
 		return mPath + WekaPreprocess.ALL_SUFFIX;
 	}
@@ -113,6 +125,14 @@ public class InstanceDatabase {
 		return mPath + WekaPreprocess.CSV_REPORT_SUFFIX;
 	}
 	
+	public String getColumnPath() {
+		return mPath + WekaPreprocess.COLUMN_SUFFIX;
+	}
+	
+	public String getReportColumnPath() {
+		return mPath + WekaPreprocess.COLUMN_REPORT_SUFFIX;
+	}
+	
 	public String getIDPath() {
 		return mPath + WekaPreprocess.ID_SUFFIX;
 	}
@@ -137,12 +157,52 @@ public class InstanceDatabase {
 		FileUtil.writeFile(getIDPath(), mIDs);
 	}
 
+	private void loadColumns() throws IOException {
+		if (mColumnsLoaded) return;
+		
+		mColumns = loadColumns(getARFFPath(), getColumnPath());
+		mReportColumns = loadColumns(getReportARFFPath(), getReportColumnPath());
+		mColumnsLoaded = true;
+	}
+	
+	//Returns null if the ARFF cannot be stored in columns, or the column file cannot be written (e.g. read-only directory)
+	private ColumnStore loadColumns(String arff, String column) throws IOException {
+		if (!ColumnStore.isValid(column, arff)) {
+			Instances data = WekaPreprocess.loadARFF(arff);
+			if (!ColumnStore.isSupported(data)) return null;
+			
+			if (!writeColumns(data, arff, column)) return null;
+		}
+		
+		return ColumnStore.open(column);
+	}
+	
+	//The column file is only a cache of the ARFF, so failing to write it is not an error
+	private boolean writeColumns(Instances data, String arff, String column) {
+		try {
+			ColumnStore.write(data, mIDs, arff, column);
+			return true;
+		} catch (IOException e) {
+			Log.log(Level.WARNING, "Cannot write {0}, reading {1} instead: {2}", new Object[] {column, arff, e.getMessage()});
+			return false;
+		}
+	}
+	
+	private Instances toInstances(ColumnStore columns, String arff) throws IOException {
+		if (columns == null) {
+			return WekaPreprocess.loadARFF(arff);
+		} else {
+			return columns.toInstances();
+		}
+	}
+	
 	private void loadInstances() {
 		if (mInstances != null) return;
 		
 		try {
-			mInstances = WekaPreprocess.loadARFF(getARFFPath());
-			mReportInstances = WekaPreprocess.loadARFF(getReportARFFPath());
+			loadColumns();
+			mInstances = toInstances(mColumns, getARFFPath());
+			mReportInstances = toInstances(mReportColumns, getReportARFFPath());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -170,6 +230,48 @@ public class InstanceDatabase {
 		mReportAttributeIndex = new IndexedList<String>(names);
 	}
 	
+	//Requires loadColumns, null if not available
+	public ColumnStore getColumnStore() throws IOException {
+		loadColumns();
+		return mColumns;
+	}
+	
+	//Requires loadColumns, null if not available
+	public ColumnStore getReportColumnStore() throws IOException {
+		loadColumns();
+		return mReportColumns;
+	}
+	
+	//Requires loadColumns
+	public Instances getWekaHeader() throws IOException {
+		loadColumns();
+		if (mColumns == null) {
+			return new Instances(getWekaInstances(), 0);
+		} else {
+			return mColumns.getHeader();
+		}
+	}
+	
+	//Requires loadColumns. Returns a read-only copy without loading all instances.
+	public Instance readWekaInstance(String id) throws IOException {
+		loadColumns();
+		if (mInstances != null || mColumns == null) return getWekaInstance(id);
+		return readInstance(mColumns, id);
+	}
+	
+	//Requires loadColumns. Returns a read-only copy without loading all instances.
+	public Instance readWekaReportInstance(String id) throws IOException {
+		loadColumns();
+		if (mInstances != null || mReportColumns == null) return getWekaReportInstance(id);
+		return readInstance(mReportColumns, id);
+	}
+	
+	private static Instance readInstance(ColumnStore columns, String id) {
+		int row = columns.getRow(id);
+		if (row < 0) return null;
+		return columns.getInstance(row);
+	}
+	
 	//Requires loadInstances
 	public Instances getWekaInstances() {
 		loadInstances();
@@ -300,10 +402,18 @@ public class InstanceDatabase {
 	}
 	
 	//Requires loadInstances
-	public void write() {
+	public void write() throws IOException {
 		loadInstances();
 		WekaPreprocess.save(mInstances, getARFFPath());
 		WekaPreprocess.save(mReportInstances, getReportARFFPath());
+		
+		mColumns = null;
+		mReportColumns = null;
+		mColumnsLoaded = false;
+		if (ColumnStore.isSupported(mInstances) && ColumnStore.isSupported(mReportInstances)) {
+			writeColumns(mInstances, getARFFPath(), getColumnPath());
+			writeColumns(mReportInstances, getReportARFFPath(), getReportColumnPath());
+		}
 	}
 
 	public void writeReport() throws IOException {
@@ -356,6 +466,25 @@ public class InstanceDatabase {
 		return mTestInstances;
 	}
 
+	//Requires loadInstances. Returns copies of the instances that are labeled
+	//either here or in labels (which takes precedence), in ID order. This
+	//database is left untouched so it can be shared by concurrent runs.
+	public Instances getWekaTrain(Map<String, String> labels) {
+		loadInstances();
+		Instances train = new Instances(mInstances, labels.size());
+		for (String id : mIDs) {
+			Instance inst = mInstanceMap.get(id);
+			String label = labels.get(id);
+			if (label == null && inst.classIsMissing()) continue;
+			
+			train.add(inst);
+			if (label != null) {
+				train.lastInstance().setClassValue(label);
+			}
+		}
+		return train;
+	}
+
 	public static boolean exists(String path) throws IOException {
 		InstanceDatabase insts = new InstanceDatabase(path);
 		File id = new File(insts.getIDPath());
@@ -387,8 +516,7 @@ public class InstanceDatabase {
 		}
 		
 		String[] paths = getPaths(insts);
-		WekaPreprocess.mergeARFF(path, WekaPreprocess.ALL_SUFFIX, paths);		
-		WekaPreprocess.mergeARFF(path, WekaPreprocess.REPORT_SUFFIX, paths);		
+		WekaPreprocess.mergeARFFs(path, Arrays.asList(paths), WekaPreprocess.ALL_SUFFIX, WekaPreprocess.REPORT_SUFFIX);
 		
 		return new InstanceDatabase(path, CUtil.makeList(insts[0].mIDs));
 	}
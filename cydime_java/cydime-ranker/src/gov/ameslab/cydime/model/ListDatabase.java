@@ -41,6 +41,7 @@ package gov.ameslab.cydime.model;
 
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.NetUtil;
+import gov.ameslab.cydime.util.SubnetTrie;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -51,13 +52,22 @@ import java.util.Set;
 
 import org.apache.commons.net.util.SubnetUtils;
 
+/**
+ * White or black list of single IPs and subnets. Subnets are compiled into a
+ * SubnetTrie so that matching a list of IPs costs O(32) per IP rather than one
+ * isInRange call per subnet and IP.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
 public class ListDatabase {
 
 	private List<SubnetUtils> mSubsets;
+	private SubnetTrie mTrie;
 	private Set<String> mIPs;
 	
 	public ListDatabase() {
 		mSubsets = CUtil.makeList();
+		mTrie = new SubnetTrie();
 		mIPs = CUtil.makeSet();
 	}
 	
@@ -98,12 +108,14 @@ public class ListDatabase {
 
 	public void addSubset(SubnetUtils subnet) {
 		mSubsets.add(subnet);
+		mTrie.add(subnet);
 	}
 
 	public void addIP(String ip) {
 		mIPs.add(ip);
 	}
 
+	//Groups are single IPs first, then one per matching subnet in file order
 	public List<List<String>> getList(List<String> ips) {
 		Set<String> ipSet = CUtil.makeSet(ips);
 		List<List<String>> list = CUtil.makeList();
@@ -114,9 +126,8 @@ public class ListDatabase {
 			}
 		}
 		
-		for (SubnetUtils subnet : mSubsets) {
-			Set<String> match = NetUtil.matchSubnet(ipSet, subnet);
-			if (!match.isEmpty()) {
+		for (Set<String> match : matchSubnets(ipSet)) {
+			if (match != null) {
 				list.add(CUtil.makeList(match));
 			}
 		}
@@ -133,14 +144,40 @@ public class ListDatabase {
 			}
 		}
 		
-		for (SubnetUtils subnet : mSubsets) {
-			Set<String> match = NetUtil.matchSubnet(ips, subnet);
-			if (!match.isEmpty()) {
-				ipSet.addAll(match);
+		if (mTrie.isEmpty()) return ipSet;
+		
+		int[] entries = new int[mTrie.size()];
+		for (String ip : ips) {
+			if (mTrie.match(NetUtil.toInt(ip), entries) > 0) {
+				ipSet.add(ip);
 			}
 		}
 		
 		return ipSet;
 	}
+	
+	//Matches per subnet index, null if none. Each set is filled in the iteration order of ips,
+	//as NetUtil.matchSubnet does, so LabelSample draws the same samples.
+	private List<Set<String>> matchSubnets(Set<String> ips) {
+		List<Set<String>> matches = CUtil.makeList();
+		for (int i = 0; i < mTrie.size(); i++) {
+			matches.add(null);
+		}
+		if (mTrie.isEmpty()) return matches;
+		
+		int[] entries = new int[mTrie.size()];
+		for (String ip : ips) {
+			int count = mTrie.match(NetUtil.toInt(ip), entries);
+			for (int i = 0; i < count; i++) {
+				Set<String> match = matches.get(entries[i]);
+				if (match == null) {
+					match = CUtil.makeSet();
+					matches.set(entries[i], match);
+				}
+				match.add(ip);
+			}
+		}
+		return matches;
+	}
 
 }
@@ -41,6 +41,7 @@ package gov.ameslab.cydime.preprocess;
 
 import gov.ameslab.cydime.model.DomainDatabase;
 import gov.ameslab.cydime.model.InstanceDatabase;
+import gov.ameslab.cydime.preprocess.StageScheduler.Stage;
 import gov.ameslab.cydime.preprocess.lexical.Lexical;
 import gov.ameslab.cydime.preprocess.netflow.Netflow;
 import gov.ameslab.cydime.preprocess.service.ServiceMax;
@@ -48,14 +49,22 @@ import gov.ameslab.cydime.preprocess.timeseries.TimeAccess;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 import gov.ameslab.cydime.util.FileUtil;
+import gov.ameslab.cydime.util.IpIndex;
+import gov.ameslab.cydime.util.RunReport;
 import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.text.ParseException;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,70 +79,171 @@ public class CydimePreprocessor {
 	
 	private DomainDatabase mDomainDB;
 	private List<String> mIDs;
+	//Ordinals of mIDs, shared by the stages that key their state by IP
+	private IpIndex mIndex;
+	private int mThreads;
 	
 	public static void main(String[] args) throws IOException {
-		if (args.length != 1) {
+		if (args.length < 1 || args.length > 3) {
 			printUsage();
 			return;
 		}
 		
-		new CydimePreprocessor(args[0]).run();
+		String endDatePath = args.length > 1 ? args[1] : args[0];
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		for (String datePath : getDatePaths(args[0], endDatePath)) {
+			Config.INSTANCE.setParam(datePath);
+			if (!new File(Config.INSTANCE.getRootDatePath() + Config.INSTANCE.getPath(Config.FEATURE_DIR)).isDirectory()) {
+				Log.log(Level.WARNING, "Skipping {0}: no feature directory", datePath);
+				continue;
+			}
+			
+			new CydimePreprocessor(datePath, threads).run();
+		}
 	}
 
 	private static void printUsage() {
-		System.out.println("[java] CydimePreprocessor FEATURE_DIR");
+		System.out.println("[java] CydimePreprocessor FEATURE_DIR [END_FEATURE_DIR [THREADS]]");
 		System.out.println("    FEATURE_DIR: date path specifying feature files");
+		System.out.println("    END_FEATURE_DIR: last date path of an inclusive range, processed one date at a time");
+		System.out.println("    THREADS: number of feature sets built concurrently (default: number of cores)");
+	}
+	
+	private static List<String> getDatePaths(String beginDatePath, String endDatePath) {
+		Date begin;
+		Date end;
+		try {
+			begin = Config.FORMAT_DATE.parse(beginDatePath);
+			end = Config.FORMAT_DATE.parse(endDatePath);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Error: invalid date path " + e.getMessage());
+		}
+		
+		List<String> datePaths = CUtil.makeList();
+		Calendar cal = new GregorianCalendar();
+		cal.setTime(begin);
+		while (!cal.getTime().after(end)) {
+			datePaths.add(Config.FORMAT_DATE.format(cal.getTime()));
+			cal.add(Calendar.DATE, 1);
+		}
+		return datePaths;
 	}
 	
 	public CydimePreprocessor(String datePath) throws IOException {
+		this(datePath, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public CydimePreprocessor(String datePath, int threads) throws IOException {
 		Config.INSTANCE.setParam(datePath);
 		mDomainDB = DomainDatabase.load();
+		mThreads = threads;
 	}
 	
 	private void run() {
+		RunReport.INSTANCE.begin("preprocess " + Config.INSTANCE.getCurrentDatePath());
 		try {
 			runExtIP();
-		} catch (IOException e) {
+		} catch (Exception e) {
 			Log.log(Level.SEVERE, e.toString());
 			e.printStackTrace();
+		} finally {
+			writeRunReport();
 		}
 		
 //		try {
 //			runInt();
-//		} catch (IOException e) {
+//		} catch (Exception e) {
 //			Log.log(Level.SEVERE, e.toString());
 //			e.printStackTrace();
 //		}
 	}
 	
-	private void runExtIP() throws IOException {
+	private void runExtIP() throws Exception {
 		Config.INSTANCE.setFeatureDir(Config.IP_DIR);
 		loadExtIDs();
 		
-		InstanceDatabase service = new ServiceMax(mIDs, Config.INSTANCE.getService(), Config.INSTANCE.getService()).run();
-		InstanceDatabase netflow = new Netflow(mIDs, Config.INSTANCE.getNetflow(), Config.INSTANCE.getNetflow()).run();
-		InstanceDatabase ta = new TimeAccess(mIDs, Config.INSTANCE.getTimeSeries(), Config.INSTANCE.getTimeAccess()).run();
+		//Feature sets read Config when constructed, so build them here and only run them in the pool
+		StageScheduler stages = new StageScheduler(mThreads);
+		final ServiceMax serviceSet = new ServiceMax(mIDs, mIndex, Config.INSTANCE.getService(), Config.INSTANCE.getService());
+		final Stage<InstanceDatabase> service = stages.add("service", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				return serviceSet.run();
+			}
+			
+		});
+		
+		final Netflow netflowSet = new Netflow(mIDs, Config.INSTANCE.getNetflow(), Config.INSTANCE.getNetflow());
+		final Stage<InstanceDatabase> netflow = stages.add("netflow", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				return netflowSet.run();
+			}
+			
+		});
+		
+		final TimeAccess taSet = new TimeAccess(mIDs, mIndex, Config.INSTANCE.getTimeSeries(), Config.INSTANCE.getTimeAccess());
+		final Stage<InstanceDatabase> ta = stages.add("timeaccess", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				return taSet.run();
+			}
+			
+		});
 		
-		mDomainDB.loadTree();
-		InstanceDatabase lexical = new Lexical(mIDs, Config.INSTANCE.getLexical(), Config.INSTANCE.getLexical(), mDomainDB).run();
-		mDomainDB.clearTree();
+		final Lexical lexicalSet = new Lexical(mIDs, Config.INSTANCE.getLexical(), Config.INSTANCE.getLexical(), mDomainDB);
+		final Stage<InstanceDatabase> lexical = stages.add("lexical", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				mDomainDB.loadTree();
+				try {
+					return lexicalSet.run();
+				} finally {
+					mDomainDB.clearTree();
+				}
+			}
+			
+		});
+		
+		final String basePath = Config.INSTANCE.getBasePath();
+		Stage<Void> merge = stages.add("merge", new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				InstanceDatabase base = InstanceDatabase.mergeFeatures(basePath,
+						service.get(),
+						netflow.get(),
+						ta.get(),
+						lexical.get()
+						);		
+				service.clear();
+				netflow.clear();
+				ta.clear();
+				lexical.clear();
 				
-		InstanceDatabase base = InstanceDatabase.mergeFeatures(Config.INSTANCE.getBasePath(),
-				service,
-				netflow,
-				ta,
-				lexical
-				);		
-		service = null;
-		netflow = null;
-		ta = null;
-		lexical = null;
-		
-		base.saveIPs();
-		base.write();
-		base.writeReport();
-		
-		new FeatureCombiner().run();
+				base.saveIPs();
+				base.write();
+				base.writeReport();
+				return null;
+			}
+			
+		}, service, netflow, ta, lexical);
+		
+		stages.add("combine", new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				new FeatureCombiner().run();
+				return null;
+			}
+			
+		}, merge);
+		
+		stages.run();
 
 		//for Explorer
 //		new BiGraph(mIDs, Config.INSTANCE.getPairService(), Config.INSTANCE.getPairService()).run();
@@ -151,20 +261,50 @@ public class CydimePreprocessor {
 		
 		mIDs = CUtil.makeList(allIPs);
 		Collections.sort(mIDs);
+		mIndex = new IpIndex(mIDs);
+		RunReport.INSTANCE.gauge("ids", mIDs.size());
 
 		Log.log(Level.INFO, "Loaded {0}", mIDs.size() );
 	}
+	
+	//Also after a failure, to show which stage was open
+	private static void writeRunReport() {
+		try {
+			RunReport.INSTANCE.write(Config.INSTANCE.getRunReportPath("preprocess"));
+		} catch (IOException e) {
+			Log.log(Level.WARNING, "Cannot write run report: {0}", e.toString());
+		}
+	}
 
-	private void runInt() throws IOException {
+	private void runInt() throws Exception {
 		Config.INSTANCE.setFeatureDir(Config.INT_DIR);
 		loadIntIPs();
 		
-		InstanceDatabase netflow = new Netflow(mIDs, Config.INSTANCE.getNetflow(), Config.INSTANCE.getNetflow()).run();
-		InstanceDatabase ta = new TimeAccess(mIDs, Config.INSTANCE.getTimeSeries(), Config.INSTANCE.getTimeAccess()).run();
+		StageScheduler stages = new StageScheduler(mThreads);
+		final Netflow netflowSet = new Netflow(mIDs, Config.INSTANCE.getNetflow(), Config.INSTANCE.getNetflow());
+		final Stage<InstanceDatabase> netflow = stages.add("netflow", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				return netflowSet.run();
+			}
+			
+		});
+		
+		final TimeAccess taSet = new TimeAccess(mIDs, mIndex, Config.INSTANCE.getTimeSeries(), Config.INSTANCE.getTimeAccess());
+		final Stage<InstanceDatabase> ta = stages.add("timeaccess", new Callable<InstanceDatabase>() {
+
+			@Override
+			public InstanceDatabase call() throws Exception {
+				return taSet.run();
+			}
+			
+		});
+		stages.run();
 		
 		InstanceDatabase baseInt = InstanceDatabase.mergeFeatures(Config.INSTANCE.getBasePath(),
-				netflow,
-				ta);
+				netflow.get(),
+				ta.get());
 
 		baseInt.saveIPs();
 		baseInt.writeReport();
@@ -185,6 +325,7 @@ public class CydimePreprocessor {
 		
 		mIDs = CUtil.makeList(allIPs);
 		Collections.sort(mIDs);
+		mIndex = new IpIndex(mIDs);
 		
 		Log.log(Level.INFO, "Internal IP set = {0}", mIDs.size() );
 	}
@@ -47,7 +47,7 @@ public class FeatureCombiner {
 				); 
 		
 		for (String id : base.getIDs()) {
-			Instance inst = base.getWekaReportInstance(id);
+			Instance inst = base.readWekaReportInstance(id);
 			
 			double hours = inst.value(10);
 			if (hours < 0.0) hours = 1.0;
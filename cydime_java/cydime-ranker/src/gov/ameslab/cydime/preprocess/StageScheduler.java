@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.preprocess;
+
+import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.RunReport;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs preprocessing stages on a bounded thread pool. A stage is started as
+ * soon as all the stages it depends on have finished, so independent
+ * feature sets are built concurrently and a merge stage waits for exactly
+ * the inputs it needs. Stages must be added after their dependencies.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class StageScheduler {
+
+	private static final Logger Log = Logger.getLogger(StageScheduler.class.getName());
+	
+	private int mThreads;
+	private List<Stage<?>> mStages;
+	
+	public StageScheduler(int threads) {
+		mThreads = threads;
+		mStages = CUtil.makeList();
+	}
+	
+	public <T> Stage<T> add(String name, Callable<T> task, Stage<?> ... dependencies) {
+		for (Stage<?> d : dependencies) {
+			if (!mStages.contains(d)) throw new IllegalArgumentException("Error: stage " + name + " depends on unknown stage " + d.mName);
+		}
+		
+		Stage<T> stage = new Stage<T>(name, task, dependencies);
+		mStages.add(stage);
+		return stage;
+	}
+	
+	public void run() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(mThreads, mStages.size())));
+		CompletionService<Stage<?>> done = new ExecutorCompletionService<Stage<?>>(pool);
+		Map<Stage<?>, Integer> waiting = CUtil.makeMap();
+		int running = 0;
+		try {
+			for (Stage<?> stage : mStages) {
+				if (stage.mDependencies.length == 0) {
+					done.submit(stage);
+					running++;
+				} else {
+					waiting.put(stage, stage.mDependencies.length);
+				}
+			}
+			
+			while (running > 0) {
+				Stage<?> finished = done.take().get();
+				running--;
+				
+				for (Stage<?> stage : mStages) {
+					Integer remaining = waiting.get(stage);
+					if (remaining == null) continue;
+					
+					for (Stage<?> d : stage.mDependencies) {
+						if (d == finished) {
+							remaining--;
+						}
+					}
+					
+					if (remaining == 0) {
+						waiting.remove(stage);
+						done.submit(stage);
+						running++;
+					} else {
+						waiting.put(stage, remaining);
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			} else {
+				throw e;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	public static class Stage<T> implements Callable<Stage<?>> {
+		
+		private String mName;
+		private Callable<T> mTask;
+		private Stage<?>[] mDependencies;
+		private volatile T mResult;
+		
+		private Stage(String name, Callable<T> task, Stage<?>[] dependencies) {
+			mName = name;
+			mTask = task;
+			mDependencies = dependencies;
+		}
+		
+		@Override
+		public Stage<?> call() throws Exception {
+			Log.log(Level.INFO, "Starting stage {0}...", mName);
+			long start = System.currentTimeMillis();
+			RunReport.Timer timer = RunReport.INSTANCE.startTimer(mName);
+			mResult = mTask.call();
+			timer.stop();
+			Log.log(Level.INFO, "Finished stage {0} in {1} ms", new Object[] {mName, System.currentTimeMillis() - start});
+			return this;
+		}
+		
+		//Only valid once the stage has finished, e.g. from a dependent stage
+		public T get() {
+			return mResult;
+		}
+		
+		//Drops the result so that its memory can be reclaimed
+		public void clear() {
+			mResult = null;
+		}
+		
+	}
+	
+}
@@ -40,6 +40,8 @@
 package gov.ameslab.cydime.preprocess;
 
 import gov.ameslab.cydime.filter.NormalizeLog;
+import gov.ameslab.cydime.util.ByteLineReader;
+import gov.ameslab.cydime.util.ByteLineWriter;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.StringUtil;
 
@@ -49,9 +51,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Instances;
 import weka.core.converters.ArffSaver;
@@ -77,6 +85,8 @@ public class WekaPreprocess {
 	public static final String REPORT_SUFFIX = ".report.arff";
 	public static final String CSV_SUFFIX = ".csv";
 	public static final String CSV_REPORT_SUFFIX = ".report.csv";
+	public static final String COLUMN_SUFFIX = ".col";
+	public static final String COLUMN_REPORT_SUFFIX = ".report.col";
 	
 	public enum UnsupervisedFilter {
 		StringToNominal,
@@ -209,64 +219,153 @@ public class WekaPreprocess {
 		mergeARFFFile(outBase + suffix, files);
 	}
 
-	//Last inFile is used to get class label
-	public static void mergeARFFFile(String outFile, String ... inFile) throws IOException {
-		BufferedWriter out = new BufferedWriter(new FileWriter(outFile));
-		out.write("@relation " + outFile);
-		out.newLine();
-		out.newLine();
-		
-		int[] attSize = new int[inFile.length];
-		BufferedReader[] in = new BufferedReader[inFile.length];
-		for (int i = 0; i < in.length; i++) {
-			in[i] = new BufferedReader(new FileReader(inFile[i]));
-		}
-		
-		for (int i = 0; i < in.length; i++) {
-			String line = null;
-			String trimmedLine = null;
-			while (true) {
-				line = in[i].readLine();
-				trimmedLine = line.toLowerCase().trim();
-				if (trimmedLine.startsWith("@data")) {
-					break;
-				} else if (trimmedLine.startsWith("@attribute class")) {
-					continue;
-				} else if (trimmedLine.startsWith("@attribute")) {
-					out.write(line);
-					out.newLine();
-					attSize[i]++;
+	//Last inFile is used to get class label. Each suffix is merged on its own thread.
+	public static void mergeARFFs(final String outBase, final List<String> inFile, String ... suffixes) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(suffixes.length);
+		try {
+			List<Future<Void>> futures = CUtil.makeList();
+			for (final String suffix : suffixes) {
+				futures.add(pool.submit(new Callable<Void>() {
+	
+					@Override
+					public Void call() throws Exception {
+						mergeARFF(outBase, suffix, inFile);
+						return null;
+					}
+					
+				}));
+			}
+			
+			for (Future<Void> f : futures) {
+				try {
+					f.get();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					} else {
+						throw new IOException(e.getCause());
+					}
 				}
 			}
+		} finally {
+			pool.shutdownNow();
 		}
-		
-		out.write("@attribute class {0,1}");
-		out.newLine();
-		out.newLine();
-		out.write("@data");
-		out.newLine();
-		
-		String line = "";
-		while (line != null) {
+	}
+
+	//Last inFile is used to get class label.
+	//Data rows are copied as byte ranges, only the header is decoded.
+	public static void mergeARFFFile(String outFile, String ... inFile) throws IOException {
+		Charset charset = Charset.defaultCharset();
+		ByteLineWriter out = new ByteLineWriter(outFile);
+		ByteLineReader[] in = new ByteLineReader[inFile.length];
+		try {
+			out.write("@relation " + outFile);
+			out.newLine();
+			out.newLine();
+			
+			int[] attSize = new int[inFile.length];
 			for (int i = 0; i < in.length; i++) {
-				line = in[i].readLine();
-				if (line == null || line.trim().isEmpty()) break;
-				
-				if (i == in.length - 1) {
-					out.write(line);
-				} else {
-					String[] split = StringUtil.trimmedSplit(line, ",");
-					for (int a = 0; a < attSize[i]; a++) {
-						out.write(split[a]);
-						out.write(",");
+				in[i] = new ByteLineReader(inFile[i]);
+			}
+			
+			for (int i = 0; i < in.length; i++) {
+				while (true) {
+					if (!in[i].readLine()) throw new IOException("Error: " + inFile[i] + " has no @data.");
+					
+					String line = in[i].getLine(charset);
+					String trimmedLine = line.toLowerCase().trim();
+					if (trimmedLine.startsWith("@data")) {
+						break;
+					} else if (trimmedLine.startsWith("@attribute class")) {
+						continue;
+					} else if (trimmedLine.startsWith("@attribute")) {
+						out.write(line);
+						out.newLine();
+						attSize[i]++;
 					}
 				}
 			}
 			
+			out.write("@attribute class {0,1}");
+			out.newLine();
 			out.newLine();
+			out.write("@data");
+			out.newLine();
+			
+			boolean hasLine = true;
+			while (hasLine) {
+				for (int i = 0; i < in.length; i++) {
+					hasLine = in[i].readLine();
+					if (!hasLine || in[i].isBlank()) break;
+					
+					if (i == in.length - 1) {
+						out.write(in[i].getLineBytes());
+					} else {
+						copyFields(in[i], attSize[i], out, inFile[i]);
+					}
+				}
+				
+				out.newLine();
+			}
+		} finally {
+			for (ByteLineReader r : in) {
+				if (r != null) {
+					r.close();
+				}
+			}
+			out.close();
+		}
+	}
+	
+	//Writes the first n comma-separated fields of the current line, each trimmed and followed by a comma
+	private static void copyFields(ByteLineReader in, int n, ByteLineWriter out, String file) throws IOException {
+		if (n == 0) return;
+		
+		int start = in.getStart();
+		int end = in.getEnd();
+		int commas = 0;
+		boolean hasSpace = false;
+		int i = start;
+		for (; i < end; i++) {
+			int b = in.byteAt(i) & 0xFF;
+			if (b == ',') {
+				if (++commas == n) break;
+			} else if (b <= ' ') {
+				hasSpace = true;
+			}
 		}
 		
-		out.close();
+		if (commas < n - 1) throw new IOException("Error: " + file + " has a row with fewer than " + n + " fields.");
+		
+		if (!hasSpace) {
+			//Common case, the fields are copied with their commas in one go
+			if (i < end) {
+				out.write(in.slice(start, i + 1));
+			} else {
+				out.write(in.slice(start, end));
+				out.write((byte) ',');
+			}
+			return;
+		}
+		
+		int fieldStart = start;
+		for (int f = 0; f < n; f++) {
+			int fieldEnd = fieldStart;
+			while (fieldEnd < end && in.byteAt(fieldEnd) != ',') {
+				fieldEnd++;
+			}
+			
+			int a = fieldStart;
+			int b = fieldEnd;
+			while (a < b && (in.byteAt(a) & 0xFF) <= ' ') a++;
+			while (b > a && (in.byteAt(b - 1) & 0xFF) <= ' ') b--;
+			out.write(in.slice(a, b));
+			out.write((byte) ',');
+			
+			fieldStart = fieldEnd + 1;
+		}
 	}
 
 	public static void concatARFF(String outBase, String suffix, String ... inFile) throws IOException {
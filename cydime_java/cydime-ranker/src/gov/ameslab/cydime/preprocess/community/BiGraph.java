@@ -41,8 +41,8 @@ package gov.ameslab.cydime.preprocess.community;
 
 import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.IndexedList;
-import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -65,7 +65,7 @@ public class BiGraph extends FeatureSet {
 	
 	private IndexedList<String> mIntIPList;
 	private IndexedList<String> mExtIPList;
-	private Matrix<Double> mMatrix; // mMatrix[internal][external]
+	private SparseMatrix mMatrix; // mMatrix[internal][external]
 	
 	public BiGraph(List<String> ids, String inPath, String outPath) {
 		super(ids, inPath, outPath);
@@ -81,13 +81,14 @@ public class BiGraph extends FeatureSet {
 	private void read() throws IOException {
 		Set<String> intSet = CUtil.makeSet();
 		Set<String> extSet = CUtil.makeSet();
+		FieldCursor cursor = new FieldCursor(',');
 		for (String inPath : mFeaturePaths) {
 			BufferedReader in = new BufferedReader(new FileReader(inPath));
 			String line = in.readLine();
 			while ((line = in.readLine()) != null) {
-				String[] split = StringUtil.trimmedSplit(line, ",");
-				intSet.add(split[0]);
-				extSet.add(split[1]);
+				cursor.reset(line);
+				intSet.add(cursor.nextString());
+				extSet.add(cursor.nextString());
 			}
 			in.close();
 		}
@@ -98,28 +99,30 @@ public class BiGraph extends FeatureSet {
 		Log.log(Level.INFO, "External IPs = {0}", mExtIPList.size());
 		Log.log(Level.INFO, "Internal IPs = {0}", mIntIPList.size());
 		
-		mMatrix = new Matrix<Double>(mIntIPList.size(), mExtIPList.size(), 0.0);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(mIntIPList.size(), mExtIPList.size());
 		for (String inPath : mFeaturePaths) {
 			BufferedReader in = new BufferedReader(new FileReader(inPath));
 			String line = in.readLine();
 			while ((line = in.readLine()) != null) {
-				String[] split = StringUtil.trimmedSplit(line, ",");
-				double weight = Double.parseDouble(split[6]);
-				int intIndex = mIntIPList.getIndex(split[0]);
-				int extIndex = mExtIPList.getIndex(split[1]);
-				Double old = mMatrix.get(intIndex, extIndex);
-				mMatrix.set(intIndex, extIndex, old + weight);
+				cursor.reset(line);
+				int intIndex = mIntIPList.getIndex(cursor.nextString());
+				int extIndex = mExtIPList.getIndex(cursor.nextString());
+				cursor.skip(4);
+				double weight = cursor.nextDouble();
+				builder.add(intIndex, extIndex, weight);
 			}
 			in.close();
 		}
+		mMatrix = builder.build();
 	}
 
 	private void saveMatrix() throws IOException {
 		BufferedWriter out = new BufferedWriter(new FileWriter(mCurrentOutPath + ".graph.csv"));
+		int[] es = mMatrix.getIIndices();
 		for (int i = 0; i < mIntIPList.size(); i++) {
-			for (int e : mMatrix.getNeighborsOfI(i)) {
+			for (int k = mMatrix.getIStart(i); k < mMatrix.getIEnd(i); k++) {
 				String intIP = mIntIPList.get(i);
-				String extIP = mExtIPList.get(e);
+				String extIP = mExtIPList.get(es[k]);
 				out.write(intIP);
 				out.write(",");
 				out.write(extIP);
@@ -0,0 +1,267 @@
+package gov.ameslab.cydime.preprocess.community;
+
+import gov.ameslab.cydime.util.MathUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * NEAL edge probabilities, i.e. hypergeometric tails P(X >= Pij) for two
+ * vertices of degree Di and Dj among A shared neighbors. Each tail is
+ * summed from a single logChoose-based term using the pmf ratio
+ * P(x + 1) / P(x) = (Dmin - x)(Dmax - x) / ((x + 1)(A - Dmin - Dmax + x + 1)),
+ * and results are memoized in a bounded LRU cache since many pairs share
+ * the same degrees.
+ *
+ * Not thread-safe; use one instance per thread. The LogFact may be shared
+ * if it is already filled up to A.
+ *
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class HypergeometricTail {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	
+	private static final int SHORT_TAIL = 8;
+
+	//Rescale the running sum before it can overflow
+	private static final double RESCALE_THRESHOLD = 1.0E200;
+	private static final double LOG_RESCALE_THRESHOLD = Math.log(RESCALE_THRESHOLD);
+
+	private LogFact mLogFact;
+	private Map<Key, Double> mCache;
+	private long mHits;
+	private long mMisses;
+
+	public HypergeometricTail(LogFact logFact) {
+		this(logFact, DEFAULT_CAPACITY);
+	}
+
+	public HypergeometricTail(LogFact logFact, final int capacity) {
+		mLogFact = logFact;
+		mCache = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+				return size() > capacity;
+			}
+
+		};
+	}
+
+	public long getHits() {
+		return mHits;
+	}
+
+	public long getMisses() {
+		return mMisses;
+	}
+
+	public double getNealProb(int A, int Di, int Dj, int Pij) {
+		if (Pij == 0) return 1.0;
+
+		int Dmin = Math.min(Di, Dj);
+		int Dmax = Math.max(Di, Dj);
+		int begin = Math.max(0, Di + Dj - A);
+		boolean isUpper = Pij > Dmin / 2;
+		int length = isUpper ? Dmin - Pij + 1 : Pij - begin;
+		
+		//Short tails are cheaper to sum than to look up
+		if (length <= SHORT_TAIL) {
+			return getNealProb(A, Dmin, Dmax, begin, Pij, isUpper);
+		}
+		
+		Key key = new Key(A, Dmin, Dmax, Pij);
+		Double cached = mCache.get(key);
+		if (cached != null) {
+			mHits++;
+			return cached;
+		}
+
+		mMisses++;
+		double p = getNealProb(A, Dmin, Dmax, begin, Pij, isUpper);
+		mCache.put(key, p);
+		return p;
+	}
+	
+	private double getNealProb(int A, int Dmin, int Dmax, int begin, int Pij, boolean isUpper) {
+		if (isUpper) {
+			return Math.exp(getLogUpperTail(A, Dmin, Dmax, Pij));
+		} else if (begin >= Pij) {
+			return 1.0;
+		} else {
+			return 1.0 - Math.exp(getLogLowerTail(A, Dmin, Dmax, begin, Pij));
+		}
+	}
+
+	//log sum_{x = from}^{Dmin} P(X = x)
+	private double getLogUpperTail(int A, int Dmin, int Dmax, int from) {
+		double term = 1.0;
+		double sum = 1.0;
+		double logScale = 0.0;
+		for (int x = from; x < Dmin; x++) {
+			term *= (double) (Dmin - x) * (Dmax - x) / ((double) (x + 1) * (A - Dmin - Dmax + x + 1));
+			if (term == 0.0) break;
+
+			sum += term;
+			if (sum > RESCALE_THRESHOLD) {
+				term /= RESCALE_THRESHOLD;
+				sum /= RESCALE_THRESHOLD;
+				logScale += LOG_RESCALE_THRESHOLD;
+			}
+		}
+		return getLogPMF(A, Dmin, Dmax, from) + logScale + Math.log(sum);
+	}
+
+	//log sum_{x = begin}^{end - 1} P(X = x), walking down from end - 1
+	private double getLogLowerTail(int A, int Dmin, int Dmax, int begin, int end) {
+		double term = 1.0;
+		double sum = 1.0;
+		double logScale = 0.0;
+		for (int x = end - 1; x > begin; x--) {
+			term *= (double) x * (A - Dmin - Dmax + x) / ((double) (Dmin - x + 1) * (Dmax - x + 1));
+			if (term == 0.0) break;
+
+			sum += term;
+			if (sum > RESCALE_THRESHOLD) {
+				term /= RESCALE_THRESHOLD;
+				sum /= RESCALE_THRESHOLD;
+				logScale += LOG_RESCALE_THRESHOLD;
+			}
+		}
+		return getLogPMF(A, Dmin, Dmax, end - 1) + logScale + Math.log(sum);
+	}
+
+	private double getLogPMF(int A, int Dmin, int Dmax, int x) {
+		double logsum = mLogFact.logChoose(Dmin, x);
+		logsum += mLogFact.logChoose(A - Dmin, Dmax - x);
+		logsum -= mLogFact.logChoose(A, Dmax);
+		return logsum;
+	}
+
+	private static class Key {
+
+		private int mA;
+		private int mDmin;
+		private int mDmax;
+		private int mPij;
+
+		public Key(int a, int dmin, int dmax, int pij) {
+			mA = a;
+			mDmin = dmin;
+			mDmax = dmax;
+			mPij = pij;
+		}
+
+		@Override
+		public int hashCode() {
+			//Degrees are small and close together, so spread them before combining
+			int h = mA * 0x9E3779B9;
+			h ^= mDmin * 0x85EBCA6B;
+			h ^= mDmax * 0xC2B2AE35;
+			h ^= mPij * 0x27D4EB2F;
+			return h ^ (h >>> 16);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+
+			Key o = (Key) obj;
+			return mA == o.mA && mDmin == o.mDmin && mDmax == o.mDmax && mPij == o.mPij;
+		}
+
+	}
+
+	////////////////////////////////////////////////
+	//Benchmark against the term-by-term logChoose computation
+	//Usage: HypergeometricTail [A] [pairs] [rounds]
+	////////////////////////////////////////////////
+
+	private static double getNealProbByTerms(LogFact lf, int A, int Di, int Dj, int Pij) {
+		if (Pij == 0) return 1.0;
+
+		int Dmin = Math.min(Di, Dj);
+		int Dmax = Math.max(Di, Dj);
+
+		if (Pij > Dmin / 2) {
+			int length = Dmin - Pij + 1;
+			double[] logs = new double[length];
+			for (int x = 0; x < length; x++) {
+				int k = Dmin - x;
+				logs[x] = lf.logChoose(Dmin, k) + lf.logChoose(A - Dmin, Dmax - k) - lf.logChoose(A, Dmax);
+			}
+			return Math.exp(MathUtil.sumLog(logs, 0, length));
+		} else {
+			int begin = Math.max(0, Di + Dj - A);
+			double[] logs = new double[Math.max(Pij, begin + 1)];
+			for (int x = begin; x < Pij; x++) {
+				logs[x] = lf.logChoose(Dmin, x) + lf.logChoose(A - Dmin, Dmax - x) - lf.logChoose(A, Dmax);
+			}
+			return 1.0 - Math.exp(MathUtil.sumLog(logs, begin, Pij));
+		}
+	}
+
+	public static void main(String[] args) {
+		int A = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int pairs = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		//Heavy-tailed ASN degrees: most ASNs reach a handful of internal IPs
+		Random random = new Random(0);
+		int[][] queries = new int[pairs][3];
+		for (int q = 0; q < pairs; q++) {
+			int di = Math.min(A, (int) Math.ceil(Math.pow(random.nextDouble(), -2.0)));
+			int dj = Math.min(A, (int) Math.ceil(Math.pow(random.nextDouble(), -2.0)));
+			queries[q][0] = di;
+			queries[q][1] = dj;
+			int minP = Math.max(1, di + dj - A);
+			queries[q][2] = minP + random.nextInt(Math.min(di, dj) - minP + 1);
+		}
+
+		LogFact lf = new LogFact();
+		lf.logFact(A);
+
+		double maxError = 0.0;
+		HypergeometricTail tail = new HypergeometricTail(lf);
+		for (int q = 0; q < Math.min(pairs, 100000); q++) {
+			double expected = getNealProbByTerms(lf, A, queries[q][0], queries[q][1], queries[q][2]);
+			double actual = tail.getNealProb(A, queries[q][0], queries[q][1], queries[q][2]);
+			maxError = Math.max(maxError, Math.abs(expected - actual));
+		}
+		System.out.println("Max abs error = " + maxError);
+
+		for (int r = 0; r < rounds; r++) {
+			double termsSum = 0.0;
+			double recurrenceSum = 0.0;
+			double tailSum = 0.0;
+			long start = System.nanoTime();
+			for (int q = 0; q < pairs; q++) {
+				termsSum += getNealProbByTerms(lf, A, queries[q][0], queries[q][1], queries[q][2]);
+			}
+			long termsNanos = System.nanoTime() - start;
+
+			tail = new HypergeometricTail(lf, 0);
+			start = System.nanoTime();
+			for (int q = 0; q < pairs; q++) {
+				recurrenceSum += tail.getNealProb(A, queries[q][0], queries[q][1], queries[q][2]);
+			}
+			long recurrenceNanos = System.nanoTime() - start;
+
+			tail = new HypergeometricTail(lf);
+			start = System.nanoTime();
+			for (int q = 0; q < pairs; q++) {
+				tailSum += tail.getNealProb(A, queries[q][0], queries[q][1], queries[q][2]);
+			}
+			long tailNanos = System.nanoTime() - start;
+
+			System.out.println(String.format("Round %d: terms %.1f ns/op, recurrence %.1f ns/op, cached %.1f ns/op (hits %d, misses %d, sum diff %.2e)",
+					r, 1.0 * termsNanos / pairs, 1.0 * recurrenceNanos / pairs, 1.0 * tailNanos / pairs, tail.getHits(), tail.getMisses(),
+					Math.max(Math.abs(termsSum - recurrenceSum), Math.abs(termsSum - tailSum))));
+		}
+	}
+
+}
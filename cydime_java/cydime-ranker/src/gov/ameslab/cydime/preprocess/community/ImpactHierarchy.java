@@ -47,10 +47,10 @@ import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.preprocess.community.mroc.Cluster;
 import gov.ameslab.cydime.preprocess.community.mroc.MROC;
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.Histogram;
 import gov.ameslab.cydime.util.IndexedList;
 import gov.ameslab.cydime.util.MapSet;
-import gov.ameslab.cydime.util.MathUtil;
 import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
@@ -87,9 +87,9 @@ public class ImpactHierarchy extends FeatureSet {
 	
 	private IndexedList<String> mExtASNList;
 	private IndexedList<String> mIntIPList;
-	private Matrix<Integer> mASNIPMatrix; // mMatrix[asn][ip]
+	private SparseMatrix mASNIPMatrix; // mMatrix[asn][ip]
 	
-	private LogFact mLogFact;
+	private HypergeometricTail mNealTail;
 	private Graph<Integer, WeightedEdge> mASNGraph;
 	
 	private ImpactHierarchy() {}
@@ -141,17 +141,20 @@ public class ImpactHierarchy extends FeatureSet {
 
 	private void read() throws IOException {
 		Map<String, MapSet<String, String>> asnIPDaySet = CUtil.makeMap();		
+		FieldCursor cursor = new FieldCursor(',');
 		for (String inPath : mFeaturePaths) {
 			BufferedReader in = new BufferedReader(new FileReader(inPath));
 			String line = in.readLine();
 			while ((line = in.readLine()) != null) {
-				String[] split = StringUtil.trimmedSplit(line, ",");
-				MapSet<String, String> ipDaySet = asnIPDaySet.get(split[1]);
+				cursor.reset(line);
+				String ip = cursor.nextString();
+				String asn = cursor.nextString();
+				MapSet<String, String> ipDaySet = asnIPDaySet.get(asn);
 				if (ipDaySet == null) {
 					ipDaySet = new MapSet<String, String>();
-					asnIPDaySet.put(split[1], ipDaySet);
+					asnIPDaySet.put(asn, ipDaySet);
 				}
-				ipDaySet.add(split[0], inPath);
+				ipDaySet.add(ip, inPath);
 			}
 			in.close();
 		}
@@ -183,7 +186,7 @@ public class ImpactHierarchy extends FeatureSet {
 		Log.log(Level.INFO, "Internal IPs = {0}", mIntIPList.size());
 		
 		int edges = 0;
-		mASNIPMatrix = new Matrix<Integer>(mExtASNList.size(), mIntIPList.size(), 0);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(mExtASNList.size(), mIntIPList.size());
 		for (Entry<String, MapSet<String, String>> entry : asnIPDaySet.entrySet()) {
 			String asn = entry.getKey();
 			int extIndex = mExtASNList.getIndex(asn);
@@ -193,14 +196,13 @@ public class ImpactHierarchy extends FeatureSet {
 				int intIndex = mIntIPList.getIndex(ip);
 				int days = ipDaySet.get(ip).size();
 				if (days >= MIN_DAYS) {
-					mASNIPMatrix.set(extIndex, intIndex, days);
+					builder.set(extIndex, intIndex, days);
 					edges++;
 				}
 			}
 		}
 		
-		mASNIPMatrix.updateTranspose();
-		mASNIPMatrix.updateAdjacencyArrays();
+		mASNIPMatrix = builder.build();
 		
 		Log.log(Level.INFO, "Edges = {0}", edges);
 	}
@@ -249,7 +251,7 @@ public class ImpactHierarchy extends FeatureSet {
 		Log.log(Level.INFO, "Internal IPs = {0}", mIntIPList.size());
 		
 		int edges = 0;
-		mASNIPMatrix = new Matrix<Integer>(mExtASNList.size(), mIntIPList.size(), 0);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(mExtASNList.size(), mIntIPList.size());
 		for (Entry<String, MapSet<String, String>> entry : asnIPDaySet.entrySet()) {
 			String asn = entry.getKey();
 			int extIndex = mExtASNList.getIndex(asn);
@@ -259,14 +261,13 @@ public class ImpactHierarchy extends FeatureSet {
 				int intIndex = mIntIPList.getIndex(ip);
 				int days = ipDaySet.get(ip).size();
 				if (days >= MIN_DAYS) {
-					mASNIPMatrix.set(extIndex, intIndex, days);
+					builder.set(extIndex, intIndex, days);
 					edges++;
 				}
 			}
 		}
 		
-		mASNIPMatrix.updateTranspose();
-		mASNIPMatrix.updateAdjacencyArrays();
+		mASNIPMatrix = builder.build();
 		
 		Log.log(Level.INFO, "Edges = {0}", edges);
 	}
@@ -284,26 +285,21 @@ public class ImpactHierarchy extends FeatureSet {
 			}
 		}
 		
-		mLogFact = new LogFact();
+		mNealTail = new HypergeometricTail(new LogFact());
 		mASNGraph = new UndirectedSparseGraph<Integer, WeightedEdge>();
 		for (int i = 0; i < mExtASNList.size(); i++) {
 			mASNGraph.addVertex(i);
 		}
 				
 		for (int i1 = 0; i1 < mExtASNList.size() - 1; i1++) {
-			Set<Integer> j1s = mASNIPMatrix.getNeighborsOfI(i1);
+			int d1 = mASNIPMatrix.getDegreeOfI(i1);
 			for (int i2 : find2Hops(i1)) {
 				if (i2 <= i1) continue;
 				
-				int[] j2s = mASNIPMatrix.getNeighborListOfI(i2);
-				int intersection = 0;
-				for (int i = 0; i < j2s.length; i++) {
-					if (j1s.contains(j2s[i])) {
-						intersection++;
-					}
-				}
+				int d2 = mASNIPMatrix.getDegreeOfI(i2);
+				int intersection = mASNIPMatrix.countCommonNeighborsOfI(i1, i2);
 				
-				double nealProb = getNealProb(mIntIPList.size(), j1s.size(), j2s.length, intersection);
+				double nealProb = mNealTail.getNealProb(mIntIPList.size(), d1, d2, intersection);
 //				if (nealProb > 0.0)
 //					System.out.println(Math.log(nealProb));
 				
@@ -347,59 +343,16 @@ public class ImpactHierarchy extends FeatureSet {
 
 	private Set<Integer> find2Hops(int i1) {
 		Set<Integer> set = CUtil.makeSet();
-		int[] j1s = mASNIPMatrix.getNeighborListOfI(i1);
-		for (int j1 = 0; j1 < j1s.length; j1++) {
-			int[] i2s = mASNIPMatrix.getNeighborListOfJ(j1s[j1]);
-			for (int i2 = 0; i2 < i2s.length; i2++) {
-				set.add(i2s[i2]);
+		int[] js = mASNIPMatrix.getIIndices();
+		int[] is = mASNIPMatrix.getJIndices();
+		for (int k1 = mASNIPMatrix.getIStart(i1); k1 < mASNIPMatrix.getIEnd(i1); k1++) {
+			int j1 = js[k1];
+			for (int k2 = mASNIPMatrix.getJStart(j1); k2 < mASNIPMatrix.getJEnd(j1); k2++) {
+				set.add(is[k2]);
 			}
 		}
 		return set;
 	}
-	
-	private double[] cLogs = new double[1000];
-
-	private double getNealProb(int A, int Di, int Dj, int Pij) {
-		if (Pij == 0) return 1.0;
-		
-		int Dmin = Math.min(Di, Dj);
-		int Dmax = Math.max(Di, Dj);
-		
-		if (Pij > Dmin / 2) {
-			int length = Dmin - Pij + 1;
-			if (cLogs.length < length) {
-				cLogs = new double[length];
-			}
-			
-			for (int x = 0; x < length; x++) {
-				cLogs[x] = getNealProbLogX(A, Dmin, Dmax, Dmin - x);
-			}
-			
-			double logsum = MathUtil.sumLog(cLogs, 0, length);
-			return Math.exp(logsum);
-		} else {
-			int end = Pij;
-			int begin = Math.max(0, Di + Dj - A);
-			int length = end - begin;
-			if (cLogs.length < length) {
-				cLogs = new double[length];
-			}
-			
-			for (int x = begin; x < end; x++) {
-				cLogs[x] = getNealProbLogX(A, Dmin, Dmax, x);
-			}
-			
-			double logsum = MathUtil.sumLog(cLogs, begin, end);
-			return 1.0 - Math.exp(logsum);
-		}
-	}
-
-	private double getNealProbLogX(int A, int Dmin, int Dmax, int x) {
-		double logsum = mLogFact.logChoose(Dmin, x);
-		logsum += mLogFact.logChoose(A - Dmin, Dmax - x);
-		logsum -= mLogFact.logChoose(A, Dmax);
-		return logsum;
-	}
 
 	private void save() throws IOException {
 		BufferedWriter out = new BufferedWriter(new FileWriter("asnGraph.csv"));
@@ -639,7 +592,7 @@ public class ImpactHierarchy extends FeatureSet {
 	private Histogram<Integer> project(Set<Integer> extMembers) {
 		Histogram<Integer> intMembers = new Histogram<Integer>();
 		for (int i : extMembers) {
-			for (int j : mASNIPMatrix.getNeighborsOfI(i)) {
+			for (int j : mASNIPMatrix.getNeighborListOfI(i)) {
 				intMembers.increment(j);
 			}
 		}
@@ -48,10 +48,10 @@ import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.ARFFWriter;
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.FileUtil;
 import gov.ameslab.cydime.util.IndexedList;
 import gov.ameslab.cydime.util.MapSet;
-import gov.ameslab.cydime.util.MathUtil;
 import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
@@ -59,12 +59,17 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -86,7 +91,7 @@ public class InfluenceGraph extends FeatureSet {
 	
 	private IndexedList<String> mExtASNList;
 	private IndexedList<String> mIntIPList;
-	private Matrix<Integer> mASNIPMatrix; // mMatrix[asn][ip]
+	private SparseMatrix mASNIPMatrix; // mMatrix[asn][ip]
 	
 	private LogFact mLogFact;
 	private Graph<Integer, WeightedEdge> mASNGraph;
@@ -94,6 +99,11 @@ public class InfluenceGraph extends FeatureSet {
 
 	private InfluenceGraph() {}
 	
+	//For running reduce() alone, e.g. on a SyntheticGraph
+	InfluenceGraph(SparseMatrix asnIPMatrix) {
+		mASNIPMatrix = asnIPMatrix;
+	}
+	
 	public InfluenceGraph(List<String> ids, String inPath, String outPath) {
 		super(ids, inPath, outPath);
 	}
@@ -139,19 +149,22 @@ public class InfluenceGraph extends FeatureSet {
 
 	private void read() throws IOException {
 		Map<String, MapSet<String, String>> asnIPDaySet = CUtil.makeMap();		
+		FieldCursor cursor = new FieldCursor(',');
 		for (String inPath : mFeaturePaths) {
 			BufferedReader in = new BufferedReader(new FileReader(inPath));
 			String line = in.readLine();
 			while ((line = in.readLine()) != null) {
-				String[] split = StringUtil.trimmedSplit(line, ",");
-				if (!mNetreg.contains(split[1])) continue;
+				cursor.reset(line);
+				String ip = cursor.nextString();
+				String asn = cursor.nextString();
+				if (!mNetreg.contains(asn)) continue;
 				
-				MapSet<String, String> ipDaySet = asnIPDaySet.get(split[1]);
+				MapSet<String, String> ipDaySet = asnIPDaySet.get(asn);
 				if (ipDaySet == null) {
 					ipDaySet = new MapSet<String, String>();
-					asnIPDaySet.put(split[1], ipDaySet);
+					asnIPDaySet.put(asn, ipDaySet);
 				}
-				ipDaySet.add(split[0], inPath);
+				ipDaySet.add(ip, inPath);
 			}
 			in.close();
 		}
@@ -183,7 +196,7 @@ public class InfluenceGraph extends FeatureSet {
 		Log.log(Level.INFO, "Internal IPs = {0}", mIntIPList.size());
 		
 		int edges = 0;
-		mASNIPMatrix = new Matrix<Integer>(mExtASNList.size(), mIntIPList.size(), 0);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(mExtASNList.size(), mIntIPList.size());
 		for (Entry<String, MapSet<String, String>> entry : asnIPDaySet.entrySet()) {
 			String asn = entry.getKey();
 			int extIndex = mExtASNList.getIndex(asn);
@@ -193,49 +206,40 @@ public class InfluenceGraph extends FeatureSet {
 				int intIndex = mIntIPList.getIndex(ip);
 				int days = ipDaySet.get(ip).size();
 				if (days >= MIN_DAYS) {
-					mASNIPMatrix.set(extIndex, intIndex, days);
+					builder.set(extIndex, intIndex, days);
 					edges++;
 				}
 			}
 		}
 		
-		mASNIPMatrix.updateTranspose();
-		mASNIPMatrix.updateAdjacencyArrays();
+		mASNIPMatrix = builder.build();
 		
 		Log.log(Level.INFO, "Edges = {0}", edges);
 	}
 	
-	private void reduce() {
+	//Only needs mASNIPMatrix, so that it can also be run on its own
+	void reduce() {
 		Log.log(Level.INFO, "Reducing ASN graph...");
 		
 		mLogFact = new LogFact();
+		//Fill the factorial table up front so the parallel phase only reads it
+		mLogFact.logFact(mASNIPMatrix.getJSize());
+		
 		mASNGraph = new UndirectedSparseGraph<Integer, WeightedEdge>();
-		for (int i = 0; i < mExtASNList.size(); i++) {
+		for (int i = 0; i < mASNIPMatrix.getISize(); i++) {
 			mASNGraph.addVertex(i);
 		}
-				
-		for (int i1 = 0; i1 < mExtASNList.size() - 1; i1++) {
-			Set<Integer> j1s = mASNIPMatrix.getNeighborsOfI(i1);
-			for (int i2 : find2Hops(i1)) {
-				if (i2 <= i1) continue;
-				
-				int[] j2s = mASNIPMatrix.getNeighborListOfI(i2);
-				int intersection = 0;
-				for (int i = 0; i < j2s.length; i++) {
-					if (j1s.contains(j2s[i])) {
-						intersection++;
-					}
-				}
-				
-				double nealProb = getNealProb(mIntIPList.size(), j1s.size(), j2s.length, intersection);
-//				if (nealProb > 0.0)
-//					System.out.println(Math.log(nealProb));
-				
-				if (nealProb < NEAL_ALPHA) {
-					mASNGraph.addEdge(new WeightedEdge(1.0 - nealProb), i1, i2);					
-//					System.out.println(j1s.size() + " " + j2s.length + " " + intersection + " : " + nealProb);
-				}
-			}
+		
+		Queue<ASNPair> pairs = new ConcurrentLinkedQueue<ASNPair>();
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.invoke(new ReduceTask(0, mASNIPMatrix.getISize() - 1, pairs));
+		pool.shutdown();
+		
+		//Add edges in a fixed order regardless of how the work was scheduled
+		List<ASNPair> sortedPairs = CUtil.makeList(pairs);
+		Collections.sort(sortedPairs);
+		for (ASNPair p : sortedPairs) {
+			mASNGraph.addEdge(new WeightedEdge(1.0 - p.NealProb), p.I1, p.I2);
 		}
 		
 		int connectedVertices = 0;
@@ -268,60 +272,108 @@ public class InfluenceGraph extends FeatureSet {
 		Log.log(Level.INFO, "Post-pruned Edges = {0}", mASNGraph.getEdgeCount());
 	}
 
-	private Set<Integer> find2Hops(int i1) {
-		Set<Integer> set = CUtil.makeSet();
-		int[] j1s = mASNIPMatrix.getNeighborListOfI(i1);
-		for (int j1 = 0; j1 < j1s.length; j1++) {
-			int[] i2s = mASNIPMatrix.getNeighborListOfJ(j1s[j1]);
-			for (int i2 = 0; i2 < i2s.length; i2++) {
-				set.add(i2s[i2]);
-			}
+	private static class ASNPair implements Comparable<ASNPair> {
+		int I1;
+		int I2;
+		double NealProb;
+		
+		public ASNPair(int i1, int i2, double nealProb) {
+			I1 = i1;
+			I2 = i2;
+			NealProb = nealProb;
+		}
+
+		@Override
+		public int compareTo(ASNPair o) {
+			if (I1 != o.I1) return I1 < o.I1 ? -1 : 1;
+			if (I2 != o.I2) return I2 < o.I2 ? -1 : 1;
+			return 0;
 		}
-		return set;
 	}
 	
-	private double[] cLogs = new double[1000];
+	/**
+	 * Per-thread buffers for the pairwise phase of reduce().
+	 */
+	private static class Scratch {
+		int[] Mark;
+		int[] Hops;
+		int HopCount;
+		HypergeometricTail Tail;
+		
+		public Scratch(int size, LogFact logFact) {
+			Mark = new int[size];
+			Arrays.fill(Mark, -1);
+			Hops = new int[size];
+			Tail = new HypergeometricTail(logFact);
+		}
+	}
+	
+	private class ReduceTask extends RecursiveAction {
 
-	private double getNealProb(int A, int Di, int Dj, int Pij) {
-		if (Pij == 0) return 1.0;
+		private static final long serialVersionUID = 1L;
+		private static final int GRAIN = 16;
 		
-		int Dmin = Math.min(Di, Dj);
-		int Dmax = Math.max(Di, Dj);
+		private int mFrom;
+		private int mTo;
+		private Queue<ASNPair> mPairs;
 		
-		if (Pij > Dmin / 2) {
-			int length = Dmin - Pij + 1;
-			if (cLogs.length < length) {
-				cLogs = new double[length];
-			}
-			
-			for (int x = 0; x < length; x++) {
-				cLogs[x] = getNealProbLogX(A, Dmin, Dmax, Dmin - x);
-			}
-			
-			double logsum = MathUtil.sumLog(cLogs, 0, length);
-			return Math.exp(logsum);
-		} else {
-			int end = Pij;
-			int begin = Math.max(0, Di + Dj - A);
-			int length = end - begin;
-			if (cLogs.length < length) {
-				cLogs = new double[length];
+		public ReduceTask(int from, int to, Queue<ASNPair> pairs) {
+			mFrom = from;
+			mTo = to;
+			mPairs = pairs;
+		}
+		
+		@Override
+		protected void compute() {
+			if (mTo - mFrom > GRAIN) {
+				int mid = (mFrom + mTo) >>> 1;
+				invokeAll(new ReduceTask(mFrom, mid, mPairs), new ReduceTask(mid, mTo, mPairs));
+				return;
 			}
 			
-			for (int x = begin; x < end; x++) {
-				cLogs[x] = getNealProbLogX(A, Dmin, Dmax, x);
+			Scratch scratch = cScratch.get();
+			for (int i1 = mFrom; i1 < mTo; i1++) {
+				int d1 = mASNIPMatrix.getDegreeOfI(i1);
+				find2Hops(i1, scratch);
+				for (int h = 0; h < scratch.HopCount; h++) {
+					int i2 = scratch.Hops[h];
+					int d2 = mASNIPMatrix.getDegreeOfI(i2);
+					int intersection = mASNIPMatrix.countCommonNeighborsOfI(i1, i2);
+					
+					double nealProb = scratch.Tail.getNealProb(mASNIPMatrix.getJSize(), d1, d2, intersection);
+					if (nealProb < NEAL_ALPHA) {
+						mPairs.add(new ASNPair(i1, i2, nealProb));
+					}
+				}
 			}
-			
-			double logsum = MathUtil.sumLog(cLogs, begin, end);
-			return 1.0 - Math.exp(logsum);
 		}
+		
 	}
-
-	private double getNealProbLogX(int A, int Dmin, int Dmax, int x) {
-		double logsum = mLogFact.logChoose(Dmin, x);
-		logsum += mLogFact.logChoose(A - Dmin, Dmax - x);
-		logsum -= mLogFact.logChoose(A, Dmax);
-		return logsum;
+	
+	private final ThreadLocal<Scratch> cScratch = new ThreadLocal<Scratch>() {
+		
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(mASNIPMatrix.getISize(), mLogFact);
+		}
+		
+	};
+	
+	//Collects the ASNs i2 > i1 sharing at least one internal IP with i1
+	private void find2Hops(int i1, Scratch scratch) {
+		scratch.HopCount = 0;
+		int[] js = mASNIPMatrix.getIIndices();
+		int[] is = mASNIPMatrix.getJIndices();
+		for (int k1 = mASNIPMatrix.getIStart(i1); k1 < mASNIPMatrix.getIEnd(i1); k1++) {
+			int j1 = js[k1];
+			for (int k2 = mASNIPMatrix.getJStart(j1); k2 < mASNIPMatrix.getJEnd(j1); k2++) {
+				int i2 = is[k2];
+				if (i2 <= i1 || scratch.Mark[i2] == i1) continue;
+				
+				scratch.Mark[i2] = i1;
+				scratch.Hops[scratch.HopCount++] = i2;
+			}
+		}
 	}
 
 	private void save() throws IOException {		
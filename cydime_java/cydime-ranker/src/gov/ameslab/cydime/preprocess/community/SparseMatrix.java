@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package gov.ameslab.cydime.preprocess.community;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable compressed sparse matrix for storing bipartite graphs.
+ * Both the row-major (I to J) and the column-major (J to I) adjacency are
+ * kept as flat int[] index and double[] value arrays, with the neighbors
+ * of each vertex stored contiguously in ascending order.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class SparseMatrix {
+
+	private static final int[] EMPTY = new int[0];
+	
+	private int mISize;
+	private int mJSize;
+	
+	//CSR: neighbors of i are mIIndices[mIStarts[i] .. mIStarts[i + 1])
+	private int[] mIStarts;
+	private int[] mIIndices;
+	private double[] mIValues;
+	
+	//CSC: neighbors of j are mJIndices[mJStarts[j] .. mJStarts[j + 1])
+	private int[] mJStarts;
+	private int[] mJIndices;
+	private double[] mJValues;
+	
+	private SparseMatrix(int iSize, int jSize, int[] iStarts, int[] iIndices, double[] iValues, int[] jStarts, int[] jIndices, double[] jValues) {
+		mISize = iSize;
+		mJSize = jSize;
+		mIStarts = iStarts;
+		mIIndices = iIndices;
+		mIValues = iValues;
+		mJStarts = jStarts;
+		mJIndices = jIndices;
+		mJValues = jValues;
+	}
+	
+	public int getISize() {
+		return mISize;
+	}
+	
+	public int getJSize() {
+		return mJSize;
+	}
+	
+	public int getEdgeCount() {
+		return mIIndices.length;
+	}
+	
+	public double get(int i, int j) {
+		int k = Arrays.binarySearch(mIIndices, mIStarts[i], mIStarts[i + 1], j);
+		if (k < 0) return 0.0;
+		return mIValues[k];
+	}
+	
+	public int getDegreeOfI(int i) {
+		return mIStarts[i + 1] - mIStarts[i];
+	}
+	
+	public int getDegreeOfJ(int j) {
+		return mJStarts[j + 1] - mJStarts[j];
+	}
+	
+	public int[] getNeighborListOfI(int i) {
+		if (mIStarts[i] == mIStarts[i + 1]) return EMPTY;
+		return Arrays.copyOfRange(mIIndices, mIStarts[i], mIStarts[i + 1]);
+	}
+	
+	public int[] getNeighborListOfJ(int j) {
+		if (mJStarts[j] == mJStarts[j + 1]) return EMPTY;
+		return Arrays.copyOfRange(mJIndices, mJStarts[j], mJStarts[j + 1]);
+	}
+	
+	////////////////////////////////////////////////
+	//Raw access for allocation-free scans:
+	//for (int k = m.getIStart(i); k < m.getIEnd(i); k++) m.getIIndices()[k] ...
+	////////////////////////////////////////////////
+	
+	public int getIStart(int i) {
+		return mIStarts[i];
+	}
+	
+	public int getIEnd(int i) {
+		return mIStarts[i + 1];
+	}
+	
+	public int[] getIIndices() {
+		return mIIndices;
+	}
+	
+	public double[] getIValues() {
+		return mIValues;
+	}
+	
+	public int getJStart(int j) {
+		return mJStarts[j];
+	}
+	
+	public int getJEnd(int j) {
+		return mJStarts[j + 1];
+	}
+	
+	public int[] getJIndices() {
+		return mJIndices;
+	}
+	
+	public double[] getJValues() {
+		return mJValues;
+	}
+	
+	public int countCommonNeighborsOfI(int i1, int i2) {
+		return intersect(mIIndices, mIStarts[i1], mIStarts[i1 + 1], mIStarts[i2], mIStarts[i2 + 1]);
+	}
+	
+	public int countCommonNeighborsOfJ(int j1, int j2) {
+		return intersect(mJIndices, mJStarts[j1], mJStarts[j1 + 1], mJStarts[j2], mJStarts[j2 + 1]);
+	}
+	
+	private static int intersect(int[] indices, int a, int aEnd, int b, int bEnd) {
+		int count = 0;
+		while (a < aEnd && b < bEnd) {
+			int va = indices[a];
+			int vb = indices[b];
+			if (va < vb) {
+				a++;
+			} else if (va > vb) {
+				b++;
+			} else {
+				count++;
+				a++;
+				b++;
+			}
+		}
+		return count;
+	}
+	
+	public SparseMatrix transpose() {
+		return new SparseMatrix(mJSize, mISize, mJStarts, mJIndices, mJValues, mIStarts, mIIndices, mIValues);
+	}
+	
+	public double sum() {
+		double sum = 0.0;
+		for (int k = 0; k < mIValues.length; k++) {
+			sum += mIValues[k];
+		}
+		return sum;
+	}
+	
+	public double[] sumOfI() {
+		return sumRanges(mIStarts, mIValues, mISize);
+	}
+	
+	public double[] sumOfJ() {
+		return sumRanges(mJStarts, mJValues, mJSize);
+	}
+
+	private static double[] sumRanges(int[] starts, double[] values, int size) {
+		double[] sum = new double[size];
+		for (int s = 0; s < size; s++) {
+			for (int k = starts[s]; k < starts[s + 1]; k++) {
+				sum[s] += values[k];
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Collects (i, j, value) edges in any order and compresses them into a
+	 * SparseMatrix. Repeated edges are merged in insertion order: add()
+	 * accumulates onto the current value and set() overwrites it.
+	 */
+	public static class Builder {
+		
+		private int mISize;
+		private int mJSize;
+		private int mSize;
+		private int[] mIs;
+		private int[] mJs;
+		private double[] mValues;
+		private BitSet mIsSet;
+		
+		public Builder(int iSize, int jSize) {
+			mISize = iSize;
+			mJSize = jSize;
+			mSize = 0;
+			mIs = new int[16];
+			mJs = new int[16];
+			mValues = new double[16];
+			mIsSet = new BitSet();
+		}
+		
+		public Builder add(int i, int j, double v) {
+			append(i, j, v);
+			return this;
+		}
+		
+		public Builder set(int i, int j, double v) {
+			mIsSet.set(mSize);
+			append(i, j, v);
+			return this;
+		}
+		
+		private void append(int i, int j, double v) {
+			if (i < 0 || i >= mISize || j < 0 || j >= mJSize) {
+				throw new IndexOutOfBoundsException("Error: edge (" + i + ", " + j + ") is outside " + mISize + " x " + mJSize);
+			}
+			
+			if (mSize == mIs.length) {
+				int capacity = mSize * 2;
+				mIs = Arrays.copyOf(mIs, capacity);
+				mJs = Arrays.copyOf(mJs, capacity);
+				mValues = Arrays.copyOf(mValues, capacity);
+			}
+			
+			mIs[mSize] = i;
+			mJs[mSize] = j;
+			mValues[mSize] = v;
+			mSize++;
+		}
+		
+		public SparseMatrix build() {
+			//Two stable counting sorts (by j, then by i) order the edges by (i, j)
+			//while keeping repeated edges in insertion order.
+			int[] order = new int[mSize];
+			for (int e = 0; e < mSize; e++) {
+				order[e] = e;
+			}
+			order = countingSort(order, mJs, mJSize);
+			order = countingSort(order, mIs, mISize);
+			
+			int[] iStarts = new int[mISize + 1];
+			int[] iIndices = new int[mSize];
+			double[] iValues = new double[mSize];
+			int nnz = 0;
+			int lastI = -1;
+			int lastJ = -1;
+			for (int k = 0; k < mSize; k++) {
+				int e = order[k];
+				int i = mIs[e];
+				int j = mJs[e];
+				if (i == lastI && j == lastJ) {
+					if (mIsSet.get(e)) {
+						iValues[nnz - 1] = mValues[e];
+					} else {
+						iValues[nnz - 1] += mValues[e];
+					}
+				} else {
+					iIndices[nnz] = j;
+					iValues[nnz] = mValues[e];
+					iStarts[i + 1]++;
+					nnz++;
+					lastI = i;
+					lastJ = j;
+				}
+			}
+			for (int i = 0; i < mISize; i++) {
+				iStarts[i + 1] += iStarts[i];
+			}
+			if (nnz < mSize) {
+				iIndices = Arrays.copyOf(iIndices, nnz);
+				iValues = Arrays.copyOf(iValues, nnz);
+			}
+			
+			//Scanning rows in ascending i keeps each column's neighbors sorted.
+			int[] jStarts = new int[mJSize + 1];
+			for (int k = 0; k < nnz; k++) {
+				jStarts[iIndices[k] + 1]++;
+			}
+			for (int j = 0; j < mJSize; j++) {
+				jStarts[j + 1] += jStarts[j];
+			}
+			int[] jIndices = new int[nnz];
+			double[] jValues = new double[nnz];
+			int[] fill = Arrays.copyOf(jStarts, mJSize);
+			for (int i = 0; i < mISize; i++) {
+				for (int k = iStarts[i]; k < iStarts[i + 1]; k++) {
+					int pos = fill[iIndices[k]]++;
+					jIndices[pos] = i;
+					jValues[pos] = iValues[k];
+				}
+			}
+			
+			return new SparseMatrix(mISize, mJSize, iStarts, iIndices, iValues, jStarts, jIndices, jValues);
+		}
+		
+		private static int[] countingSort(int[] order, int[] keys, int keySize) {
+			int[] starts = new int[keySize + 1];
+			for (int k = 0; k < order.length; k++) {
+				starts[keys[order[k]] + 1]++;
+			}
+			for (int key = 0; key < keySize; key++) {
+				starts[key + 1] += starts[key];
+			}
+			int[] sorted = new int[order.length];
+			for (int k = 0; k < order.length; k++) {
+				sorted[starts[keys[order[k]]]++] = order[k];
+			}
+			return sorted;
+		}
+		
+	}
+	
+}
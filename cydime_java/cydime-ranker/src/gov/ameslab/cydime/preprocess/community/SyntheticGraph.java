@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.preprocess.community;
+
+import java.util.Random;
+
+/**
+ * A random bipartite graph of external ASNs and internal IPs in the shape
+ * InfluenceGraph reads: heavy-tailed ASN degrees, and edge weights that are
+ * the number of days an IP was seen with an ASN. Each ASN draws half of its
+ * IPs from the block of its community, so that reduce() finds significant
+ * pairs and prunes edges as well. Lets InfluenceGraph.reduce() be timed
+ * without the netreg and ASN feature files.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class SyntheticGraph {
+
+	private static final int MIN_DAYS = 7;
+	private static final int MAX_DAYS = 14;
+	private static final int ASNS_PER_COMMUNITY = 50;
+	private static final int IPS_PER_COMMUNITY = 20;
+	
+	private SparseMatrix mASNIPMatrix;
+	
+	public SyntheticGraph(int asns, int ips, long seed) {
+		Random random = new Random(seed);
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(asns, ips);
+		int communities = Math.max(1, asns / ASNS_PER_COMMUNITY);
+		for (int i = 0; i < asns; i++) {
+			int block = random.nextInt(communities) * IPS_PER_COMMUNITY;
+			//Most ASNs reach a handful of internal IPs, a few reach many
+			int degree = Math.max(1, Math.min(ips / 10, (int) Math.ceil(Math.pow(random.nextDouble(), -1.5))));
+			for (int d = 0; d < degree; d++) {
+				int j = random.nextBoolean() ? (block + random.nextInt(IPS_PER_COMMUNITY)) % ips : random.nextInt(ips);
+				builder.set(i, j, MIN_DAYS + random.nextInt(MAX_DAYS - MIN_DAYS + 1));
+			}
+		}
+		mASNIPMatrix = builder.build();
+	}
+	
+	public int getEdgeCount() {
+		return mASNIPMatrix.getEdgeCount();
+	}
+	
+	public void reduce() {
+		new InfluenceGraph(mASNIPMatrix).reduce();
+	}
+	
+}
@@ -6,22 +6,20 @@ import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.preprocess.service.ServiceParser;
 import gov.ameslab.cydime.util.ARFFWriter;
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.EpochCalendar;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.FileUtil;
 import gov.ameslab.cydime.util.IndexedList;
 import gov.ameslab.cydime.util.MathUtil;
 import gov.ameslab.cydime.util.Percentile;
-import gov.ameslab.cydime.util.StringUtil;
+import gov.ameslab.cydime.util.RunReport;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,9 +44,10 @@ public class DailyProfile extends FeatureSet {
 	
 	public enum Normalizer { SERVICE_SUM, TIME_SUM, RAW_SERVICE_NORM, RAW_TIME_NORM }
 	
+	private static final int HOURS = 24;
+	
 	private String mDPOutPath;
 	private Map<String, double[][]> mIDProfile;
-	private Calendar mCal = GregorianCalendar.getInstance();
 	private IndexedList<Integer> mHourIndex;
 	private IndexedList<String> mServiceIndex;
 	
@@ -84,58 +83,66 @@ public class DailyProfile extends FeatureSet {
 	private void read() throws IOException {
 		Log.log(Level.INFO, "Processing daily profile...");
 		
-		Set<Integer> hours = CUtil.makeSet();
+		mIDProfile = CUtil.makeMap();
+		mServiceIndex = new IndexedList<String>(ServiceParser.SERVICES);
+		
+		boolean[] isHourSeen = new boolean[HOURS];
+		FieldCursor cursor = new FieldCursor(',');
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("dailyprofile.read");
+		long rows = 0L;
 		BufferedReader in = new BufferedReader(new FileReader(mCurrentInPath));
 		String line = in.readLine();
 		while ((line = in.readLine()) != null) {
-			String[] split = StringUtil.trimmedSplit(line, ",");
-			long epoch = Long.parseLong(split[4]) * 1000;
-			int hour = getHourOfDay(new Date(epoch));
-			hours.add(hour);
+			rows++;
+			cursor.reset(line).skip();
+			String id = cursor.nextString();
+			String src = cursor.nextString();
+			String dest = cursor.nextString();
+			long epoch = cursor.nextLong() * 1000;
+			cursor.skip(2);
+			double weight = cursor.nextDouble();
+			int hour = EpochCalendar.DEFAULT.getHourOfDay(epoch);
+			isHourSeen[hour] = true;
+			for (String serv : ServiceParser.parse(src, dest)) {
+				int servIndex = mServiceIndex.getIndex(serv);
+				add(id, servIndex, hour, weight);
+			}
 		}
 		in.close();
+		timer.addRows(rows);
+		timer.stop();
 		
-		List<Integer> hourList = CUtil.makeList(hours);
-		Collections.sort(hourList);
-		
-		mIDProfile = CUtil.makeMap();
+		//Keep only the hours present in the data, in order
+		List<Integer> hourList = CUtil.makeList();
+		for (int h = 0; h < HOURS; h++) {
+			if (isHourSeen[h]) {
+				hourList.add(h);
+			}
+		}
 		mHourIndex = new IndexedList<Integer>(hourList);
-		mServiceIndex = new IndexedList<String>(ServiceParser.SERVICES);
 		
-		in = new BufferedReader(new FileReader(mCurrentInPath));
-		line = in.readLine();
-		while ((line = in.readLine()) != null) {
-			String[] split = StringUtil.trimmedSplit(line, ",");
-			String id = split[1];
-			double weight = Double.parseDouble(split[7]);
-			long epoch = Long.parseLong(split[4]) * 1000;
-			int hour = getHourOfDay(new Date(epoch));
-			int hourIndex = mHourIndex.getIndex(hour);
-			String src = split[2];
-			String dest = split[3];
-			for (String serv : ServiceParser.parse(src, dest)) {
-				int servIndex = mServiceIndex.getIndex(serv);
-				add(id, servIndex, hourIndex, weight);
+		for (Entry<String, double[][]> entry : mIDProfile.entrySet()) {
+			double[][] profile = entry.getValue();
+			double[][] compact = new double[profile.length][hourList.size()];
+			for (int i = 0; i < profile.length; i++) {
+				for (int j = 0; j < compact[i].length; j++) {
+					compact[i][j] = profile[i][hourList.get(j)];
+				}
 			}
+			entry.setValue(compact);
 		}
-		in.close();
 	}
 	
-	private void add(String id, int servIndex, int hourIndex, double weight) {
+	private void add(String id, int servIndex, int hour, double weight) {
 		double[][] profile = mIDProfile.get(id);
 		if (profile == null) {
-			profile = new double[mServiceIndex.size()][mHourIndex.size()];
+			profile = new double[mServiceIndex.size()][HOURS];
 			mIDProfile.put(id, profile);
 		}
 		
-		profile[servIndex][hourIndex] += weight;
+		profile[servIndex][hour] += weight;
 	}
 
-	private int getHourOfDay(Date date) {
-		mCal.setTime(date);
-		return mCal.get(Calendar.HOUR_OF_DAY);
-	}
-	
 	private void prepareInstancesServiceSum() throws IOException {
 		Log.log(Level.INFO, "Normalizing...");
 		
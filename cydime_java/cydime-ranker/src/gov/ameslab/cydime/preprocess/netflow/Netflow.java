@@ -39,28 +39,29 @@
 
 package gov.ameslab.cydime.preprocess.netflow;
 
-import static gov.ameslab.cydime.preprocess.WekaPreprocess.UnsupervisedFilter.NormalizeLog;
-import static gov.ameslab.cydime.preprocess.WekaPreprocess.UnsupervisedFilter.ReplaceMissingValues;
-import static gov.ameslab.cydime.preprocess.WekaPreprocess.UnsupervisedFilter.StringToNominal;
+import gov.ameslab.cydime.filter.NormalizeLog;
 import gov.ameslab.cydime.model.InstanceDatabase;
 import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.preprocess.WekaPreprocess;
+import gov.ameslab.cydime.util.ARFFWriter;
 import gov.ameslab.cydime.util.CUtil;
-import gov.ameslab.cydime.util.FileUtil;
+import gov.ameslab.cydime.util.FieldCursor;
+import gov.ameslab.cydime.util.IndexedList;
+import gov.ameslab.cydime.util.RunReport;
+import gov.ameslab.cydime.util.StringUtil;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import weka.core.Attribute;
-import weka.core.DenseInstance;
-import weka.core.Instance;
-import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+import weka.filters.unsupervised.attribute.StringToNominal;
 
 /**
  * For each external resource, we construct summary statistics over the specified time window:
@@ -75,35 +76,42 @@ import weka.core.Instances;
  * (h) The total number of unique internal resources that communicated with this resource.
  * (i) Country code of the external resource.
  * 
+ * The CSV is read once into one primitive column per attribute. Missing values are replaced
+ * by the column mean (numeric) or mode (nominal), and the report and log-normalized ARFF files
+ * are written directly, which gives the same output as StringToNominal, ReplaceMissingValues
+ * and NormalizeLog without materializing Weka Instances.
+ * 
  * @author Harris Lin (harris.lin.nz at gmail.com)
  */
 public class Netflow extends FeatureSet {
 	
 	private static final Logger Log = Logger.getLogger(Netflow.class.getName());
 	
-	private Map<String, Instance> mInstanceMap;
-	private Instances mSchema;
-	private int mNumAtts;
+	private static final String MISSING_CC = "--";
+	private static final int AFTER_DECIMAL_POINT = 6;
+	
+	//The relation names Weka gave the files when they were produced by the filter chain
+	private static final String RELATION = "netflow-" + StringToNominal.class.getName() + "-Rfirst-last-" + ReplaceMissingValues.class.getName();
+	private static final String RELATION_LOG = RELATION + "-" + NormalizeLog.class.getName();
+	
+	private IndexedList<String> mIDIndex;
+	private Column[] mColumns;
 	
 	public Netflow(List<String> ids, String inPath, String outPath) {
 		super(ids, inPath, outPath);
-		mInstanceMap = CUtil.makeMap();
-		mSchema = new Instances("netflow", new ArrayList<Attribute>(), 0);
+		mIDIndex = new IndexedList<String>(ids);
 	}
 
 	public InstanceDatabase run() throws IOException {
-		readSchema();
 		readFile();
-		prepareInstances();
 		
-		WekaPreprocess.filterUnsuperivsed(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX,
-				StringToNominal,
-				ReplaceMissingValues);
-		
-		FileUtil.copy(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX, mCurrentOutPath + WekaPreprocess.REPORT_SUFFIX);
+		for (Column c : mColumns) {
+			c.reorderNominalValues();
+			c.replaceMissingValues();
+		}
 		
-		WekaPreprocess.filterUnsuperivsed(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX,
-				NormalizeLog);
+		writeARFF(mCurrentOutPath + WekaPreprocess.REPORT_SUFFIX, false);
+		writeARFF(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX, true);
 		
 		return new InstanceDatabase(mCurrentOutPath, mIDs);
 	}
@@ -111,93 +119,231 @@ public class Netflow extends FeatureSet {
 	private void readFile() throws IOException {
 		Log.log(Level.INFO, "Processing netflow...");
 		
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("netflow.read");
+		long rows = 0L;
 		BufferedReader in = new BufferedReader(new FileReader(mCurrentInPath));
-		String line = in.readLine();		
+		String[] names = in.readLine().split(",");
+		FieldCursor cursor = new FieldCursor(',');
+		String line;
 		while ((line = in.readLine()) != null) {
-			Instance inst = new DenseInstance(mNumAtts);
-			inst.setDataset(mSchema);
-			String[] values = line.toLowerCase().split(",");
-			for (int i = 0; i < values.length; i++) {
-				values[i] = values[i].trim();
+			rows++;
+			line = line.toLowerCase();
+			if (mColumns == null) {
+				readSchema(names, StringUtil.trimmedSplit(line, ","));
 			}
-			String id = values[0];
+			
+			//Empty trailing fields are dropped, as split() does, so that they stay missing
+			int length = line.length();
+			while (length > 0 && line.charAt(length - 1) == ',') {
+				length--;
+			}
+			cursor.reset(line, length);
+			
+			int row = mIDIndex.getIndex(cursor.nextString());
+			if (row < 0) continue;
 			
 			//src_cc,dst_cc
-			if (values[1].equals("--") && values[2].equals("--")) {
-				inst.setMissing(0);
-			} else if (values[1].equals("--")) {
-				inst.setValue(0, values[2]);
+			String srcCC = cursor.nextString();
+			String dstCC = cursor.nextString();
+			if (srcCC.equals(MISSING_CC) && dstCC.equals(MISSING_CC)) {
+				mColumns[0].setMissing(row);
+			} else if (srcCC.equals(MISSING_CC)) {
+				mColumns[0].setValue(row, dstCC);
 			} else {
-				inst.setValue(0, values[1]);
+				mColumns[0].setValue(row, srcCC);
 			}
 			
-			for (int i = 3, ia = 1; i < values.length; i++, ia++) {
-				Attribute a = inst.attribute(ia);
-				
-				if (a.isNumeric()) {
-					try {
-						double num = Double.parseDouble(values[i]);
-						inst.setValue(ia, num);
-					} catch (NumberFormatException ex) {
-						System.err.println("Numeric value expected: " + values[i]);
-						inst.setMissing(ia);
-					}
-				} else {
-					inst.setValue(ia, values[i]);
-				}
+			for (int ia = 1; cursor.hasNext() && ia < mColumns.length; ia++) {
+				mColumns[ia].setValue(row, cursor);
 			}
-			
-			inst.setClassMissing();
-			mInstanceMap.put(id, inst);
 		}
 		
 		in.close();
+		timer.addRows(rows);
+		timer.stop();
+		
+		if (mColumns == null) throw new IOException("Error: " + mCurrentInPath + " has no data.");
 	}
 
-	private void readSchema() throws IOException {
-		BufferedReader in = new BufferedReader(new FileReader(mCurrentInPath));
-		String line = in.readLine();
-		String[] names = line.split(",");
-		mNumAtts = names.length - 1; // src_cc,dst_cc merged into cc
+	//Attribute types are inferred from the first data row
+	private void readSchema(String[] names, String[] values) {
+		mColumns = new Column[names.length - 2]; // src_cc,dst_cc merged into cc
+		mColumns[0] = new Column("cc", true, mIDs.size());
+		for (int i = 3, ia = 1; i < values.length && ia < mColumns.length; i++, ia++) {
+			boolean isNominal = false;
+			try {
+				Double.parseDouble(values[i]);
+			} catch (NumberFormatException ex) {
+				isNominal = true;
+			}
+			
+			mColumns[ia] = new Column(names[i].trim(), isNominal, mIDs.size());
+		}
+	}
+
+	private void writeARFF(String file, boolean isLog) throws IOException {
+		List<String> atts = CUtil.makeList();
+		for (Column c : mColumns) {
+			atts.add(c.getSchema());
+		}
+		
+		ARFFWriter out = new ARFFWriter(file, isLog ? RELATION_LOG : RELATION, null, atts);
+		String[] values = new String[mColumns.length + 1];
+		values[values.length - 1] = "?";
+		for (int row = 0; row < mIDs.size(); row++) {
+			for (int ia = 0; ia < mColumns.length; ia++) {
+				values[ia] = mColumns[ia].format(row, isLog);
+			}
+			out.writeValues(values);
+		}
+		
+		out.close();
+	}
+	
+	private static class Column {
 		
-		line = in.readLine();
+		private String mName;
+		private double[] mValues;
+		private List<String> mNominalValues;
+		private Map<String, Integer> mNominalIndex;
 		
-		String[] values = line.toLowerCase().split(",");
-		for (int i = 0; i < values.length; i++) {
-			values[i] = values[i].trim();
+		public Column(String name, boolean isNominal, int size) {
+			mName = name;
+			mValues = new double[size];
+			Arrays.fill(mValues, Double.NaN);
+			if (isNominal) {
+				mNominalValues = CUtil.makeList();
+				mNominalIndex = CUtil.makeMap();
+			}
 		}
 		
-		mSchema.insertAttributeAt(new Attribute("cc", (List<String>) null), 0);
+		private boolean isNominal() {
+			return mNominalValues != null;
+		}
 		
-		for (int i = 3, ia = 1; i < values.length; i++, ia++) {
-			Attribute newA = null;
-			try {
-				Double.parseDouble(values[i]);
-				newA = new Attribute(names[i].trim());
-			} catch (NumberFormatException ex) {
-				newA = new Attribute(names[i].trim(), (List<String>) null);
+		public void setMissing(int row) {
+			mValues[row] = Double.NaN;
+		}
+		
+		//Reads the next field of cursor; only nominal values are made into Strings
+		public void setValue(int row, FieldCursor cursor) {
+			if (isNominal()) {
+				setValue(row, cursor.nextString());
+			} else {
+				try {
+					mValues[row] = cursor.nextDouble();
+				} catch (NumberFormatException ex) {
+					System.err.println("Numeric value expected: " + ex.getMessage());
+					mValues[row] = Double.NaN;
+				}
+			}
+		}
+		
+		public void setValue(int row, String value) {
+			if (isNominal()) {
+				Integer index = mNominalIndex.get(value);
+				if (index == null) {
+					index = mNominalValues.size();
+					mNominalValues.add(value);
+					mNominalIndex.put(value, index);
+				}
+				mValues[row] = index;
+			} else {
+				try {
+					mValues[row] = Double.parseDouble(value);
+				} catch (NumberFormatException ex) {
+					System.err.println("Numeric value expected: " + value);
+					mValues[row] = Double.NaN;
+				}
+			}
+		}
+		
+		//Nominal values are ordered by first appearance in ID order, as StringToNominal does
+		public void reorderNominalValues() {
+			if (!isNominal()) return;
+			
+			int[] newIndex = new int[mNominalValues.size()];
+			Arrays.fill(newIndex, -1);
+			List<String> newValues = CUtil.makeList();
+			for (int row = 0; row < mValues.length; row++) {
+				if (Double.isNaN(mValues[row])) continue;
+				
+				int old = (int) mValues[row];
+				if (newIndex[old] < 0) {
+					newIndex[old] = newValues.size();
+					newValues.add(mNominalValues.get(old));
+				}
+				mValues[row] = newIndex[old];
 			}
 			
-			mSchema.insertAttributeAt(newA, ia);
+			mNominalValues = newValues;
+			mNominalIndex = null;
 		}
 		
-		Attribute classAtt = new Attribute("class");
-		mSchema.insertAttributeAt(classAtt, mNumAtts - 1);
-		mSchema.setClassIndex(mNumAtts - 1);
+		//Mean for numeric, mode for nominal
+		public void replaceMissingValues() {
+			double replacement;
+			if (isNominal()) {
+				int[] counts = new int[mNominalValues.size()];
+				for (double v : mValues) {
+					if (!Double.isNaN(v)) {
+						counts[(int) v]++;
+					}
+				}
+				if (counts.length == 0) return;
+				
+				replacement = Utils.maxIndex(counts);
+			} else {
+				double sum = 0.0;
+				int count = 0;
+				for (double v : mValues) {
+					if (!Double.isNaN(v)) {
+						sum += v;
+						count++;
+					}
+				}
+				if (count == 0) return;
+				
+				replacement = sum / count;
+			}
+			
+			for (int row = 0; row < mValues.length; row++) {
+				if (Double.isNaN(mValues[row])) {
+					mValues[row] = replacement;
+				}
+			}
+		}
 		
-		in.close();
-	}
-
-	private void prepareInstances() {
-		Instances instances = new Instances(mSchema, 0);
+		public String getSchema() {
+			if (isNominal()) {
+				StringBuilder b = new StringBuilder();
+				b.append(Utils.quote(mName)).append(" {");
+				for (int i = 0; i < mNominalValues.size(); i++) {
+					if (i > 0) {
+						b.append(",");
+					}
+					b.append(Utils.quote(mNominalValues.get(i)));
+				}
+				b.append("}");
+				return b.toString();
+			} else {
+				return Utils.quote(mName) + " numeric";
+			}
+		}
 		
-		for (String id : mIDs) {
-			Instance inst = mInstanceMap.get(id);
-			inst.setClassMissing();
-			instances.add(inst);
+		public String format(int row, boolean isLog) {
+			double v = mValues[row];
+			if (Double.isNaN(v)) {
+				return "?";
+			} else if (isNominal()) {
+				return Utils.quote(mNominalValues.get((int) v));
+			} else if (isLog) {
+				return Utils.doubleToString(Math.log(v + 1.0), AFTER_DECIMAL_POINT);
+			} else {
+				return Utils.doubleToString(v, AFTER_DECIMAL_POINT);
+			}
 		}
 		
-		WekaPreprocess.save(instances, mCurrentOutPath + WekaPreprocess.ALL_SUFFIX);
 	}
 
 }
@@ -44,18 +44,16 @@ import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.ARFFWriter;
 import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.FileUtil;
-import gov.ameslab.cydime.util.Histogram;
-import gov.ameslab.cydime.util.StringUtil;
+import gov.ameslab.cydime.util.IpIndex;
+import gov.ameslab.cydime.util.RunReport;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,63 +66,92 @@ public class ServiceMax extends FeatureSet {
 	
 	private static final Logger Log = Logger.getLogger(ServiceMax.class.getName());
 	
-	private static final String FLATTEN = ".Bytes";
-
-	private Map<String, String> mIDServices;
+	private static final int SERVICES = ServiceParser.SERVICES.length;
+	
+	//Distinct (src, dest) pairs are few in practice; the cache is simply dropped if that is not so
+	private static final int MAX_CACHED_PAIRS = 1 << 16;
+	
+	private IpIndex mIndex;
+	//Per IP ordinal: bytes per category
+	private long[][] mIDBytes;
+	private Map<String, Map<String, int[]>> cCategories;
+	private int cCachedPairs;
 	
-	public ServiceMax(List<String> ids, String inPath, String outPath) {
+	//index holds the ordinals of ids, e.g. from InstanceDatabase.makeIPIndex()
+	public ServiceMax(List<String> ids, IpIndex index, String inPath, String outPath) {
 		super(ids, inPath, outPath);
+		mIndex = index;
 	}
 
 	public InstanceDatabase run() throws IOException {
-		flatten();
-		loadFlatten();
+		read();
 		prepareInstances();
 		FileUtil.copy(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX, mCurrentOutPath + WekaPreprocess.REPORT_SUFFIX);
 		return new InstanceDatabase(mCurrentOutPath, mIDs);
 	}
 	
-	private void flatten() throws IOException {
-		Log.log(Level.INFO, "Processing services (Phase 1)...");
+	private void read() throws IOException {
+		Log.log(Level.INFO, "Processing services...");
 
-		Map<String, Histogram<String>> idServices = CUtil.makeMap();
+		//Only the IPs to be written are kept; rows of other IPs are skipped after parsing the address
+		mIDBytes = new long[mIndex.size()][];
+		cCategories = CUtil.makeMap();
+		cCachedPairs = 0;
 		
+		FieldCursor cursor = new FieldCursor(',');
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("service.read");
+		long rows = 0L;
 		BufferedReader in = new BufferedReader(new FileReader(mCurrentInPath));
 		String line = in.readLine();
 		while ((line = in.readLine()) != null) {
-			String[] split = StringUtil.trimmedSplit(line, ",");
-			String id = split[0];
+			rows++;
+			cursor.reset(line);
+			int index = mIndex.getIndex(cursor.nextIPv4());
+			if (index < 0) continue;
 
-			Histogram<String> services = idServices.get(id);
-			if (services == null) {
-				services = new Histogram<String>();
-				idServices.put(id, services);
+			long[] bytes = mIDBytes[index];
+			if (bytes == null) {
+				bytes = new long[SERVICES];
+				mIDBytes[index] = bytes;
 			}
 			
 			//1.0.173.79,udp,udp/domain,2,2,435
-			String src = split[1];
-			String dest = split[2];
-			long value = Long.parseLong(split[5]);
-			for (String serv : ServiceParser.parse(src, dest)) {
-				services.increment(serv, value);
+			String src = cursor.nextString();
+			String dest = cursor.nextString();
+			cursor.skip(2);
+			long value = cursor.nextLong();
+			for (int serv : getCategories(src, dest)) {
+				bytes[serv] += value;
 			}
 		}
 		in.close();
+		timer.addRows(rows);
+		timer.stop();
 		
-		BufferedWriter out = new BufferedWriter(new FileWriter(mCurrentOutPath + FLATTEN));
-		for (Entry<String, Histogram<String>> entry : idServices.entrySet()) {
-			out.write(entry.getKey());
-			out.write(",");
-			out.write(entry.getValue().getMaxKeyByValue());
-			out.newLine();
-		}
-		out.close();
+		cCategories = null;
 	}
 
-	private void loadFlatten() throws IOException {
-		Log.log(Level.INFO, "Processing services (Phase 2)...");
-
-		mIDServices = FileUtil.readCSV(mCurrentOutPath + FLATTEN, false);
+	private int[] getCategories(String src, String dest) {
+		Map<String, int[]> destCategories = cCategories.get(src);
+		if (destCategories == null) {
+			destCategories = CUtil.makeMap();
+			cCategories.put(src, destCategories);
+		}
+		
+		int[] categories = destCategories.get(dest);
+		if (categories == null) {
+			if (cCachedPairs >= MAX_CACHED_PAIRS) {
+				cCategories.clear();
+				cCategories.put(src, destCategories);
+				destCategories.clear();
+				cCachedPairs = 0;
+			}
+			
+			categories = ServiceParser.parseIndices(src, dest);
+			destCategories.put(dest, categories);
+			cCachedPairs++;
+		}
+		return categories;
 	}
 	
 	private void prepareInstances() throws IOException {
@@ -140,11 +167,29 @@ public class ServiceMax extends FeatureSet {
 				); 
 		
 		for (String id : mIDs) {
-			String serv = mIDServices.get(id);
-			out.writeValues(serv, "?");
+			out.writeValues(getMaxService(mIDBytes[mIndex.getIndex(id)]), "?");
 		}
 		
 		out.close();
+		
+		mIDBytes = null;
 	}
-
-}
\ No newline at end of file
+	
+	//Missing if the IP has no traffic with positive bytes; ties go to the category listed first in ServiceParser.SERVICES
+	private static String getMaxService(long[] bytes) {
+		if (bytes == null) return "?";
+		
+		int maxIndex = -1;
+		long max = 0L;
+		for (int serv = 0; serv < SERVICES; serv++) {
+			if (bytes[serv] > max) {
+				max = bytes[serv];
+				maxIndex = serv;
+			}
+		}
+		
+		if (maxIndex < 0) return "?";
+		else return ServiceParser.SERVICES[maxIndex];
+	}
+	
+}
@@ -92,6 +92,24 @@ public class ServiceParser {
 		return result;
 	}
 
+	//As parse, but as distinct indices into SERVICES
+	public static int[] parseIndices(String src, String dest) {
+		Set<String> services = parse(src, dest);
+		int[] result = new int[services.size()];
+		int i = 0;
+		for (String serv : services) {
+			result[i++] = indexOf(serv);
+		}
+		return result;
+	}
+	
+	public static int indexOf(String service) {
+		for (int i = 0; i < SERVICES.length; i++) {
+			if (SERVICES[i].equals(service)) return i;
+		}
+		return -1;
+	}
+	
 	private static String getServiceCategory(String v) {
 		if (v.startsWith("ICMP")) {
 			return SERVICE_ICMP;
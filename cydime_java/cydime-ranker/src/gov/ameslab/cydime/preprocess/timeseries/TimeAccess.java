@@ -45,21 +45,19 @@ import gov.ameslab.cydime.model.InstanceDatabase;
 import gov.ameslab.cydime.preprocess.FeatureSet;
 import gov.ameslab.cydime.preprocess.WekaPreprocess;
 import gov.ameslab.cydime.util.ARFFWriter;
-import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.EpochCalendar;
+import gov.ameslab.cydime.util.FieldCursor;
 import gov.ameslab.cydime.util.FileUtil;
-import gov.ameslab.cydime.util.Histogram;
-import gov.ameslab.cydime.util.StringUtil;
+import gov.ameslab.cydime.util.IntHistogram;
+import gov.ameslab.cydime.util.IpIndex;
+import gov.ameslab.cydime.util.RunReport;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -79,53 +77,57 @@ public class TimeAccess extends FeatureSet {
 	public static int WORK_END_HOUR = 17;
 	private static final DecimalFormat FORMAT = new DecimalFormat("0.000");
 
-	private Calendar mCal = GregorianCalendar.getInstance();
-
-	public TimeAccess(List<String> ids, String inPath, String outPath) {
+	private IpIndex mIndex;
+	
+	//index holds the ordinals of ids, e.g. from InstanceDatabase.makeIPIndex()
+	public TimeAccess(List<String> ids, IpIndex index, String inPath, String outPath) {
 		super(ids, inPath, outPath);
+		mIndex = index;
 	}
 
-	private int getHourOfDay(Date date) {
-		mCal.setTime(date);
-		return mCal.get(Calendar.HOUR_OF_DAY);
-	}
-	
 	public InstanceDatabase run() throws IOException {
 		Log.log(Level.INFO, "Processing time access...");
 		
-		Set<String> ids = CUtil.makeSet();
-		Map<String, Integer> idMinHour = CUtil.makeMap();
-		Map<String, Integer> idMaxHour = CUtil.makeMap();
-		Histogram<String> onWorkHours = new Histogram<String>();
-		Histogram<String> offWorkHours = new Histogram<String>();
+		//Only the IPs to be written are kept; rows of other IPs are skipped after parsing the address
+		int[] minHour = new int[mIndex.size()];
+		int[] maxHour = new int[mIndex.size()];
+		IntHistogram onWorkHours = new IntHistogram(mIndex.size());
+		IntHistogram offWorkHours = new IntHistogram(mIndex.size());
+		Arrays.fill(maxHour, -1);
 		
+		FieldCursor cursor = new FieldCursor(',');
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("timeaccess.read");
+		long rows = 0L;
 		BufferedReader in = new BufferedReader(new FileReader(mCurrentInPath));
 		String line = in.readLine();
 		while ((line = in.readLine()) != null) {
-			String[] split = StringUtil.trimmedSplit(line, ",");
-			String id = split[0];
-			ids.add(id);
-			long epoch = Long.parseLong(split[1]) * 1000;
-			Date date = new Date(epoch);
-			int hourOfDay = getHourOfDay(date);
-			if (idMinHour.containsKey(id)) {
-				if (hourOfDay < idMinHour.get(id)) {
-					idMinHour.put(id, hourOfDay);
-				} else if (hourOfDay > idMaxHour.get(id)) {
-					idMaxHour.put(id, hourOfDay);
+			rows++;
+			cursor.reset(line);
+			int i = mIndex.getIndex(cursor.nextIPv4());
+			if (i < 0) continue;
+			
+			long epoch = cursor.nextLong() * 1000;
+			int hourOfDay = EpochCalendar.DEFAULT.getHourOfDay(epoch);
+			if (maxHour[i] >= 0) {
+				if (hourOfDay < minHour[i]) {
+					minHour[i] = hourOfDay;
+				} else if (hourOfDay > maxHour[i]) {
+					maxHour[i] = hourOfDay;
 				}
 			} else {
-				idMinHour.put(id, hourOfDay);
-				idMaxHour.put(id, hourOfDay);
+				minHour[i] = hourOfDay;
+				maxHour[i] = hourOfDay;
 			}
 			
 			if (hourOfDay >= WORK_BEGIN_HOUR && hourOfDay <= WORK_END_HOUR) {
-				onWorkHours.increment(id);
+				onWorkHours.increment(i);
 			} else {
-				offWorkHours.increment(id);
+				offWorkHours.increment(i);
 			}
 		}
 		in.close();
+		timer.addRows(rows);
+		timer.stop();
 		
 		ARFFWriter out = new ARFFWriter(mCurrentOutPath + WekaPreprocess.ALL_SUFFIX, "timeaccess", ARFFWriter.CLASS_BINARY,
 				"access_hours numeric",
@@ -134,9 +136,12 @@ public class TimeAccess extends FeatureSet {
 				); 
 		
 		for (String id : mIDs) {
-			int accessHours = (int) (onWorkHours.get(id) + offWorkHours.get(id));
-			int span = idMaxHour.get(id) - idMinHour.get(id) + 1;
-			double workhour_perc = onWorkHours.get(id) / accessHours;
+			int i = mIndex.getIndex(id);
+			if (maxHour[i] < 0) throw new IllegalStateException("Error: " + id + " has no records in " + mCurrentInPath);
+			
+			int accessHours = (int) (onWorkHours.get(i) + offWorkHours.get(i));
+			int span = maxHour[i] - minHour[i] + 1;
+			double workhour_perc = onWorkHours.get(i) / accessHours;
 			
 			out.writeValues(String.valueOf(accessHours),
 					String.valueOf(span),
@@ -44,6 +44,7 @@ import gov.ameslab.cydime.model.ListDatabase;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 import gov.ameslab.cydime.util.FileUtil;
+import gov.ameslab.cydime.util.RunReport;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
@@ -51,6 +52,12 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import weka.classifiers.AbstractClassifier;
@@ -89,65 +96,122 @@ public class CydimeRanker {
 	}
 
 	private void run() throws Exception {
-		InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
+		RunReport.INSTANCE.begin("rank " + Config.INSTANCE.getCurrentDatePath());
+		try {
+			rank();
+		} finally {
+			try {
+				RunReport.INSTANCE.write(Config.INSTANCE.getRunReportPath("rank"));
+			} catch (IOException e) {
+				Log.log(Level.WARNING, "Cannot write run report: {0}", e.toString());
+			}
+		}
+	}
+	
+	private void rank() throws Exception {
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("load");
+		final InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
+		//Load once; the runs share the instances read-only
+		aggNorm.getWekaInstances();
 		
-		List<String> ips = CUtil.makeList(aggNorm.getIDs());
+		final List<String> ips = CUtil.makeList(aggNorm.getIDs());
+		timer.addRows(ips.size());
+		timer.stop();
+		RunReport.INSTANCE.gauge("ids", ips.size());
 		
+		timer = RunReport.INSTANCE.startTimer("labels");
 		ListDatabase whiteDB = ListDatabase.read(Config.INSTANCE.getString(Config.STATIC_WHITE_FILE));
 		LabelSample whiteLabel = new LabelSample(whiteDB.getList(ips));
 		
 		ListDatabase blackDB = ListDatabase.read(Config.INSTANCE.getString(Config.STATIC_BLACK_FILE));
 		LabelSample blackLabel = new LabelSample(blackDB.getList(ips));
+		timer.stop();
 		
-		Map<String, Double> preds = CUtil.makeMap();
+		int threads = Math.min(RUNS, Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<double[]>> futures = CUtil.makeList();
 		for (int run = 0; run < RUNS; run++) {
 			List<String> whiteSample = whiteLabel.getNextSample();
 			List<String> blackSample = blackLabel.getNextSample();
-			LabelSplit split = new LabelSplit(ips, whiteSample, blackSample, 100.0, 100.0, new Random(run));
-			run(run, split, preds);
+			final LabelSplit split = new LabelSplit(ips, whiteSample, blackSample, 100.0, 100.0, new Random(run));
+			final int runID = run;
+			futures.add(pool.submit(new Callable<double[]>() {
+
+				@Override
+				public double[] call() throws Exception {
+					return run(runID, split, aggNorm, ips);
+				}
+				
+			}));
 		}
 		
-		CUtil.divide(preds, RUNS);
+		//Each run fills its own array; summing them in run order keeps the result deterministic
+		double[] preds = new double[ips.size()];
+		try {
+			for (Future<double[]> future : futures) {
+				double[] pred = future.get();
+				for (int i = 0; i < preds.length; i++) {
+					preds[i] += pred[i];
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			} else {
+				throw e;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		for (int i = 0; i < preds.length; i++) {
+			preds[i] /= RUNS;
+		}
 		
-		writeFinalResult(aggNorm, preds);
+		timer = RunReport.INSTANCE.startTimer("write");
+		writeFinalResult(ips, preds);
+		timer.stop();
 	}
 
-	private void run(int runID, LabelSplit split, Map<String, Double> preds) throws Exception {
-		InstanceDatabase baseNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
-		
+	private double[] run(int runID, LabelSplit split, InstanceDatabase baseNorm, List<String> ips) throws Exception {
+		RunReport.Timer timer = RunReport.INSTANCE.startTimer("run " + runID);
+		Map<String, String> labels = CUtil.makeMap();
 		for (String ip : split.getTrainWhite()) {
-			baseNorm.setLabel(ip, LabelSplit.LABEL_POSITIVE);
+			labels.put(ip, LabelSplit.LABEL_POSITIVE);
 		}
 		
 		for (String ip : split.getTrainNonWhite()) {
-			baseNorm.setLabel(ip, LabelSplit.LABEL_NEGATIVE);
+			labels.put(ip, LabelSplit.LABEL_NEGATIVE);
 		}
 
-		Instances wekaTrain = baseNorm.getWekaTrain();
+		Instances wekaTrain = baseNorm.getWekaTrain(labels);
 		AbstractClassifier c = RankerFactory.makeAdaBoostM1();
 		c.buildClassifier(wekaTrain);
 		
 		FileUtil.writeFile(Config.INSTANCE.getModelPath() + runID + ".txt", c.toString());
 		SerializationHelper.write(Config.INSTANCE.getModelPath() + runID + ".model", c);
 		
-		Map<String, Double> pred = CUtil.makeMap();
-		for (String ip : split.getAll()) {
-			Instance inst = baseNorm.getWekaInstance(ip);
+		double[] pred = new double[ips.size()];
+		for (int i = 0; i < pred.length; i++) {
+			Instance inst = (Instance) baseNorm.getWekaInstance(ips.get(i)).copy();
 			double dist[] = c.distributionForInstance(inst);
-			pred.put(ip, dist[1]);
+			pred[i] = dist[1];
 		}
 		
-		CUtil.add(preds, pred);
+		timer.addRows(pred.length);
+		timer.stop();
+		Log.log(Level.INFO, "Run {0} done.", runID);
+		return pred;
 	}
 
-	private void writeFinalResult(InstanceDatabase aggNorm, Map<String, Double> preds) throws IOException {
+	private void writeFinalResult(List<String> ips, double[] preds) throws IOException {
 		BufferedWriter out = new BufferedWriter(new FileWriter(Config.INSTANCE.getFinalResultPath()));
 		out.write("ID,score");
 		out.newLine();
 		
-		for (String id : aggNorm.getIDs()) {
-			out.write(id + ",");
-			out.write(String.valueOf(preds.get(id)));
+		for (int i = 0; i < preds.length; i++) {
+			out.write(ips.get(i) + ",");
+			out.write(String.valueOf(preds[i]));
 			out.newLine();
 		}
 		out.close();
@@ -50,6 +50,7 @@ import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
@@ -58,10 +59,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.LibSVM;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -78,6 +82,9 @@ public class CydimeRankerExp {
 	public static final double TRAIN_PERCENT = 100.0 * 2 / 3;
 	private static final DecimalFormat LABEL_FORMAT = new DecimalFormat("0");
 	
+	//LibSVM reseeds the static libsvm.svm.rand when it trains, so concurrent builds share one generator
+	private static final Object LIBSVM_LOCK = new Object();
+	
 	private AbstractClassifier[] mAlgorithms;
 	private AbstractClassifier[] mAlgorithmsU;
 	
@@ -143,6 +150,8 @@ public class CydimeRankerExp {
 
 	private void run() throws Exception {
 		InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
+		//Load once; all cells share the instances read-only
+		aggNorm.getWekaInstances();
 		
 		List<String> ips = CUtil.makeList(aggNorm.getIDs());
 		
@@ -154,14 +163,15 @@ public class CydimeRankerExp {
 		
 		printStats(ips, whiteDB.getList(ips), blackDB.getList(ips));
 		
+		ExperimentScheduler scheduler = new ExperimentScheduler();
 		for (int run = 0; run < RUNS; run++) {
 			List<String> whiteSample = whiteLabel.getNextSample();
 			List<String> blackSample = blackLabel.getNextSample();
 			LabelSplit split = new LabelSplit(ips, whiteSample, blackSample, TRAIN_PERCENT, mLabelPercentage, new Random(run));
-			run00(run, split);
-			runU0(run, split);
-			runUU(run, split);
+			schedule00(scheduler, aggNorm, run, split);
+			scheduleU0UU(scheduler, aggNorm, run, split);
 		}
+		scheduler.await();
 		
 		summarize("00");
 		summarize("U0");
@@ -186,96 +196,92 @@ public class CydimeRankerExp {
 		System.out.println("Average = " + (1.0 * sum / subnets));
 	}
 
-	private void run00(int runID, LabelSplit split) throws Exception {
-		InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
+	private void schedule00(ExperimentScheduler scheduler, InstanceDatabase aggNorm, int runID, LabelSplit split) throws Exception {
 		String labelAnnot = "_00label" + LABEL_FORMAT.format(mLabelPercentage);
 		
+		Map<String, String> labels = CUtil.makeMap();
 		for (String ip : split.getTrainWhite()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_POSITIVE);
+			labels.put(ip, LabelSplit.LABEL_POSITIVE);
 		}
 		
 		for (String ip : split.getTrainBlack()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_NEGATIVE);
+			labels.put(ip, LabelSplit.LABEL_NEGATIVE);
 		}
 
-		Instances wekaTrain = aggNorm.getWekaTrain();
+		Instances wekaTrain = aggNorm.getWekaTrain(labels);
 		WekaPreprocess.save(wekaTrain, Config.INSTANCE.getCurrentReportPath() + "00train" + runID + ".arff");
 		
 		for (int i = 0; i < mAlgorithms.length; i++) {
-			Log.log(Level.INFO, "Building {0}...", i);
-			
-			mAlgorithms[i].buildClassifier(wekaTrain);
-			
-			Map<String, Double> preds = CUtil.makeMap();
-			for (String ip : split.getTestKnown()) {
-				Instance inst = aggNorm.getWekaInstance(ip);
-				double dist[] = mAlgorithms[i].distributionForInstance(inst);
-				preds.put(ip, dist[1]);
-			}
-			
-			writeRank(getResultFile(runID, labelAnnot, i), split.getTestKnown(), split.getTestWhite(), preds);
-			writeScore(getScoreFile(runID, labelAnnot, i), split.getTestWhite(), preds);
+			schedule(scheduler, aggNorm, runID, labelAnnot, i, mAlgorithms[i], wekaTrain, split.getTestKnown(), split.getTestWhite());
 		}
 	}
 
-	private void runU0(int runID, LabelSplit split) throws Exception {
-		InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
-		String labelAnnot = "_U0label" + LABEL_FORMAT.format(mLabelPercentage);
+	private void scheduleU0UU(ExperimentScheduler scheduler, InstanceDatabase aggNorm, int runID, LabelSplit split) throws Exception {
+		String labelAnnotU0 = "_U0label" + LABEL_FORMAT.format(mLabelPercentage);
+		String labelAnnotUU = "_UUlabel" + LABEL_FORMAT.format(mLabelPercentage);
 		
+		Map<String, String> labels = CUtil.makeMap();
 		for (String ip : split.getTrainWhite()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_POSITIVE);
+			labels.put(ip, LabelSplit.LABEL_POSITIVE);
 		}
 		
 		for (String ip : split.getTrainNonWhite()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_NEGATIVE);
+			labels.put(ip, LabelSplit.LABEL_NEGATIVE);
 		}
 
-		Instances wekaTrain = aggNorm.getWekaTrain();
+		//U0 and UU train on the same labels and differ only in the test set
+		Instances wekaTrain = aggNorm.getWekaTrain(labels);
 		for (int i = 0; i < mAlgorithmsU.length; i++) {
-			Log.log(Level.INFO, "Building {0}...", i);
-			
-			mAlgorithmsU[i].buildClassifier(wekaTrain);
-			
-			Map<String, Double> preds = CUtil.makeMap();
-			for (String ip : split.getTestKnown()) {
-				Instance inst = aggNorm.getWekaInstance(ip);
-				double dist[] = mAlgorithmsU[i].distributionForInstance(inst);
-				preds.put(ip, dist[1]);
+			schedule(scheduler, aggNorm, runID, labelAnnotU0, i, mAlgorithmsU[i], wekaTrain, split.getTestKnown(), split.getTestWhite());
+			schedule(scheduler, aggNorm, runID, labelAnnotUU, i, mAlgorithmsU[i], wekaTrain, split.getTestAll(), split.getTestWhite());
+		}
+	}
+	
+	private void schedule(ExperimentScheduler scheduler, final InstanceDatabase aggNorm, final int runID, final String labelAnnot, final int algID,
+			final AbstractClassifier algorithm, final Instances wekaTrain, final List<String> testIPs, final List<String> testWhite) {
+		scheduler.submit(getScoreFile(runID, labelAnnot, algID), new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				Log.log(Level.INFO, "Building {0} ({1}, run {2})...", new Object[] {algID, labelAnnot.substring(1), runID});
+				
+				//Each cell trains a fresh copy on its own copy of the training set
+				Classifier c = AbstractClassifier.makeCopy(algorithm);
+				if (usesLibSVM(c)) {
+					synchronized (LIBSVM_LOCK) {
+						c.buildClassifier(new Instances(wekaTrain));
+					}
+				} else {
+					c.buildClassifier(new Instances(wekaTrain));
+				}
+				
+				Map<String, Double> preds = CUtil.makeMap();
+				for (String ip : testIPs) {
+					Instance inst = (Instance) aggNorm.getWekaInstance(ip).copy();
+					double dist[] = c.distributionForInstance(inst);
+					preds.put(ip, dist[1]);
+				}
+				
+				writeRank(getResultFile(runID, labelAnnot, algID), testIPs, testWhite, preds);
+				
+				File scoreTemp = ExperimentScheduler.getTempFile(getScoreFile(runID, labelAnnot, algID));
+				writeScore(scoreTemp.getPath(), testWhite, preds);
+				ExperimentScheduler.commit(scoreTemp);
+				return null;
 			}
 			
-			writeRank(getResultFile(runID, labelAnnot, i), split.getTestKnown(), split.getTestWhite(), preds);
-			writeScore(getScoreFile(runID, labelAnnot, i), split.getTestWhite(), preds);
-		}
+		});
 	}
 
-	private void runUU(int runID, LabelSplit split) throws Exception {
-		InstanceDatabase aggNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
-		String labelAnnot = "_UUlabel" + LABEL_FORMAT.format(mLabelPercentage);
-		
-		for (String ip : split.getTrainWhite()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_POSITIVE);
-		}
+	private static boolean usesLibSVM(Classifier c) {
+		if (c instanceof LibSVM) return true;
 		
-		for (String ip : split.getTrainNonWhite()) {
-			aggNorm.setLabel(ip, LabelSplit.LABEL_NEGATIVE);
-		}
-
-		Instances wekaTrain = aggNorm.getWekaTrain();
-		for (int i = 0; i < mAlgorithmsU.length; i++) {
-			Log.log(Level.INFO, "Building {0}...", i);
-			
-			mAlgorithmsU[i].buildClassifier(wekaTrain);
-			
-			Map<String, Double> preds = CUtil.makeMap();
-			for (String ip : split.getTestAll()) {
-				Instance inst = aggNorm.getWekaInstance(ip);
-				double dist[] = mAlgorithmsU[i].distributionForInstance(inst);
-				preds.put(ip, dist[1]);
+		if (c instanceof ResampleEnsemble) {
+			for (Classifier base : ((ResampleEnsemble) c).getBases()) {
+				if (usesLibSVM(base)) return true;
 			}
-			
-			writeRank(getResultFile(runID, labelAnnot, i), split.getTestAll(), split.getTestWhite(), preds);
-			writeScore(getScoreFile(runID, labelAnnot, i), split.getTestWhite(), preds);
 		}
+		return false;
 	}
 
 	private String getResultFile(int runID, String labelAnnot, int algID) {
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+package gov.ameslab.cydime.ranker;
+
+import gov.ameslab.cydime.util.CUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the cells of an experiment grid on a bounded thread pool. A cell is
+ * skipped when its output file already exists, so an interrupted experiment
+ * can be restarted and only the missing cells are recomputed. Cells should
+ * write their output file last (see {@link #commit(File)}).
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class ExperimentScheduler {
+
+	private static final Logger Log = Logger.getLogger(ExperimentScheduler.class.getName());
+	
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	private ExecutorService mPool;
+	private List<Future<Void>> mFutures;
+	private int mSkipped;
+	
+	public ExperimentScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public ExperimentScheduler(int threads) {
+		mPool = Executors.newFixedThreadPool(threads);
+		mFutures = CUtil.makeList();
+		mSkipped = 0;
+	}
+	
+	public void submit(String outputFile, Callable<Void> cell) {
+		if (new File(outputFile).exists()) {
+			mSkipped++;
+			return;
+		}
+		
+		mFutures.add(mPool.submit(cell));
+	}
+	
+	public void await() throws Exception {
+		Log.log(Level.INFO, "Running {0} cells, {1} already done...", new Object[] {mFutures.size(), mSkipped});
+		try {
+			for (int i = 0; i < mFutures.size(); i++) {
+				mFutures.get(i).get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			} else {
+				throw e;
+			}
+		} finally {
+			mPool.shutdownNow();
+		}
+	}
+	
+	public static File getTempFile(String outputFile) {
+		return new File(outputFile + TEMP_SUFFIX);
+	}
+	
+	//Moves a fully written temp file into place so a partial output never counts as done
+	public static void commit(File temp) throws IOException {
+		String name = temp.getPath();
+		File output = new File(name.substring(0, name.length() - TEMP_SUFFIX.length()));
+		if (!temp.renameTo(output)) {
+			throw new IOException("Error: cannot rename " + temp + " to " + output);
+		}
+	}
+	
+}
@@ -24,6 +24,10 @@ public class ResampleEnsemble extends AbstractClassifier {
 		mRandom = seed;
 	}
 
+	public List<AbstractClassifier> getBases() {
+		return mBases;
+	}
+
 	@Override
 	public void buildClassifier(Instances instances) throws Exception {
 		List<Instance> positives = CUtil.makeList();
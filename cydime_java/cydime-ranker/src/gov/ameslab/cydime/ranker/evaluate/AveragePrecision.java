@@ -28,4 +28,9 @@ public class AveragePrecision implements RankEvaluator {
 		return sum / pos.size();
 	}
 
+	@Override
+	public double getMaxScore() {
+		return 1.0;
+	}
+
 }
@@ -5,23 +5,41 @@ import gov.ameslab.cydime.ranker.LabelSplit;
 import gov.ameslab.cydime.util.CUtil;
 import gov.ameslab.cydime.util.Config;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
 
+/**
+ * Greedy forward feature selection. Candidate features of each round are
+ * evaluated concurrently, each with its own copy of the classifier, on
+ * narrow instances built straight from shared primitive rows. A candidate
+ * is abandoned as soon as its mean over the splits can no longer beat the
+ * best candidate finished so far.
+ */
 public class FeatureWrapper {
 
 	private static final Logger Log = Logger.getLogger(FeatureWrapper.class.getName());
 	
+	//Slack for rounding when comparing an upper bound against the best mean
+	private static final double EPSILON = 1.0E-12;
+	
 	private AbstractClassifier mClassifier;
 	private RankEvaluator mEvaluator;
 	private LabelSplit[] mSplits;
@@ -32,8 +50,9 @@ public class FeatureWrapper {
 	private int mLastFeature;
 
 	private InstanceDatabase cBaseNorm;
-	private Instances[] mTrains;
-	private Instances[] mTests;
+	private Instances mHeader;
+	private double[][][] mTrains;
+	private double[][][] mTests;
 	
 	public FeatureWrapper(AbstractClassifier c, RankEvaluator e, LabelSplit[] splits, int totalFeatures) {
 		mClassifier = c;
@@ -46,8 +65,9 @@ public class FeatureWrapper {
 	public boolean findNext() throws Exception {
 		if (cBaseNorm == null) {
 			cBaseNorm = InstanceDatabase.load(Config.INSTANCE.getAggregatedNormPath());
-			mTrains = new Instances[mSplits.length];
-			mTests = new Instances[mSplits.length];
+			mHeader = new Instances(cBaseNorm.getWekaInstances(), 0);
+			mTrains = new double[mSplits.length][][];
+			mTests = new double[mSplits.length][][];
 			
 			for (int i = 0; i < mSplits.length; i++) {
 				mTrains[i] = getTrain(cBaseNorm, mSplits[i]);
@@ -55,21 +75,53 @@ public class FeatureWrapper {
 			}
 		}
 		
-		int bestFeatureIndex = -1;
-		double bestFeatureEval = 0.0;
-		
+		final AtomicLong bestSoFar = new AtomicLong(Double.doubleToLongBits(0.0));
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<Integer> candidates = CUtil.makeList();
+		List<Future<Double>> futures = CUtil.makeList();
 		for (int i = 0; i <= mLastFeatureIndex; i++) {
 			if (mFeatures.contains(i)) continue;
 			
 //			if (i == 1 || i == 30 || i == 31 || i == 32) continue; //TEST
 			
-			double eval = wrapWithFeature(i);
-			if (eval > bestFeatureEval) {
-				bestFeatureEval = eval;
-				bestFeatureIndex = i;
+			final int index = i;
+			candidates.add(index);
+			futures.add(pool.submit(new Callable<Double>() {
+
+				@Override
+				public Double call() throws Exception {
+					return wrapWithFeature(index, bestSoFar);
+				}
+				
+			}));
+		}
+		
+		int bestFeatureIndex = -1;
+		double bestFeatureEval = 0.0;
+		try {
+			//Candidates are scanned in index order so ties go to the lower index
+			for (int c = 0; c < candidates.size(); c++) {
+				double eval = futures.get(c).get();
+				if (Double.isNaN(eval)) {
+					Log.log(Level.INFO, "Wrapped feature " + candidates.get(c) + " abandoned");
+					continue;
+				}
+				
+				if (eval > bestFeatureEval) {
+					bestFeatureEval = eval;
+					bestFeatureIndex = candidates.get(c);
+				}
+				
+				Log.log(Level.INFO, "Wrapped feature " + candidates.get(c) + " = " + eval);
 			}
-			
-			Log.log(Level.INFO, "Wrapped feature " + i + " = " + eval);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			} else {
+				throw e;
+			}
+		} finally {
+			pool.shutdownNow();
 		}
 			
 		boolean result = (bestFeatureEval > mLastEval);
@@ -83,29 +135,25 @@ public class FeatureWrapper {
 		return result;
 	}
 
-	private double wrapWithFeature(int index) throws Exception {
-		Remove filter = getFilter(index);		
+	//Returns NaN if the candidate was abandoned
+	private double wrapWithFeature(int index, AtomicLong bestSoFar) throws Exception {
+		int[] as = getSelectedAttributes(index);
+		Classifier c = AbstractClassifier.makeCopy(mClassifier);
+		double maxScore = mEvaluator.getMaxScore();
 		
 		double evalSum = 0.0;
 		for (int i = 0; i < mSplits.length; i++) {
-			Instances wekaTrain = null;
-			Instances wekaTest = null;
-			try {
-				filter.setInputFormat(mTrains[i]);
-				wekaTrain = Filter.useFilter(mTrains[i], filter);
-				wekaTest = Filter.useFilter(mTests[i], filter);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			Instances wekaTrain = makeInstances(as, mTrains[i]);
+			Instances wekaTest = makeInstances(as, mTests[i]);
 			
-			mClassifier.buildClassifier(wekaTrain);
+			c.buildClassifier(wekaTrain);
 			
 			Map<String, Double> preds = CUtil.makeMap();
 			List<String> testKnown = mSplits[i].getTestKnown();
 			for (int t = 0; t < testKnown.size(); t++) {
 				String ip = testKnown.get(t);
 				Instance inst = wekaTest.get(t);
-				double dist[] = mClassifier.distributionForInstance(inst);
+				double dist[] = c.distributionForInstance(inst);
 				preds.put(ip, dist[1]);
 			}
 			
@@ -113,12 +161,24 @@ public class FeatureWrapper {
 			Collections.reverse(rank);
 			
 			evalSum += mEvaluator.evaluate(mSplits[i].getTestWhite(), rank);
+			
+			int remaining = mSplits.length - i - 1;
+			double upperBound = (evalSum + remaining * maxScore) / mSplits.length;
+			if (remaining > 0 && upperBound < Double.longBitsToDouble(bestSoFar.get()) - EPSILON) {
+				return Double.NaN;
+			}
 		}
-				
-		return evalSum / mSplits.length;
+		
+		double eval = evalSum / mSplits.length;
+		while (true) {
+			long best = bestSoFar.get();
+			if (eval <= Double.longBitsToDouble(best)) break;
+			if (bestSoFar.compareAndSet(best, Double.doubleToLongBits(eval))) break;
+		}
+		return eval;
 	}
 
-	private Remove getFilter(int index) {
+	private int[] getSelectedAttributes(int index) {
 		List<Integer> selectedFeatures = CUtil.makeList(mFeatures);
 		selectedFeatures.add(index);
 		selectedFeatures.add(mLastFeatureIndex + 1);
@@ -127,42 +187,60 @@ public class FeatureWrapper {
 		for (int i = 0; i < as.length; i++) {
 			as[i] = selectedFeatures.get(i);
 		}
-		
-		Remove filter = new Remove();
-		filter.setInvertSelection(true);
-		filter.setAttributeIndicesArray(as);
-		return filter;
+		return as;
 	}
 
-	private Instances getTrain(InstanceDatabase baseNorm, LabelSplit split) {
-		Instances train = new Instances(baseNorm.getWekaInstances(), 0);
+	//Builds instances holding only the selected attributes, the last being the class
+	private Instances makeInstances(int[] as, double[][] rows) {
+		ArrayList<Attribute> atts = new ArrayList<Attribute>(as.length);
+		for (int a = 0; a < as.length; a++) {
+			atts.add((Attribute) mHeader.attribute(as[a]).copy());
+		}
 		
+		Instances data = new Instances(mHeader.relationName(), atts, rows.length);
+		data.setClassIndex(as.length - 1);
+		for (int r = 0; r < rows.length; r++) {
+			double[] values = new double[as.length];
+			for (int a = 0; a < as.length; a++) {
+				values[a] = rows[r][as[a]];
+			}
+			data.add(new DenseInstance(1.0, values));
+		}
+		return data;
+	}
+
+	private double[][] getTrain(InstanceDatabase baseNorm, LabelSplit split) {
+		List<String> ips = CUtil.makeList();
+		List<String> labels = CUtil.makeList();
 		for (String ip : split.getTrainWhite()) {
-			Instance inst = baseNorm.getWekaInstance(ip);
-			inst.setClassValue(LabelSplit.LABEL_POSITIVE);
-			inst.setDataset(train);
-			train.add(inst);
+			ips.add(ip);
+			labels.add(LabelSplit.LABEL_POSITIVE);
 		}
 		
 //		for (String ip : split.getTrainBlack()) {
 		for (String ip : split.getTrainNonWhite()) {
-			Instance inst = baseNorm.getWekaInstance(ip);
-			inst.setClassValue(LabelSplit.LABEL_NEGATIVE);
-			inst.setDataset(train);
-			train.add(inst);
+			ips.add(ip);
+			labels.add(LabelSplit.LABEL_NEGATIVE);
 		}
 		
-		return train;
+		int classIndex = mLastFeatureIndex + 1;
+		double[][] rows = getRows(baseNorm, ips);
+		for (int r = 0; r < rows.length; r++) {
+			rows[r][classIndex] = mHeader.attribute(classIndex).indexOfValue(labels.get(r));
+		}
+		return rows;
 	}
 
-	private Instances getTest(InstanceDatabase baseNorm, LabelSplit split) {
-		Instances test = new Instances(baseNorm.getWekaInstances(), 0);
-		for (String ip : split.getTestKnown()) {
-			Instance inst = baseNorm.getWekaInstance(ip);
-			inst.setDataset(test);
-			test.add(inst);
+	private double[][] getTest(InstanceDatabase baseNorm, LabelSplit split) {
+		return getRows(baseNorm, split.getTestKnown());
+	}
+	
+	private double[][] getRows(InstanceDatabase baseNorm, List<String> ips) {
+		double[][] rows = new double[ips.size()][];
+		for (int r = 0; r < rows.length; r++) {
+			rows[r] = baseNorm.getWekaInstance(ips.get(r)).toDoubleArray();
 		}
-		return test;
+		return rows;
 	}
 
 	public int getFeatureSize() {
@@ -26,6 +26,11 @@ public class NDCG implements RankEvaluator {
 		
 		return sum / getIdealDCG(pos.size());
 	}
+
+	@Override
+	public double getMaxScore() {
+		return 1.0;
+	}
 	
 	private double getIdealDCG(int posSize) {
 		double sum = 0.0;
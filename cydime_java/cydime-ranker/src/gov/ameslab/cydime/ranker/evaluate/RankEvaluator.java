@@ -6,5 +6,8 @@ public interface RankEvaluator {
 
 	String getName();
 	double evaluate(List<String> pos, List<String> rank);
+	
+	//Upper bound of evaluate(), used to abandon hopeless candidates early
+	double getMaxScore();
 
 }
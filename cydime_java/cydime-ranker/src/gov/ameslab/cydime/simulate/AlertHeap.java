@@ -0,0 +1,132 @@
+package gov.ameslab.cydime.simulate;
+
+import gov.ameslab.cydime.util.CUtil;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Binary heap of alerts holding at most one alert per IP, highest score first. The heap
+ * position of every IP is indexed, so a re-alert on a queued IP is merged in place
+ * (decrease-key) and an IP can be removed in O(log n).
+ */
+public class AlertHeap {
+
+	private Alert[] mHeap;
+	private int mSize;
+	private Map<String, Integer> mIndex;
+
+	public AlertHeap() {
+		mHeap = new Alert[16];
+		mSize = 0;
+		mIndex = CUtil.makeMap();
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	public boolean contains(String ip) {
+		return mIndex.containsKey(ip);
+	}
+
+	//Keeps whichever of a and the queued alert for its IP comes first
+	public void offer(Alert a) {
+		Integer i = mIndex.get(a.getIP());
+		if (i == null) {
+			if (mSize == mHeap.length) {
+				mHeap = Arrays.copyOf(mHeap, mSize * 2);
+			}
+			set(mSize, a);
+			siftUp(mSize++);
+		} else if (isBefore(a, mHeap[i])) {
+			set(i, a);
+			siftUp(i);
+		}
+	}
+
+	public Alert peek() {
+		return mSize == 0 ? null : mHeap[0];
+	}
+
+	public Alert poll() {
+		if (mSize == 0) return null;
+
+		Alert top = mHeap[0];
+		removeAt(0);
+		return top;
+	}
+
+	public Alert remove(String ip) {
+		Integer i = mIndex.get(ip);
+		if (i == null) return null;
+
+		Alert a = mHeap[i];
+		removeAt(i);
+		return a;
+	}
+
+	private void removeAt(int i) {
+		mIndex.remove(mHeap[i].getIP());
+		mSize--;
+		if (i < mSize) {
+			Alert last = mHeap[mSize];
+			set(i, last);
+			siftDown(i);
+			if (mHeap[i] == last) {
+				siftUp(i);
+			}
+		}
+		mHeap[mSize] = null;
+	}
+
+	private void siftUp(int i) {
+		Alert a = mHeap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isBefore(a, mHeap[parent])) break;
+
+			set(i, mHeap[parent]);
+			i = parent;
+		}
+		set(i, a);
+	}
+
+	private void siftDown(int i) {
+		Alert a = mHeap[i];
+		int half = mSize >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < mSize && isBefore(mHeap[child + 1], mHeap[child])) {
+				child++;
+			}
+			if (!isBefore(mHeap[child], a)) break;
+
+			set(i, mHeap[child]);
+			i = child;
+		}
+		set(i, a);
+	}
+
+	private void set(int i, Alert a) {
+		mHeap[i] = a;
+		mIndex.put(a.getIP(), i);
+	}
+
+	//Higher score first, then the older alert, then by IP so that ties pop in a fixed order
+	private static boolean isBefore(Alert a, Alert b) {
+		int c = Double.compare(b.getScore(), a.getScore());
+		if (c == 0) {
+			c = Long.compare(a.getTimestamp(), b.getTimestamp());
+		}
+		if (c == 0) {
+			c = a.getIP().compareTo(b.getIP());
+		}
+		return c < 0;
+	}
+
+}
@@ -0,0 +1,169 @@
+package gov.ameslab.cydime.simulate;
+
+import gov.ameslab.cydime.util.CUtil;
+import gov.ameslab.cydime.util.FieldCursor;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Streams alerts from CSV files of time,ip[,...] rows as one time-ordered sequence. Each
+ * file must already be sorted by time; the files are combined with a k-way merge, so only
+ * one row per file is held at a time. Alerts with equal times keep the order of the files.
+ *
+ * The time is either HH:MM:SS within a day or epoch seconds, so multi-day logs can be
+ * replayed. Fractions of a second are ignored.
+ */
+public class AlertReader {
+
+	private Map<String, Double> mIPScore;
+	private Map<String, String> mIPs;
+	private PriorityQueue<Source> mQueue;
+
+	public AlertReader(List<String> files, Map<String, Double> ipScore) throws IOException {
+		mIPScore = ipScore;
+		mIPs = CUtil.makeMap();
+		mQueue = new PriorityQueue<Source>(Math.max(1, files.size()), new Comparator<Source>() {
+
+			@Override
+			public int compare(Source o1, Source o2) {
+				int c = Long.compare(o1.mAlert.getTimestamp(), o2.mAlert.getTimestamp());
+				if (c == 0) {
+					c = Integer.compare(o1.mOrder, o2.mOrder);
+				}
+				return c;
+			}
+
+		});
+
+		boolean isOpen = false;
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				advance(new Source(files.get(i), i));
+			}
+			isOpen = true;
+		} finally {
+			if (!isOpen) {
+				close();
+			}
+		}
+	}
+
+	//Returns null after the last alert
+	public Alert next() throws IOException {
+		Source s = mQueue.poll();
+		if (s == null) return null;
+
+		Alert a = s.mAlert;
+		advance(s);
+		return a;
+	}
+	
+	//Requeues the source at its next alert, or closes it at the end or on error
+	private void advance(Source s) throws IOException {
+		boolean hasNext = false;
+		try {
+			hasNext = s.advance();
+		} finally {
+			if (hasNext) {
+				mQueue.add(s);
+			} else {
+				s.close();
+			}
+		}
+	}
+
+	//Distinct IPs of the alerts read so far
+	public Set<String> getIPs() {
+		return mIPs.keySet();
+	}
+
+	public void close() throws IOException {
+		for (Source s : mQueue) {
+			s.close();
+		}
+		mQueue.clear();
+	}
+
+	private static long parseTime(CharSequence str) {
+		if (str.length() == 0) {
+			throw new NumberFormatException("Error: missing alert time");
+		}
+		
+		long time = 0L;
+		long field = 0L;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c >= '0' && c <= '9') {
+				field = field * 10L + (c - '0');
+			} else if (c == ':') {
+				time = (time + field) * 60L;
+				field = 0L;
+			} else if (c == '.' && i > 0) {
+				break;
+			} else {
+				throw new NumberFormatException("Error: invalid alert time " + str);
+			}
+		}
+		return time + field;
+	}
+
+	private class Source {
+
+		private String mFile;
+		private int mOrder;
+		private BufferedReader mIn;
+		private FieldCursor mCursor;
+		private long mLine;
+		private Alert mAlert;
+
+		public Source(String file, int order) throws IOException {
+			mFile = file;
+			mOrder = order;
+			mIn = new BufferedReader(new FileReader(file));
+			mCursor = new FieldCursor(',');
+			mLine = 0L;
+		}
+
+		public boolean advance() throws IOException {
+			String line;
+			while ((line = mIn.readLine()) != null) {
+				mLine++;
+				if (line.isEmpty()) continue;
+
+				mCursor.reset(line);
+				long time = parseTime(mCursor.nextSlice());
+				String ip = mCursor.nextString();
+				if (mAlert != null && time < mAlert.getTimestamp()) {
+					throw new IOException("Error: " + mFile + " is not sorted by time at line " + mLine);
+				}
+
+				//Share one String per IP across all alerts
+				String known = mIPs.get(ip);
+				if (known == null) {
+					mIPs.put(ip, ip);
+				} else {
+					ip = known;
+				}
+
+				Double score = mIPScore.get(ip);
+				if (score == null) score = 0.0;
+				mAlert = new Alert(time, ip, score);
+				return true;
+			}
+			return false;
+		}
+
+		public void close() throws IOException {
+			mIn.close();
+		}
+
+	}
+
+}
@@ -2,63 +2,68 @@ package gov.ameslab.cydime.simulate;
 
 import gov.ameslab.cydime.util.CUtil;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class AlertStream {
 
-	private List<Alert> mAlerts;
+	//Sorted by timestamp and never modified, so copies from makeNew() can share it across threads
+	private Alert[] mAlerts;
+	private Set<String> mIPs;
 	private int mLastIndex;
 	
 	private List<Alert> tAdvance;
 	
 	public AlertStream(String file, Map<String, Double> ipScore) throws IOException {
-		mAlerts = CUtil.makeList();
-		
-		BufferedReader in = new BufferedReader(new FileReader(file));
-		String line;
-		while ((line = in.readLine()) != null) {
-			String[] split = line.split(",");
-			long time = getTime(split[0]);
-			String ip = split[1];
-			Double score = ipScore.get(ip);
-			if (score == null) score = 0.0;
-			Alert a = new Alert(time, ip, score);
-			mAlerts.add(a);
-		}
-		
-		Collections.sort(mAlerts, new Comparator<Alert>() {
-
-			@Override
-			public int compare(Alert o1, Alert o2) {
-				return Long.compare(o1.getTimestamp(), o2.getTimestamp());
+		this(Arrays.asList(file), ipScore);
+	}
+	
+	//Each file must be sorted by time; see AlertReader
+	public AlertStream(List<String> files, Map<String, Double> ipScore) throws IOException {
+		List<Alert> alerts = CUtil.makeList();
+		AlertReader in = new AlertReader(files, ipScore);
+		try {
+			Alert a;
+			while ((a = in.next()) != null) {
+				alerts.add(a);
 			}
-			
-		});
+		} finally {
+			in.close();
+		}
 		
-		in.close();
-	}
-
-	private static long getTime(String str) {
-		String[] split = str.split(":");
-		int h = Integer.parseInt(split[0]);
-		int m = Integer.parseInt(split[1]);
-		int s = Integer.parseInt(split[2]);
-		return h * 3600 + m * 60 + s;
+		mAlerts = alerts.toArray(new Alert[alerts.size()]);
+		mIPs = Collections.unmodifiableSet(in.getIPs());
+		reset();
 	}
-
-	public Set<String> getIPs() {
+	
+	//Alerts must be sorted by time
+	public AlertStream(List<Alert> alerts) {
+		mAlerts = alerts.toArray(new Alert[alerts.size()]);
 		Set<String> ips = CUtil.makeSet();
 		for (Alert a : mAlerts) {
 			ips.add(a.getIP());
 		}
-		return ips;
+		mIPs = Collections.unmodifiableSet(ips);
+		reset();
+	}
+	
+	private AlertStream(Alert[] alerts, Set<String> ips) {
+		mAlerts = alerts;
+		mIPs = ips;
+		reset();
+	}
+	
+	//A new stream over the same alerts with its own position
+	public AlertStream makeNew() {
+		return new AlertStream(mAlerts, mIPs);
+	}
+
+	public Set<String> getIPs() {
+		return mIPs;
 	}
 
 	public void reset() {
@@ -67,13 +72,18 @@ public class AlertStream {
 	}
 
 	public boolean isEmpty() {
-		return mLastIndex >= mAlerts.size();
+		return mLastIndex >= mAlerts.length;
+	}
+	
+	//Only valid while !isEmpty()
+	public long getNextTimestamp() {
+		return mAlerts[mLastIndex].getTimestamp();
 	}
 	
 	public List<Alert> advance(long clock) {
 		tAdvance.clear();
-		while (mLastIndex < mAlerts.size()) {
-			Alert a = mAlerts.get(mLastIndex);
+		while (mLastIndex < mAlerts.length) {
+			Alert a = mAlerts[mLastIndex];
 			if (a.getTimestamp() <= clock) {
 				tAdvance.add(a);
 				mLastIndex++;
@@ -14,6 +14,9 @@ public interface AnalysisBuffer {
 
 	Alert pop();
 
+	//Drops the queued and all future alerts for the IP
+	void close(String ip);
+
 	AnalysisBuffer makeNew();
 
 	
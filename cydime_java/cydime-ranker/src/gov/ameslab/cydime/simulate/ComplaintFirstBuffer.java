@@ -2,25 +2,31 @@ package gov.ameslab.cydime.simulate;
 
 import gov.ameslab.cydime.util.CUtil;
 
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * Analysis buffer that lets the oldest whitelisted alert jump the queue once it is about
+ * to cause a complaint. Every popped alert closes its IP, so an IP is analyzed at most once
+ * and its other alerts are dropped from both queues.
+ */
 public class ComplaintFirstBuffer {
 
 	private AnalysisBuffer mBuffer;
 	private Set<String> mTrueWhite;
 	private long mComplaintThreshold;
 
-	private LinkedList<Alert> mOpenWhiteAlerts;
-	private Set<Alert> mClosedWhiteAlerts;
+	//Oldest open alert of each whitelisted IP, in arrival order
+	private LinkedHashMap<String, Alert> mOpenWhiteAlerts;
+	private Set<String> mClosed;
 	
 	public ComplaintFirstBuffer(AnalysisBuffer buffer, Set<String> trueWhite, long comp) {
 		mBuffer = buffer;
 		mTrueWhite = trueWhite;
 		mComplaintThreshold = comp;
-		mOpenWhiteAlerts = new LinkedList<Alert>();
-		mClosedWhiteAlerts = CUtil.makeSet();
+		mOpenWhiteAlerts = new LinkedHashMap<String, Alert>();
+		mClosed = CUtil.makeSet();
 	}
 
 	public String getName() {
@@ -35,26 +41,41 @@ public class ComplaintFirstBuffer {
 		mBuffer.insert(alerts);
 		
 		for (Alert a : alerts) {
-			if (a.isMemberOf(mTrueWhite)) {
-				mOpenWhiteAlerts.addLast(a);
+			if (a.isMemberOf(mTrueWhite) && !mClosed.contains(a.getIP()) && !mOpenWhiteAlerts.containsKey(a.getIP())) {
+				mOpenWhiteAlerts.put(a.getIP(), a);
 			}
 		}
 	}
 
+	//Earliest clock at which a whitelisted alert jumps the queue, or Long.MAX_VALUE if none is open
+	public long getComplaintDeadline() {
+		if (mOpenWhiteAlerts.isEmpty()) return Long.MAX_VALUE;
+		
+		return getFirstOpen().getTimestamp() + mComplaintThreshold + 1;
+	}
+
 	public Alert pop(long clock) {
-		if (!mOpenWhiteAlerts.isEmpty()) {
-			if (mOpenWhiteAlerts.getFirst().exceedsThreshold(clock, mComplaintThreshold)) {
-				Alert first = mOpenWhiteAlerts.removeFirst();
-				mClosedWhiteAlerts.add(first);
-				return first;
-			}
+		Alert pop = null;
+		if (!mOpenWhiteAlerts.isEmpty() && getFirstOpen().exceedsThreshold(clock, mComplaintThreshold)) {
+			pop = getFirstOpen();
+		} else {
+			pop = mBuffer.pop();
 		}
 		
-		Alert pop = mBuffer.pop();
-		while (pop != null && mClosedWhiteAlerts.contains(pop)) {
-			pop = mBuffer.pop();
+		if (pop != null) {
+			close(pop.getIP());
 		}
 		return pop;
 	}
 
+	private void close(String ip) {
+		mClosed.add(ip);
+		mOpenWhiteAlerts.remove(ip);
+		mBuffer.close(ip);
+	}
+
+	private Alert getFirstOpen() {
+		return mOpenWhiteAlerts.values().iterator().next();
+	}
+
 }
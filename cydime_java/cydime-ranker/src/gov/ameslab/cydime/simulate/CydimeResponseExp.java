@@ -48,10 +48,15 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -64,26 +69,25 @@ public class CydimeResponseExp {
 
 	private static final Logger Log = Logger.getLogger(CydimeResponseExp.class.getName());
 
-	private static final long[] COMPLAINT = {5 * 60, 10 * 60, 20 * 60, 40 * 60};
-	private static final int INC_ANALYSIS = 30;
-	private static final int MAX_ANALYSIS = 1200;
-	private static final AnalysisBuffer[] BUFFER_PROTOTYPE = {new FIFOBuffer(), new LIFOBuffer(), new SortedBuffer()};
+	//The experiment grid, also checked by Simulation.main
+	static final long[] COMPLAINT = {5 * 60, 10 * 60, 20 * 60, 40 * 60};
+	static final int INC_ANALYSIS = 30;
+	static final int MAX_ANALYSIS = 1200;
+	static final AnalysisBuffer[] BUFFER_PROTOTYPE = {new FIFOBuffer(), new LIFOBuffer(), new SortedBuffer()};
 	private static final DecimalFormat FORMAT = new DecimalFormat("0.0000");
 	
-	private String mAlertFile;
+	private List<String> mAlertFiles;
 	private String mAlertName;
 	private boolean mDoWhitelist;
 	
 	private Map<String, Double> mIPScore;
 	private AlertStream mAlerts;
-	private ComplaintFirstBuffer mBuffer;
-	private Set<String> mStatic;
 	private Set<String> mTrueWhite;
 
 	
 	
 	public static void main(String[] args) throws Exception {
-		if (args.length < 2 || args.length > 3) {
+		if (args.length < 2) {
 			printUsage();
 			return;
 		}
@@ -92,28 +96,31 @@ public class CydimeResponseExp {
 	}
 
 	private static void printUsage() {
-		System.out.println("[java] CydimeResponseExp FEATURE_DIR ALERT_FILE [-W]");
+		System.out.println("[java] CydimeResponseExp FEATURE_DIR ALERT_FILE [ALERT_FILE ...] [-W]");
 		System.out.println("    FEATURE_DIR: date path specifying feature files");
-		System.out.println("    ALERT_FILE: path specifying sorted alert CSV file");
+		System.out.println("    ALERT_FILE: path specifying alert CSV file of time,ip rows; several files are merged by time");
+		System.out.println("        Each file must be sorted by time (HH:MM:SS or epoch seconds);");
+		System.out.println("        a file with a row earlier than the one before it is rejected with an error.");
 		System.out.println("    -W: Optional, print a list of alerted IPs that are part of whitelist");
 	}
 
 	public CydimeResponseExp(String[] args) {
 		Config.INSTANCE.setParam(args[0]);
 		Config.INSTANCE.setFeatureDir(Config.IP_DIR);
-		mAlertFile = args[1];
-		mAlertName = mAlertFile.substring(0, mAlertFile.indexOf("."));
-		if (args.length == 3 && args[2].equalsIgnoreCase("-W")) {
+		int end = args.length;
+		if (args.length > 2 && args[args.length - 1].equalsIgnoreCase("-W")) {
 			mDoWhitelist = true;
+			end--;
 		}
+		mAlertFiles = Arrays.asList(args).subList(1, end);
+		mAlertName = mAlertFiles.get(0).substring(0, mAlertFiles.get(0).indexOf("."));
 	}
 
 	private void run() throws Exception {
 		ListDatabase whiteDB = ListDatabase.read(Config.INSTANCE.getString(Config.STATIC_WHITE_FILE));
 		
 		readScore();
-		mAlerts = new AlertStream(mAlertFile, mIPScore);
-		mStatic = CUtil.makeSet();
+		mAlerts = new AlertStream(mAlertFiles, mIPScore);
 		mTrueWhite = whiteDB.getSet(mAlerts.getIPs());
 		
 		Log.log(Level.INFO, "TrueWhite = {0}", mTrueWhite.size());
@@ -132,87 +139,66 @@ public class CydimeResponseExp {
 			return;
 		}
 		
-		SimulationResult[] results = new SimulationResult[BUFFER_PROTOTYPE.length];
-		for (int i = 0; i < results.length; i++) {
-			results[i] = new SimulationResult();
-		}
-		
-		for (long comp : COMPLAINT) {
-			Log.log(Level.INFO, "Simulating with complaint threshold = {0}...", comp);
-			
-			BufferedWriter out = new BufferedWriter(new FileWriter(mAlertName + "-comp" + comp + ".csv"));
-			out.write("Analysis Time");
-			for (AnalysisBuffer proto : BUFFER_PROTOTYPE) {
-				out.write(",complaint-");
-				out.write(proto.getName());
-			}
-			for (AnalysisBuffer proto : BUFFER_PROTOTYPE) {
-				out.write(",threshold-");
-				out.write(proto.getName());
+		//Every cell replays its own copy of the stream, so the whole grid runs in parallel
+		int analysisCount = MAX_ANALYSIS / INC_ANALYSIS;
+		List<Future<SimulationResult>> futures = CUtil.makeList();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			for (long comp : COMPLAINT) {
+				for (int analysis = INC_ANALYSIS; analysis <= MAX_ANALYSIS; analysis += INC_ANALYSIS) {
+					for (AnalysisBuffer proto : BUFFER_PROTOTYPE) {
+						ComplaintFirstBuffer buffer = new ComplaintFirstBuffer(proto.makeNew(), mTrueWhite, comp);
+						futures.add(pool.submit(new Simulation(mAlerts.makeNew(), buffer, mTrueWhite, comp, analysis)));
+					}
+				}
 			}
-			out.newLine();
 			
-			for (int analysis = INC_ANALYSIS; analysis <= MAX_ANALYSIS; analysis += INC_ANALYSIS) {		
-				for (int s = 0; s < BUFFER_PROTOTYPE.length; s++) {
-					mBuffer = new ComplaintFirstBuffer(BUFFER_PROTOTYPE[s].makeNew(), mTrueWhite, comp);
-					mAlerts.reset();
-					mStatic.clear();
-					runSimulation(results[s], mBuffer.getName(), comp, analysis);					
-				}
+			int alertIPs = mAlerts.getIPs().size();
+			int f = 0;
+			for (long comp : COMPLAINT) {
+				Log.log(Level.INFO, "Writing complaint threshold = {0}...", comp);
 				
-				out.write(FORMAT.format(analysis / 60.0));
-				for (int s = 0; s < results.length; s++) {
-					out.write(",");
-					out.write(FORMAT.format(results[s].getComplaintCount() * 100.0 / mTrueWhite.size()));
+				BufferedWriter out = new BufferedWriter(new FileWriter(mAlertName + "-comp" + comp + ".csv"));
+				out.write("Analysis Time");
+				for (AnalysisBuffer proto : BUFFER_PROTOTYPE) {
+					out.write(",complaint-");
+					out.write(proto.getName());
 				}
-				for (int s = 0; s < results.length; s++) {
-					out.write(",");
-					out.write(FORMAT.format(results[s].getThresholdCount() * 100.0 / mAlerts.getIPs().size()));
+				for (AnalysisBuffer proto : BUFFER_PROTOTYPE) {
+					out.write(",threshold-");
+					out.write(proto.getName());
 				}
 				out.newLine();
-			}
-			
-			out.close();
-		}	
-	}
-
-	private void runSimulation(SimulationResult result, String name, long comp, int analysis) {
-		Log.log(Level.INFO, "Simulating with " + name + " Comp=" + comp + " Analysis=" + analysis + " ...");
-		
-		int compCount = 0;
-		int exceedsThresholdCount = 0;
-		for (long clock = 0; !mAlerts.isEmpty() || !mBuffer.isEmpty(); clock += analysis) {
-			//Stream new alerts into buffer
-			List<Alert> alerts = mAlerts.advance(clock);
-			if (!alerts.isEmpty()) {
-				mBuffer.insert(alerts);
-			}
-			
-			//Pop top alert from buffer
-			Alert a = null;
-			while (true) {
-				a = mBuffer.pop(clock);
-				if (a == null) break;
 				
-				if (!mStatic.contains(a.getIP())) break;
-			}
-			
-			if (a == null) continue;
-			
-			//Check complaint
-			if (a.exceedsThreshold(clock, comp)) {
-				exceedsThresholdCount++;
+				for (int i = 1; i <= analysisCount; i++) {
+					SimulationResult[] results = new SimulationResult[BUFFER_PROTOTYPE.length];
+					for (int s = 0; s < results.length; s++) {
+						results[s] = futures.get(f++).get();
+					}
+					
+					out.write(FORMAT.format(i * INC_ANALYSIS / 60.0));
+					for (int s = 0; s < results.length; s++) {
+						out.write(",");
+						out.write(FORMAT.format(results[s].getComplaintCount() * 100.0 / mTrueWhite.size()));
+					}
+					for (int s = 0; s < results.length; s++) {
+						out.write(",");
+						out.write(FORMAT.format(results[s].getThresholdCount() * 100.0 / alertIPs));
+					}
+					out.newLine();
+				}
 				
-				if (a.isMemberOf(mTrueWhite)) {
-					compCount++;
-				}					
+				out.close();
 			}
-			
-			mStatic.add(a.getIP());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			} else {
+				throw e;
+			}
+		} finally {
+			pool.shutdownNow();
 		}
-		
-		result.setComplaintCount(compCount);
-		result.setThresholdCount(exceedsThresholdCount);
 	}
 
 	private void readScore() throws IOException {
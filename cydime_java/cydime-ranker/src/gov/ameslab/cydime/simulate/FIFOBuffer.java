@@ -1,14 +1,19 @@
 package gov.ameslab.cydime.simulate;
 
+import gov.ameslab.cydime.util.CUtil;
+
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 public class FIFOBuffer implements AnalysisBuffer {
 
 	private LinkedList<Alert> mBuffer;
+	private Set<String> mClosed;
 
 	public FIFOBuffer() {
 		mBuffer = new LinkedList<Alert>();
+		mClosed = CUtil.makeSet();
 	}
 	
 	@Override
@@ -29,14 +34,25 @@ public class FIFOBuffer implements AnalysisBuffer {
 	@Override
 	public void insert(List<Alert> alerts) {
 		for (Alert a : alerts) {
+			if (mClosed.contains(a.getIP())) continue;
+			
 			mBuffer.addLast(a);
 		}
 	}
 
 	@Override
 	public Alert pop() {
-		if (mBuffer.isEmpty()) return null;
-		return mBuffer.removeFirst();
+		while (!mBuffer.isEmpty()) {
+			Alert a = mBuffer.removeFirst();
+			if (!mClosed.contains(a.getIP())) return a;
+		}
+		return null;
+	}
+
+	//Alerts queued before the close are skipped when they reach the head
+	@Override
+	public void close(String ip) {
+		mClosed.add(ip);
 	}
 
 	@Override
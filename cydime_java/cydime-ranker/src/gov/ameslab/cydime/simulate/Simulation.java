@@ -0,0 +1,226 @@
+package gov.ameslab.cydime.simulate;
+
+import gov.ameslab.cydime.util.CUtil;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One cell of the CydimeResponseExp grid. All mutable state (stream position and buffer,
+ * including the analyzed IPs) is owned by the simulation; the alerts and whitelist
+ * are shared read-only.
+ *
+ * call() jumps from event to event; callByTicks() is the original loop that steps one
+ * analysis interval at a time and is kept as the reference for main(), which checks
+ * that both give the same result.
+ */
+public class Simulation implements Callable<SimulationResult> {
+
+	private static final Logger Log = Logger.getLogger(Simulation.class.getName());
+
+	private AlertStream mAlerts;
+	private ComplaintFirstBuffer mBuffer;
+	private Set<String> mTrueWhite;
+	private long mComp;
+	private int mAnalysis;
+
+	private int mCompCount;
+	private int mExceedsThresholdCount;
+	//Hash of the (clock, IP) of every popped alert, to compare runs
+	private long mTrace;
+
+	public Simulation(AlertStream alerts, ComplaintFirstBuffer buffer, Set<String> trueWhite, long comp, int analysis) {
+		mAlerts = alerts;
+		mBuffer = buffer;
+		mTrueWhite = trueWhite;
+		mComp = comp;
+		mAnalysis = analysis;
+	}
+
+	public long getTrace() {
+		return mTrace;
+	}
+
+	@Override
+	public SimulationResult call() {
+		Log.log(Level.INFO, "Simulating with " + mBuffer.getName() + " Comp=" + mComp + " Analysis=" + mAnalysis + " ...");
+
+		PriorityQueue<Long> events = new PriorityQueue<Long>();
+		long clock = 0;
+		while (!mAlerts.isEmpty() || !mBuffer.isEmpty()) {
+			tick(clock);
+			clock = nextEvent(events, clock);
+		}
+
+		return makeResult();
+	}
+
+	//Reference for call(): visits every analysis tick
+	public SimulationResult callByTicks() {
+		for (long clock = 0; !mAlerts.isEmpty() || !mBuffer.isEmpty(); clock += mAnalysis) {
+			tick(clock);
+		}
+
+		return makeResult();
+	}
+
+	private void tick(long clock) {
+		//Stream new alerts into buffer
+		List<Alert> alerts = mAlerts.advance(clock);
+		if (!alerts.isEmpty()) {
+			mBuffer.insert(alerts);
+		}
+
+		//Pop top alert from buffer; its IP is not analyzed again
+		Alert a = mBuffer.pop(clock);
+		if (a == null) return;
+
+		mTrace = (mTrace * 31 + clock) * 31 + a.getIP().hashCode();
+
+		//Check complaint
+		if (a.exceedsThreshold(clock, mComp)) {
+			mExceedsThresholdCount++;
+
+			if (a.isMemberOf(mTrueWhite)) {
+				mCompCount++;
+			}
+		}
+	}
+
+	private SimulationResult makeResult() {
+		SimulationResult result = new SimulationResult();
+		result.setComplaintCount(mCompCount);
+		result.setThresholdCount(mExceedsThresholdCount);
+		return result;
+	}
+
+	/**
+	 * Jumps to the next analysis tick at which something can happen: the analyst is free
+	 * again while the buffer holds alerts, the next alert arrives, or the oldest open
+	 * whitelisted alert reaches its complaint deadline. Ticks in between would pop nothing,
+	 * so skipping them gives the same result as stepping one tick at a time.
+	 */
+	private long nextEvent(PriorityQueue<Long> events, long clock) {
+		if (!mBuffer.isEmpty()) {
+			schedule(events, clock + mAnalysis);
+		}
+		if (!mAlerts.isEmpty()) {
+			schedule(events, toTick(mAlerts.getNextTimestamp()));
+		}
+		long deadline = mBuffer.getComplaintDeadline();
+		if (deadline != Long.MAX_VALUE) {
+			schedule(events, toTick(deadline));
+		}
+
+		//Stale events, e.g. the deadline of an alert since popped, are at or before the clock
+		Long next = events.poll();
+		while (next != null && next <= clock) {
+			next = events.poll();
+		}
+		return next == null ? clock + mAnalysis : next;
+	}
+
+	private static void schedule(PriorityQueue<Long> events, long time) {
+		if (!events.contains(time)) {
+			events.add(time);
+		}
+	}
+
+	//First analysis tick at or after time
+	private long toTick(long time) {
+		return (time + mAnalysis - 1) / mAnalysis * mAnalysis;
+	}
+
+	/**
+	 * Checks call() against callByTicks() on seeded dense and sparse, bursty streams for
+	 * every buffer, complaint threshold and analysis interval of CydimeResponseExp.
+	 */
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+		Log.setLevel(Level.WARNING);
+
+		Random random = new Random(seed);
+		List<String> ips = CUtil.makeList();
+		Map<String, Double> ipScore = CUtil.makeMap();
+		Set<String> trueWhite = CUtil.makeSet();
+		for (int i = 0; i < 400; i++) {
+			String ip = "10.0." + (i / 256) + "." + (i % 256);
+			ips.add(ip);
+			//Coarse scores, so that the sorted buffer also sees ties
+			ipScore.put(ip, random.nextInt(20) / 20.0);
+			if (random.nextInt(3) == 0) {
+				trueWhite.add(ip);
+			}
+		}
+
+		//Dense: alerts all through one day
+		List<Alert> dense = CUtil.makeList();
+		for (int i = 0; i < 3000; i++) {
+			dense.add(makeAlert(random.nextInt(86400), ips, ipScore, random));
+		}
+
+		//Sparse and bursty: a few seconds of alerts, then up to half a day of silence, over several days
+		List<Alert> sparse = CUtil.makeList();
+		long time = 0L;
+		while (time < 4 * 86400L) {
+			int burst = 1 + random.nextInt(60);
+			for (int i = 0; i < burst; i++) {
+				sparse.add(makeAlert(time + random.nextInt(5), ips, ipScore, random));
+			}
+			time += random.nextInt(43200);
+		}
+
+		check("dense", dense, trueWhite);
+		check("sparse", sparse, trueWhite);
+		System.out.println("OK");
+	}
+
+	private static Alert makeAlert(long time, List<String> ips, Map<String, Double> ipScore, Random random) {
+		String ip = ips.get(random.nextInt(ips.size()));
+		return new Alert(time, ip, ipScore.get(ip));
+	}
+
+	private static void check(String name, List<Alert> alerts, Set<String> trueWhite) {
+		Collections.sort(alerts, new Comparator<Alert>() {
+
+			@Override
+			public int compare(Alert o1, Alert o2) {
+				return Long.compare(o1.getTimestamp(), o2.getTimestamp());
+			}
+
+		});
+		AlertStream stream = new AlertStream(alerts);
+
+		int cells = 0;
+		long start = System.nanoTime();
+		for (long comp : CydimeResponseExp.COMPLAINT) {
+			for (int analysis = CydimeResponseExp.INC_ANALYSIS; analysis <= CydimeResponseExp.MAX_ANALYSIS; analysis += CydimeResponseExp.INC_ANALYSIS) {
+				for (AnalysisBuffer proto : CydimeResponseExp.BUFFER_PROTOTYPE) {
+					Simulation byEvents = new Simulation(stream.makeNew(), new ComplaintFirstBuffer(proto.makeNew(), trueWhite, comp), trueWhite, comp, analysis);
+					Simulation byTicks = new Simulation(stream.makeNew(), new ComplaintFirstBuffer(proto.makeNew(), trueWhite, comp), trueWhite, comp, analysis);
+					SimulationResult events = byEvents.call();
+					SimulationResult ticks = byTicks.callByTicks();
+					if (events.getComplaintCount() != ticks.getComplaintCount()
+							|| events.getThresholdCount() != ticks.getThresholdCount()
+							|| byEvents.getTrace() != byTicks.getTrace()) {
+						throw new IllegalStateException("Error: " + name + " stream differs with " + proto.getName() + " Comp=" + comp + " Analysis=" + analysis
+								+ ": complaints " + events.getComplaintCount() + " vs " + ticks.getComplaintCount()
+								+ ", threshold " + events.getThresholdCount() + " vs " + ticks.getThresholdCount());
+					}
+					cells++;
+				}
+			}
+		}
+
+		System.out.println(name + ": " + alerts.size() + " alerts, " + cells + " cells identical in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+}
@@ -1,22 +1,18 @@
 package gov.ameslab.cydime.simulate;
 
-import java.util.Comparator;
+import gov.ameslab.cydime.util.CUtil;
+
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Set;
 
 public class SortedBuffer implements AnalysisBuffer {
 
-	private PriorityQueue<Alert> mBuffer;
+	private AlertHeap mBuffer;
+	private Set<String> mClosed;
 
 	public SortedBuffer() {
-		mBuffer = new PriorityQueue<Alert>(11, new Comparator<Alert>() {
-
-			@Override
-			public int compare(Alert o1, Alert o2) {
-				return Double.compare(o2.getScore(), o1.getScore());
-			}
-			
-		});
+		mBuffer = new AlertHeap();
+		mClosed = CUtil.makeSet();
 	}
 	
 	@Override
@@ -34,9 +30,12 @@ public class SortedBuffer implements AnalysisBuffer {
 		return mBuffer.isEmpty();
 	}
 
+	//A re-alert on a queued IP merges into its entry, so the buffer holds one alert per live IP
 	@Override
 	public void insert(List<Alert> alerts) {
 		for (Alert a : alerts) {
+			if (mClosed.contains(a.getIP())) continue;
+			
 			mBuffer.offer(a);
 		}
 	}
@@ -46,6 +45,12 @@ public class SortedBuffer implements AnalysisBuffer {
 		return mBuffer.poll();
 	}
 
+	@Override
+	public void close(String ip) {
+		mClosed.add(ip);
+		mBuffer.remove(ip);
+	}
+
 	@Override
 	public AnalysisBuffer makeNew() {
 		return new SortedBuffer();
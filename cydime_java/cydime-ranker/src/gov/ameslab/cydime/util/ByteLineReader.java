@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads lines of a file through a FileChannel into a direct buffer without
+ * decoding them. The current line is exposed as a byte range of the buffer,
+ * which stays valid until the next readLine(), so it can be copied to a
+ * {@link ByteLineWriter} as is. Lines end at \n, \r or \r\n as in
+ * BufferedReader.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class ByteLineReader implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	
+	private FileChannel mChannel;
+	private ByteBuffer mBuffer;
+	private ByteBuffer mView;
+	
+	//Unread bytes are in [mPos, mLimit)
+	private int mPos;
+	private int mLimit;
+	private boolean mIsEOF;
+	private boolean mSkipLF;
+	
+	private int mStart;
+	private int mEnd;
+	
+	public ByteLineReader(String file) throws IOException {
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public ByteLineReader(String file, int bufferSize) throws IOException {
+		mChannel = new FileInputStream(file).getChannel();
+		mBuffer = ByteBuffer.allocateDirect(bufferSize);
+		mView = mBuffer.duplicate();
+		mPos = 0;
+		mLimit = 0;
+	}
+	
+	//Returns false at the end of file
+	public boolean readLine() throws IOException {
+		if (mSkipLF) {
+			if (mPos == mLimit && !mIsEOF) {
+				fill();
+			}
+			if (mPos < mLimit && mBuffer.get(mPos) == '\n') {
+				mPos++;
+			}
+			mSkipLF = false;
+		}
+		
+		int i = mPos;
+		while (true) {
+			if (i == mLimit) {
+				if (mIsEOF) {
+					if (mPos == mLimit) return false;
+					
+					mStart = mPos;
+					mEnd = mLimit;
+					mPos = mLimit;
+					return true;
+				}
+				
+				i -= fill();
+				continue;
+			}
+			
+			byte b = mBuffer.get(i);
+			if (b == '\n' || b == '\r') {
+				mStart = mPos;
+				mEnd = i;
+				mPos = i + 1;
+				mSkipLF = b == '\r';
+				return true;
+			}
+			i++;
+		}
+	}
+	
+	public int getStart() {
+		return mStart;
+	}
+	
+	public int getEnd() {
+		return mEnd;
+	}
+	
+	public byte byteAt(int i) {
+		return mBuffer.get(i);
+	}
+	
+	//A view of [start, end) of the buffer, reused by every call
+	public ByteBuffer slice(int start, int end) {
+		mView.clear();
+		mView.position(start);
+		mView.limit(end);
+		return mView;
+	}
+	
+	public ByteBuffer getLineBytes() {
+		return slice(mStart, mEnd);
+	}
+	
+	public String getLine(Charset charset) {
+		return charset.decode(getLineBytes()).toString();
+	}
+	
+	//As String.trim().isEmpty()
+	public boolean isBlank() {
+		for (int i = mStart; i < mEnd; i++) {
+			if ((mBuffer.get(i) & 0xFF) > ' ') return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		mChannel.close();
+	}
+
+	//Moves the unread bytes to the front and reads more, returns how far they moved
+	private int fill() throws IOException {
+		int shift = mPos;
+		int remaining = mLimit - mPos;
+		if (remaining == mBuffer.capacity()) {
+			//A line longer than the buffer
+			ByteBuffer buffer = ByteBuffer.allocateDirect(mBuffer.capacity() * 2);
+			buffer.put(slice(mPos, mLimit));
+			mBuffer = buffer;
+			mView = mBuffer.duplicate();
+		} else {
+			mBuffer.clear();
+			mBuffer.position(mPos);
+			mBuffer.limit(mLimit);
+			mBuffer.compact();
+		}
+		
+		int read = 0;
+		while (read == 0) {
+			read = mChannel.read(mBuffer);
+		}
+		if (read < 0) {
+			mIsEOF = true;
+		}
+		
+		mPos = 0;
+		mLimit = mBuffer.position();
+		return shift;
+	}
+	
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes bytes and lines to a file through a FileChannel and a direct
+ * buffer, the output counterpart of {@link ByteLineReader}. Strings are
+ * encoded with the default charset and lines end with the platform line
+ * separator, as FileWriter and BufferedWriter.newLine() do.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class ByteLineWriter implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	
+	private static final byte[] NEW_LINE = System.getProperty("line.separator").getBytes();
+	
+	private FileChannel mChannel;
+	private ByteBuffer mBuffer;
+	private Charset mCharset;
+	
+	public ByteLineWriter(String file) throws IOException {
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public ByteLineWriter(String file, int bufferSize) throws IOException {
+		mChannel = new FileOutputStream(file).getChannel();
+		mBuffer = ByteBuffer.allocateDirect(bufferSize);
+		mCharset = Charset.defaultCharset();
+	}
+	
+	//Consumes the remaining bytes of src
+	public void write(ByteBuffer src) throws IOException {
+		if (src.remaining() > mBuffer.remaining()) {
+			flush();
+			if (src.remaining() > mBuffer.capacity()) {
+				while (src.hasRemaining()) {
+					mChannel.write(src);
+				}
+				return;
+			}
+		}
+		mBuffer.put(src);
+	}
+	
+	public void write(byte b) throws IOException {
+		if (!mBuffer.hasRemaining()) {
+			flush();
+		}
+		mBuffer.put(b);
+	}
+	
+	public void write(byte[] bytes) throws IOException {
+		write(ByteBuffer.wrap(bytes));
+	}
+	
+	public void write(String s) throws IOException {
+		write(s.getBytes(mCharset));
+	}
+	
+	public void newLine() throws IOException {
+		write(NEW_LINE);
+	}
+	
+	public void flush() throws IOException {
+		mBuffer.flip();
+		while (mBuffer.hasRemaining()) {
+			mChannel.write(mBuffer);
+		}
+		mBuffer.clear();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			mChannel.close();
+		}
+	}
+	
+}
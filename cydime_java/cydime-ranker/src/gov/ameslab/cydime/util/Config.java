@@ -335,11 +335,14 @@ public class Config {
 	public String getDailyPath() {	return getCurrentModelPath() + getDailyFile();	}
 	public String getAggregatedPath() {	return getCurrentModelPath() + "aggregated";	}
 	public String getAggregatedNormPath() {	return getCurrentModelPath() + "aggregated.norm";	}
+	public String getAggregatedStateFile() {	return "aggregated.state";	}
+	public String getAggregatedStatePath() {	return getCurrentModelPath() + getAggregatedStateFile();	}
 	public String getModelPath() {	return getCurrentModelPath() + "model";	}
 	public String getRankScorePath() {	return getCurrentModelPath() + "rank_score";	}
 	
 	//getReportPath
 	public String getFinalResultPath() {	return getCurrentReportPath() + "cydime.scores";	}
+	public String getRunReportPath(String tool) {	return getCurrentReportPath() + "cydime." + tool + ".run.json";	}
 	
 	public String getSilkServicePath() {	return getPath(SILK_SERVICE_DIR) + "services.txt";	}
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Hour of day and day of week of epoch timestamps in a given time zone,
+ * without a Calendar or a Date per call. The zone offset of every UTC hour
+ * bucket is precomputed in blocks; the few buckets in which the offset
+ * changes (DST transitions, including those of half-hour zones) are looked
+ * up exactly. Instances are immutable apart from the block cache and may be
+ * shared across threads.
+ *
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class EpochCalendar {
+
+	public static final EpochCalendar DEFAULT = new EpochCalendar(TimeZone.getDefault());
+	
+	private static final long HOUR = 60L * 60L * 1000L;
+	private static final long DAY = 24L * HOUR;
+	
+	//About 341 days per block
+	private static final int BLOCK_HOURS = 1 << 13;
+	
+	//Marks a bucket whose offset changes within the hour
+	private static final int TRANSITION = Integer.MIN_VALUE;
+	
+	//1970-01-01 was a Thursday
+	private static final int EPOCH_DAY_OF_WEEK = Calendar.THURSDAY - Calendar.SUNDAY;
+	
+	private TimeZone mZone;
+	
+	//Two blocks so that data straddling a block boundary does not thrash
+	private volatile Block cBlock;
+	private volatile Block cOtherBlock;
+	
+	public EpochCalendar(TimeZone zone) {
+		mZone = (TimeZone) zone.clone();
+	}
+	
+	public TimeZone getTimeZone() {
+		return (TimeZone) mZone.clone();
+	}
+	
+	//Offset from UTC in milliseconds, as TimeZone.getOffset(long)
+	public int getOffset(long epochMillis) {
+		long bucket = floorDiv(epochMillis, HOUR);
+		Block block = cBlock;
+		if (block == null || !block.contains(bucket)) {
+			block = cOtherBlock;
+			if (block == null || !block.contains(bucket)) {
+				block = new Block(mZone, floorDiv(bucket, BLOCK_HOURS) * BLOCK_HOURS);
+			}
+			cOtherBlock = cBlock;
+			cBlock = block;
+		}
+		
+		int offset = block.mOffsets[(int) (bucket - block.mBegin)];
+		if (offset == TRANSITION) {
+			offset = mZone.getOffset(epochMillis);
+		}
+		return offset;
+	}
+	
+	//As Calendar.HOUR_OF_DAY, 0 to 23
+	public int getHourOfDay(long epochMillis) {
+		long local = epochMillis + getOffset(epochMillis);
+		return (int) (floorMod(local, DAY) / HOUR);
+	}
+	
+	//As Calendar.DAY_OF_WEEK, Calendar.SUNDAY to Calendar.SATURDAY
+	public int getDayOfWeek(long epochMillis) {
+		long local = epochMillis + getOffset(epochMillis);
+		return (int) floorMod(floorDiv(local, DAY) + EPOCH_DAY_OF_WEEK, 7) + Calendar.SUNDAY;
+	}
+	
+	private static long floorDiv(long a, long b) {
+		long q = a / b;
+		if ((a % b != 0) && ((a ^ b) < 0)) q--;
+		return q;
+	}
+	
+	private static long floorMod(long a, long b) {
+		return a - floorDiv(a, b) * b;
+	}
+	
+	private static class Block {
+		
+		private final long mBegin;
+		private final int[] mOffsets;
+		
+		public Block(TimeZone zone, long begin) {
+			mBegin = begin;
+			mOffsets = new int[BLOCK_HOURS];
+			for (int i = 0; i < BLOCK_HOURS; i++) {
+				long start = (begin + i) * HOUR;
+				int offset = zone.getOffset(start);
+				if (zone.getOffset(start + HOUR - 1) != offset) {
+					offset = TRANSITION;
+				}
+				mOffsets[i] = offset;
+			}
+		}
+		
+		public boolean contains(long bucket) {
+			return bucket >= mBegin && bucket < mBegin + BLOCK_HOURS;
+		}
+		
+	}
+	
+}
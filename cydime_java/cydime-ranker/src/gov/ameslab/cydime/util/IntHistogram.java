@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Histogram keyed by primitive ints, e.g. IPv4 addresses from
+ * {@link NetUtil#toInt(String)} or ordinals of an {@link IpIndex}. Entries
+ * are addressed by position from 0 to size() - 1 in insertion order.
+ *
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class IntHistogram {
+
+	private static final DecimalFormat FORMAT = new DecimalFormat("0.00"); 
+	
+	private IntIndexedList mKeys;
+	private double[] mValues;
+	
+	public IntHistogram() {
+		this(16);
+	}
+	
+	public IntHistogram(int expectedSize) {
+		mKeys = new IntIndexedList(expectedSize);
+		mValues = new double[Math.max(16, expectedSize)];
+	}
+
+	public double get(int a) {
+		int i = mKeys.getIndex(a);
+		if (i < 0) return 0.0;
+		else return mValues[i];
+	}
+
+	public void increment(int a) {
+		increment(a, 1.0);
+	}
+	
+	public void increment(int a, double inc) {
+		int i = mKeys.add(a);
+		if (i == mValues.length) {
+			mValues = Arrays.copyOf(mValues, i * 2);
+		}
+		mValues[i] += inc;
+	}
+
+	public int size() {
+		return mKeys.size();
+	}
+	
+	public int getKey(int i) {
+		return mKeys.get(i);
+	}
+	
+	public double getValue(int i) {
+		return mValues[i];
+	}
+	
+	public int[] keys() {
+		return mKeys.toArray();
+	}
+	
+	public double sum() {
+		double sum = 0.0;
+		for (int i = 0; i < size(); i++) {
+			sum += mValues[i];
+		}
+		return sum;
+	}
+
+	public void normalize() {
+		double sum = sum();
+		if (sum <= 0.0) return;
+		
+		divide(sum);
+	}
+
+	public void add(IntHistogram o) {
+		for (int i = 0; i < o.size(); i++) {
+			increment(o.getKey(i), o.getValue(i));
+		}
+	}
+
+	public void divide(double a) {
+		for (int i = 0; i < size(); i++) {
+			mValues[i] /= a;
+		}
+	}
+
+	public void clear() {
+		mKeys.clear();
+		Arrays.fill(mValues, 0.0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append("{ ");
+		for (int i = 0; i < size(); i++) {
+			b.append(getKey(i))
+				.append("=")
+				.append(FORMAT.format(mValues[i]))
+				.append(" ");
+		}
+		b.append("}");
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.util.Arrays;
+
+/**
+ * IndexedList of primitive ints. Values are kept in insertion order and
+ * indexed by an open-addressing table, so no Integer is ever boxed.
+ *
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class IntIndexedList {
+
+	private static final int MIN_CAPACITY = 16;
+	
+	private int[] mList;
+	private int mSize;
+	
+	//Slot holds index + 1, 0 marks an empty slot so every int value is usable
+	private int[] mTable;
+	private int mMask;
+	
+	public IntIndexedList() {
+		this(MIN_CAPACITY);
+	}
+	
+	public IntIndexedList(int expectedSize) {
+		mList = new int[Math.max(MIN_CAPACITY, expectedSize)];
+		mSize = 0;
+		mTable = new int[tableSizeFor(mList.length)];
+		mMask = mTable.length - 1;
+	}
+	
+	//Returns the index of v, appending it if absent
+	public int add(int v) {
+		int slot = hash(v) & mMask;
+		while (true) {
+			int entry = mTable[slot];
+			if (entry == 0) break;
+			if (mList[entry - 1] == v) return entry - 1;
+			slot = (slot + 1) & mMask;
+		}
+		
+		if (mSize == mList.length) {
+			mList = Arrays.copyOf(mList, mSize * 2);
+		}
+		int index = mSize++;
+		mList[index] = v;
+		mTable[slot] = index + 1;
+		
+		//Keep the load factor at or below 1/2
+		if (mSize * 2 > mTable.length) {
+			rehash(mTable.length * 2);
+		}
+		return index;
+	}
+
+	public int get(int i) {
+		if (i >= mSize) throw new IndexOutOfBoundsException("Error: index " + i + " >= size " + mSize);
+		
+		return mList[i];
+	}
+	
+	public int size() {
+		return mSize;
+	}
+	
+	public boolean contains(int v) {
+		return getIndex(v) >= 0;
+	}
+	
+	public int getIndex(int v) {
+		int slot = hash(v) & mMask;
+		while (true) {
+			int entry = mTable[slot];
+			if (entry == 0) return -1;
+			if (mList[entry - 1] == v) return entry - 1;
+			slot = (slot + 1) & mMask;
+		}
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(mList, mSize);
+	}
+	
+	public void clear() {
+		mSize = 0;
+		Arrays.fill(mTable, 0);
+	}
+	
+	private void rehash(int tableSize) {
+		mTable = new int[tableSize];
+		mMask = tableSize - 1;
+		for (int i = 0; i < mSize; i++) {
+			int slot = hash(mList[i]) & mMask;
+			while (mTable[slot] != 0) {
+				slot = (slot + 1) & mMask;
+			}
+			mTable[slot] = i + 1;
+		}
+	}
+
+	//IPs in one subnet differ only in the low bits, so spread them across the table
+	private static int hash(int v) {
+		int h = v * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSizeFor(int size) {
+		int n = Integer.highestOneBit(size * 2 - 1) << 1;
+		return Math.max(n, MIN_CAPACITY * 2);
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+}
@@ -39,7 +39,7 @@
 
 package gov.ameslab.cydime.util;
 
-import gov.ameslab.cydime.preprocess.community.Matrix;
+import gov.ameslab.cydime.preprocess.community.SparseMatrix;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -153,39 +153,15 @@ public class MathUtil {
 		} else return null;
 	}
 	
-	public static double sum(Matrix<Double> matrix) {
-		double sum = 0.0;
-		for (Map<Integer, Double> jMap : matrix.getMatrix().values()) {
-			for (double v : jMap.values()) {
-				sum += v;
-			}
-		}
-		return sum;
+	public static double sum(SparseMatrix matrix) {
+		return matrix.sum();
 	}
 	
-	public static double[] sumDimension(Matrix<Double> matrix, int dim) {
+	public static double[] sumDimension(SparseMatrix matrix, int dim) {
 		if (dim == 1) {
-			double[] sum = new double[matrix.getJSize()];
-			for (int s = 0; s < matrix.getJSize(); s++) {
-				Map<Integer, Double> iMap = matrix.getTranspose().get(s);
-				if (iMap == null) continue;
-				
-				for (double v : iMap.values()) {
-					sum[s] += v;
-				}
-			}
-			return sum;
+			return matrix.sumOfJ();
 		} else if (dim == 2) {
-			double[] sum = new double[matrix.getISize()];
-			for (int s = 0; s < matrix.getISize(); s++) {
-				Map<Integer, Double> jMap = matrix.getMatrix().get(s);
-				if (jMap == null) continue;
-				
-				for (double v : jMap.values()) {
-					sum[s] += v;
-				}
-			}
-			return sum;
+			return matrix.sumOfI();
 		} else return null;
 	}
 	
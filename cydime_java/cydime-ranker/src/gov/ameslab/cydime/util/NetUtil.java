@@ -59,6 +59,45 @@ public class NetUtil {
 		}
 	}
 
+	//Dotted quad to int, e.g. 10.0.0.1 to 0x0A000001
+	public static int toInt(String ip) {
+		return toInt(ip, 0, ip.length());
+	}
+	
+	public static int toInt(CharSequence ip, int start, int end) {
+		int value = 0;
+		int octet = -1;
+		int octets = 0;
+		for (int i = start; i < end; i++) {
+			char c = ip.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) break;
+			} else if (c == '.' && octet >= 0 && octets < 3) {
+				value = (value << 8) | octet;
+				octet = -1;
+				octets++;
+			} else {
+				octet = 256;
+				break;
+			}
+		}
+		
+		if (octets != 3 || octet < 0 || octet > 255) {
+			throw new IllegalArgumentException("Error: invalid IPv4 address " + ip.subSequence(start, end));
+		}
+		return (value << 8) | octet;
+	}
+	
+	public static String toIPString(int ip) {
+		return new StringBuilder(15)
+			.append(ip >>> 24).append('.')
+			.append((ip >>> 16) & 0xFF).append('.')
+			.append((ip >>> 8) & 0xFF).append('.')
+			.append(ip & 0xFF)
+			.toString();
+	}
+	
 	public static Set<String> matchSubnet(Set<String> ips, SubnetUtils subnet) {
 		final SubnetInfo subnetInfo = subnet.getInfo();
 		Set<String> result = CUtil.makeSet();
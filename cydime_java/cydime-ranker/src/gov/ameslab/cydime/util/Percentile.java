@@ -1,64 +1,304 @@
 package gov.ameslab.cydime.util;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Percentile of a value among the distinct values added, i.e. the number of
+ * distinct smaller values divided by the number of distinct values. Values
+ * are kept in a primitive array that is sorted and deduplicated whenever it
+ * fills up and once more by compute(), and looked up by binary search. Call
+ * compute() once after all add()s.
+ *
+ * Percentiles are exact unless a maxExact is given to the constructor: once
+ * more than maxExact distinct values were added, the percentile is estimated
+ * from a hash-based sample of the distinct values of bounded size, so that
+ * memory stays bounded. The switch is logged.
+ *
  * @author Harris Lin (harris.lin.nz at gmail.com)
  */
 public class Percentile {
 
-	private class Index implements Comparable<Index> {
-		public double Value;
-		public double Percentile;
+	private static final Logger Log = Logger.getLogger(Percentile.class.getName());
 
-		public Index(double v) {
-			Value = v;
-		}
+	//Suggested limits for callers that opt into sampling
+	public static final int DEFAULT_MAX_EXACT = 1 << 24;
+	public static final int DEFAULT_SAMPLE_SIZE = 1 << 16;
 
-		@Override
-		public int compareTo(Index o) {
-			return Double.compare(Value, o.Value);
-		}
-		
-		@Override
-		public boolean equals(Object obj) {
-			Index o = (Index) obj;
-			return compareTo(o) == 0;
+	private static final int MIN_CAPACITY = 16;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private int mMaxExact;
+	private int mSampleSize;
+
+	//Values added, deduplicated whenever full, then the sorted distinct values after compute()
+	private double[] mValues;
+	private int mSize;
+
+	private DistinctSample mSample;
+
+	//Exact for any number of distinct values
+	public Percentile() {
+		this(Integer.MAX_VALUE, DEFAULT_SAMPLE_SIZE);
+	}
+
+	//Samples sampleSize distinct values once more than maxExact distinct values were added
+	public Percentile(int maxExact, int sampleSize) {
+		mMaxExact = maxExact;
+		mSampleSize = sampleSize;
+		mValues = new double[MIN_CAPACITY];
+		mSize = 0;
+	}
+
+	public void add(double v) {
+		if (mSample == null && mSize == mValues.length) {
+			deduplicate();
+			if (mSize > mMaxExact) {
+				startSample();
+			} else if (mSize > mValues.length / 2) {
+				//Too few duplicates to free enough room
+				if (mValues.length == MAX_CAPACITY) throw new IllegalStateException("Error: more than " + MAX_CAPACITY + " distinct values");
+
+				mValues = Arrays.copyOf(mValues, (int) Math.min(MAX_CAPACITY, 2L * mValues.length));
+			}
 		}
-		
-		@Override
-		public int hashCode() {
-			return Double.valueOf(Value).hashCode();
+
+		if (mSample != null) {
+			mSample.add(v);
+			return;
 		}
+
+		mValues[mSize++] = v;
 	}
-	
-	private List<Index> mValues;
-	private Map<Double, Index> mValueMap;
-	
-	public Percentile() {
-		mValues = CUtil.makeList();
-		mValueMap = CUtil.makeMap();
+
+	private void startSample() {
+		Log.log(Level.WARNING, "More than {0} distinct values; estimating percentiles from a sample of {1} distinct values",
+				new Object[] {mMaxExact, mSampleSize});
+
+		mSample = new DistinctSample(mSampleSize);
+		for (int i = 0; i < mSize; i++) {
+			mSample.add(mValues[i]);
+		}
+		mValues = null;
+		mSize = 0;
 	}
-	
-	public void add(double v) {
-		if (mValueMap.containsKey(v)) return;
-		
-		Index i = new Index(v);
-		mValues.add(i);
-		mValueMap.put(i.Value, i);
+
+	public boolean isApproximate() {
+		return mSample != null;
 	}
 
 	public void compute() {
-		Collections.sort(mValues);
-		for (int i = 0; i < mValues.size(); i++) {
-			mValues.get(i).Percentile = (double) i / mValues.size();
+		if (mSample != null) {
+			mValues = mSample.toArray();
+			mSize = mValues.length;
+			mSample = null;
 		}
+
+		deduplicate();
 	}
 
+	//Sorts the values and keeps each distinct value once
+	private void deduplicate() {
+		Arrays.sort(mValues, 0, mSize);
+		int n = Math.min(1, mSize);
+		for (int i = 1; i < mSize; i++) {
+			if (Double.compare(mValues[i], mValues[n - 1]) != 0) {
+				mValues[n++] = mValues[i];
+			}
+		}
+		mSize = n;
+	}
+
+	//A value that was not added gets the percentile of the next larger value
 	public double getPercentile(double v) {
-		return mValueMap.get(v).Percentile;
+		int i = Arrays.binarySearch(mValues, 0, mSize, v);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return (double) i / mSize;
+	}
+
+	/**
+	 * Distinct values whose hash has at least mLevel leading zero bits, i.e. a uniform
+	 * sample of the distinct values at rate 2^-mLevel regardless of how often each
+	 * value repeats. The level is raised whenever the sample outgrows its capacity.
+	 */
+	private static class DistinctSample {
+
+		//Not a canonical NaN, so doubleToLongBits never produces it
+		private static final long EMPTY = 0x7FF0000000000001L;
+
+		private int mCapacity;
+		private int mLevel;
+		private long[] mTable;
+		private int mSize;
+
+		public DistinctSample(int capacity) {
+			mCapacity = Math.max(MIN_CAPACITY, capacity);
+			mLevel = 0;
+			mTable = new long[Integer.highestOneBit(mCapacity - 1) << 2];
+			Arrays.fill(mTable, EMPTY);
+			mSize = 0;
+		}
+
+		public void add(double v) {
+			long bits = Double.doubleToLongBits(v);
+			if (Long.numberOfLeadingZeros(hash(bits)) < mLevel) return;
+
+			if (put(mTable, bits)) {
+				mSize++;
+				while (mSize > mCapacity) {
+					mLevel++;
+					rebuild();
+				}
+			}
+		}
+
+		private void rebuild() {
+			long[] table = new long[mTable.length];
+			Arrays.fill(table, EMPTY);
+			mSize = 0;
+			for (long bits : mTable) {
+				if (bits != EMPTY && Long.numberOfLeadingZeros(hash(bits)) >= mLevel) {
+					put(table, bits);
+					mSize++;
+				}
+			}
+			mTable = table;
+		}
+
+		public double[] toArray() {
+			double[] values = new double[mSize];
+			int n = 0;
+			for (long bits : mTable) {
+				if (bits != EMPTY) {
+					values[n++] = Double.longBitsToDouble(bits);
+				}
+			}
+			return values;
+		}
+
+		//Returns whether bits was absent
+		private static boolean put(long[] table, long bits) {
+			int mask = table.length - 1;
+			int slot = (int) hash(bits) & mask;
+			while (table[slot] != EMPTY) {
+				if (table[slot] == bits) return false;
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = bits;
+			return true;
+		}
+
+		private static long hash(long bits) {
+			bits = (bits ^ (bits >>> 33)) * 0xFF51AFD7ED558CCDL;
+			bits = (bits ^ (bits >>> 33)) * 0xC4CEB9FE1A85EC53L;
+			return bits ^ (bits >>> 33);
+		}
+
+	}
+
+	////////////////////////////////////////////////
+	//Benchmark against the previous boxed implementation
+	//Usage: Percentile [values] [distinct] [rounds]
+	////////////////////////////////////////////////
+
+	private static class BoxedPercentile {
+
+		private class Index implements Comparable<Index> {
+			public double Value;
+			public double Percentile;
+
+			public Index(double v) {
+				Value = v;
+			}
+
+			@Override
+			public int compareTo(Index o) {
+				return Double.compare(Value, o.Value);
+			}
+		}
+
+		private List<Index> mValues = CUtil.makeList();
+		private Map<Double, Index> mValueMap = CUtil.makeMap();
+
+		public void add(double v) {
+			if (mValueMap.containsKey(v)) return;
+
+			Index i = new Index(v);
+			mValues.add(i);
+			mValueMap.put(i.Value, i);
+		}
+
+		public void compute() {
+			Collections.sort(mValues);
+			for (int i = 0; i < mValues.size(); i++) {
+				mValues.get(i).Percentile = (double) i / mValues.size();
+			}
+		}
+
+		public double getPercentile(double v) {
+			return mValueMap.get(v).Percentile;
+		}
+
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+		int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		//Heavy-tailed byte counts per IP and hour, mostly zero
+		Random random = new Random(0);
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = random.nextInt(4) == 0 ? Math.floor(distinct * Math.pow(random.nextDouble(), 3.0)) : 0.0;
+		}
+
+		//Duplicates must not count towards maxExact
+		Percentile opted = new Percentile(distinct, DEFAULT_SAMPLE_SIZE);
+		for (double v : values) opted.add(v);
+		if (opted.isApproximate()) throw new IllegalStateException("Error: " + count + " values with at most " + distinct + " distinct values switched to sampling");
+
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			BoxedPercentile boxed = new BoxedPercentile();
+			for (double v : values) boxed.add(v);
+			boxed.compute();
+			double boxedSum = 0.0;
+			for (double v : values) boxedSum += boxed.getPercentile(v);
+			long boxedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Percentile exact = new Percentile();
+			for (double v : values) exact.add(v);
+			exact.compute();
+			double exactSum = 0.0;
+			for (double v : values) exactSum += exact.getPercentile(v);
+			long exactNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Percentile sample = new Percentile(0, DEFAULT_SAMPLE_SIZE);
+			for (double v : values) sample.add(v);
+			sample.compute();
+			double sampleSum = 0.0;
+			for (double v : values) sampleSum += sample.getPercentile(v);
+			long sampleNanos = System.nanoTime() - start;
+
+			double maxError = 0.0;
+			for (int i = 0; i < count; i += 97) {
+				maxError = Math.max(maxError, Math.abs(exact.getPercentile(values[i]) - sample.getPercentile(values[i])));
+			}
+
+			System.out.println(String.format("Round %d: boxed %.1f ns/value, exact %.1f ns/value, sample %.1f ns/value (exact diff %.2e, sample max error %.4f)",
+					r, 1.0 * boxedNanos / count, 1.0 * exactNanos / count, 1.0 * sampleNanos / count,
+					Math.abs(boxedSum - exactSum), maxError));
+		}
 	}
 
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 Iowa State University
+ * All rights reserved.
+ * 
+ * Copyright 2014.  Iowa State University.  This software was produced under U.S.
+ * Government contract DE-AC02-07CH11358 for The Ames Laboratory, which is 
+ * operated by Iowa State University for the U.S. Department of Energy.  The U.S.
+ * Government has the rights to use, reproduce, and distribute this software.
+ * NEITHER THE GOVERNMENT NOR IOWA STATE UNIVERSITY MAKES ANY WARRANTY, EXPRESS
+ * OR IMPLIED, OR ASSUMES ANY LIABILITY FOR THE USE OF THIS SOFTWARE.  If 
+ * software is modified to produce derivative works, such modified software 
+ * should be clearly marked, so as not to confuse it with the version available
+ * from The Ames Laboratory.  Additionally, redistribution and use in source and
+ * binary forms, with or without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1.  Redistribution of source code must retain the above copyright notice, this
+ * list of conditions, and the following disclaimer.
+ * 2.  Redistribution in binary form must reproduce the above copyright notice, 
+ * this list of conditions, and the following disclaimer in the documentation 
+ * and/or other materials provided with distribution.
+ * 3.  Neither the name of Iowa State University, The Ames Laboratory, the
+ * U.S. Government, nor the names of its contributors may be used to endorse or
+ * promote products derived from this software without specific prior written
+ * permission
+ * 
+ * THIS SOFTWARE IS PROVIDED BY IOWA STATE UNIVERSITY AND CONTRIBUTORS "AS IS",
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL IOWA STATE UNIVERSITY OF CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITRY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package gov.ameslab.cydime.util;
+
+import java.util.Arrays;
+
+import org.apache.commons.net.util.SubnetUtils;
+import org.apache.commons.net.util.SubnetUtils.SubnetInfo;
+
+/**
+ * Binary trie over IPv4 address ranges answering which entries contain a given
+ * IP in at most 32 steps, instead of testing every SubnetUtils in turn.
+ * 
+ * Each entry is stored at the node of the longest common prefix of its low and
+ * high address, and candidates found along the path are confirmed with the same
+ * range test as SubnetInfo.isInRange. Network and broadcast addresses are thus
+ * excluded exactly as SubnetUtils does.
+ * 
+ * @author Harris Lin (harris.lin.nz at gmail.com)
+ */
+public class SubnetTrie {
+
+	private static final int MIN_CAPACITY = 64;
+	private static final int NONE = -1;
+	
+	//Node arrays, node 0 is the root
+	private int[] mZero;
+	private int[] mOne;
+	private int[] mFirstEntry;
+	private int mNodes;
+	
+	//Entry arrays, chained per node
+	private int[] mLow;
+	private int[] mHigh;
+	private int[] mNextEntry;
+	private int mEntries;
+	
+	public SubnetTrie() {
+		mZero = new int[MIN_CAPACITY];
+		mOne = new int[MIN_CAPACITY];
+		mFirstEntry = new int[MIN_CAPACITY];
+		mNodes = 0;
+		newNode();
+		
+		mLow = new int[MIN_CAPACITY];
+		mHigh = new int[MIN_CAPACITY];
+		mNextEntry = new int[MIN_CAPACITY];
+		mEntries = 0;
+	}
+	
+	//Returns the entry index of subnet
+	public int add(SubnetUtils subnet) {
+		SubnetInfo info = subnet.getInfo();
+		return add(NetUtil.toInt(info.getLowAddress()), NetUtil.toInt(info.getHighAddress()));
+	}
+	
+	//Requires low <= high as unsigned ints
+	public int add(int low, int high) {
+		int prefix = Integer.numberOfLeadingZeros(low ^ high);
+		int node = 0;
+		for (int bit = 0; bit < prefix; bit++) {
+			boolean isOne = ((low << bit) & 0x80000000) != 0;
+			int child = isOne ? mOne[node] : mZero[node];
+			if (child == NONE) {
+				child = newNode();
+				if (isOne) {
+					mOne[node] = child;
+				} else {
+					mZero[node] = child;
+				}
+			}
+			node = child;
+		}
+		
+		if (mEntries == mLow.length) {
+			int capacity = mEntries * 2;
+			mLow = Arrays.copyOf(mLow, capacity);
+			mHigh = Arrays.copyOf(mHigh, capacity);
+			mNextEntry = Arrays.copyOf(mNextEntry, capacity);
+		}
+		
+		int entry = mEntries++;
+		mLow[entry] = low;
+		mHigh[entry] = high;
+		mNextEntry[entry] = mFirstEntry[node];
+		mFirstEntry[node] = entry;
+		return entry;
+	}
+	
+	public int size() {
+		return mEntries;
+	}
+	
+	public boolean isEmpty() {
+		return mEntries == 0;
+	}
+	
+	//Writes the indices of the entries containing ip into result, which must hold size() ints, and returns their count
+	public int match(int ip, int[] result) {
+		int count = 0;
+		int node = 0;
+		for (int bit = 0; ; bit++) {
+			for (int entry = mFirstEntry[node]; entry != NONE; entry = mNextEntry[entry]) {
+				//Same test as SubnetInfo.isInRange
+				int diff = ip - mLow[entry];
+				if (diff >= 0 && diff <= mHigh[entry] - mLow[entry]) {
+					result[count++] = entry;
+				}
+			}
+			
+			if (bit == Integer.SIZE) break;
+			
+			node = ((ip << bit) & 0x80000000) != 0 ? mOne[node] : mZero[node];
+			if (node == NONE) break;
+		}
+		return count;
+	}
+	
+	private int newNode() {
+		if (mNodes == mZero.length) {
+			int capacity = mNodes * 2;
+			mZero = Arrays.copyOf(mZero, capacity);
+			mOne = Arrays.copyOf(mOne, capacity);
+			mFirstEntry = Arrays.copyOf(mFirstEntry, capacity);
+		}
+		
+		int node = mNodes++;
+		mZero[node] = NONE;
+		mOne[node] = NONE;
+		mFirstEntry[node] = NONE;
+		return node;
+	}
+	
+}